@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A class name being checked by a filter, with its class file metadata and
+ * class.
+ * <p>
+ * The metadata is read and the class is loaded the first time a filter asks
+ * for them, and at most once. Every filter in a tree that checks the same
+ * candidate shares it, so a filter such as
+ * <code>Or( AbstractClass(), InterfaceClass(), HasAnnotation( X ) )</code>
+ * reads the class file once and loads the class, and reports a class that
+ * can not be loaded, at most once.
+ * </p>
+ * <p>
+ * A candidate is meant for one check of one name and is not safe to use
+ * from several threads.
+ * </p>
+ *
+ * @see ClassPathFilter#accept(Candidate)
+ */
+public final class Candidate {
+
+	private static final Log LOG = LogFactory.getLog(Candidate.class);
+
+	private final String name;
+	private ClassLoader classLoader;
+	private boolean infoRead;
+	private ClassFileInfo info;
+	private boolean classLoaded;
+	private Class<?> clazz;
+
+	/**
+	 * Constructor. The class file and class are read from
+	 * {@link ClassPathUtils#getClassLoader()}.
+	 *
+	 * @param name
+	 *            the class name, with or without the ".class" suffix.
+	 * @throws IllegalArgumentException
+	 *             if the name is null.
+	 */
+	public Candidate(String name) {
+		this(name, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param name
+	 *            the class name, with or without the ".class" suffix.
+	 * @param classLoader
+	 *            the class loader to read the class file and class from, null
+	 *            for {@link ClassPathUtils#getClassLoader()}.
+	 * @throws IllegalArgumentException
+	 *             if the name is null.
+	 */
+	public Candidate(String name, ClassLoader classLoader) {
+		if (name == null) {
+			throw new IllegalArgumentException("Name may not be null");
+		}
+		this.name = name;
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * Constructor for a class that may already be loaded.
+	 *
+	 * @param name
+	 *            the class name, with or without the ".class" suffix.
+	 * @param classLoader
+	 *            the class loader to read the class file and class from.
+	 * @param clazz
+	 *            the class or null if it has not been loaded.
+	 */
+	Candidate(String name, ClassLoader classLoader, Class<?> clazz) {
+		this(name, classLoader);
+		this.clazz = clazz;
+		this.classLoaded = clazz != null;
+	}
+
+	/**
+	 * Get the name as given to the constructor.
+	 *
+	 * @return the name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the class name without the ".class" suffix.
+	 *
+	 * @return the class name.
+	 */
+	public String getClassName() {
+		return name.endsWith(".class") ? name.substring(0, name.length() - ".class".length()) : name;
+	}
+
+	/**
+	 * Get the class loader the class file is read and the class is loaded
+	 * with.
+	 *
+	 * @return the class loader.
+	 */
+	public ClassLoader getClassLoader() {
+		if (classLoader == null) {
+			classLoader = ClassPathUtils.getClassLoader();
+		}
+		return classLoader;
+	}
+
+	/**
+	 * Get the class file metadata, reading it the first time.
+	 *
+	 * @return the metadata or null if the class file can not be found or
+	 *         read.
+	 */
+	public ClassFileInfo getClassFileInfo() {
+		if (!infoRead) {
+			infoRead = true;
+			try {
+				info = ClassFileInfo.forName(getClassName(), getClassLoader());
+			} catch (IOException e) {
+				LOG.debug(String.format("Can not read class file for %s: %s", getClassName(), e.toString()));
+			}
+		}
+		return info;
+	}
+
+	/**
+	 * Get the class, loading it without initializing it the first time.
+	 *
+	 * @return the class or null if the class can not be loaded.
+	 */
+	public Class<?> getLoadedClass() {
+		if (!classLoaded) {
+			classLoaded = true;
+			try {
+				clazz = Class.forName(getClassName(), false, getClassLoader());
+			} catch (ClassNotFoundException e) {
+				String err = String.format("Can not load %s: %s", name, e.toString());
+				LOG.error(err);
+				ClassPathUtils.doLog(err);
+			} catch (LinkageError e) {
+				String err = String.format("Can not link %s: %s", name, e.toString());
+				LOG.error(err);
+				ClassPathUtils.doLog(err);
+			}
+		}
+		return clazz;
+	}
+
+	/**
+	 * Check if the class has been loaded, or could not be loaded.
+	 *
+	 * @return true if {@link #getLoadedClass()} will not load the class.
+	 */
+	boolean isClassLoaded() {
+		return classLoaded;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
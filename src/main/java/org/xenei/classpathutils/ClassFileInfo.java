@@ -0,0 +1,434 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The class level metadata of a class file, read directly from the bytes.
+ * <p>
+ * Only the access flags, the class, super class and interface names and the
+ * types of the runtime visible class annotations are read. No class is
+ * loaded or defined, so filters can use this to examine classes without
+ * filling the metaspace with classes they reject. Runtime visible
+ * annotations are the ones reflection reports, so
+ * {@link #hasAnnotation(String)} agrees with
+ * {@link Class#isAnnotationPresent(Class)} for annotations declared directly
+ * on the class.
+ * </p>
+ */
+public final class ClassFileInfo {
+
+	/** Class file magic number */
+	private static final int MAGIC = 0xCAFEBABE;
+
+	/** access flag: declared abstract */
+	public static final int ACC_ABSTRACT = 0x0400;
+	/** access flag: is an interface */
+	public static final int ACC_INTERFACE = 0x0200;
+	/** access flag: is an annotation type */
+	public static final int ACC_ANNOTATION = 0x2000;
+
+	private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+	private final int accessFlags;
+	private final String className;
+	private final String superName;
+	private final List<String> interfaceNames;
+	private final Set<String> annotationNames;
+
+	private ClassFileInfo(int accessFlags, String className, String superName, List<String> interfaceNames,
+			Set<String> annotationNames) {
+		this.accessFlags = accessFlags;
+		this.className = className;
+		this.superName = superName;
+		this.interfaceNames = Collections.unmodifiableList(interfaceNames);
+		this.annotationNames = Collections.unmodifiableSet(annotationNames);
+	}
+
+	/**
+	 * Read the class file for a class from a class loader.
+	 *
+	 * @param className
+	 *            the binary name of the class, e.g. <code>a.b.Outer$Inner</code>
+	 * @param classLoader
+	 *            the class loader to read the class file from.
+	 * @return the class file information or null if the class loader has no
+	 *         class file for the class.
+	 * @throws IOException
+	 *             if the class file can not be read or parsed.
+	 */
+	public static ClassFileInfo forName(String className, ClassLoader classLoader) throws IOException {
+		InputStream is = classLoader.getResourceAsStream(className.replace('.', '/') + ".class");
+		if (is == null) {
+			return null;
+		}
+		try {
+			return read(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * Read class file information from a stream. The stream is not closed.
+	 *
+	 * @param is
+	 *            the stream to read the class file from.
+	 * @return the class file information.
+	 * @throws IOException
+	 *             if the stream can not be read or is not a class file.
+	 */
+	public static ClassFileInfo read(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(4096);
+		byte[] buffer = new byte[4096];
+		int len;
+		while ((len = is.read(buffer)) != -1) {
+			baos.write(buffer, 0, len);
+		}
+		return read(baos.toByteArray());
+	}
+
+	/**
+	 * Read class file information from the bytes of a class file.
+	 *
+	 * @param bytes
+	 *            the class file.
+	 * @return the class file information.
+	 * @throws IOException
+	 *             if the bytes are not a valid class file.
+	 */
+	public static ClassFileInfo read(byte[] bytes) throws IOException {
+		try {
+			return new Parser(bytes).parse();
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Invalid class file", e);
+		}
+	}
+
+	/**
+	 * Get the access flags of the class.
+	 *
+	 * @return the access flags.
+	 */
+	public int getAccessFlags() {
+		return accessFlags;
+	}
+
+	/**
+	 * Get the binary name of the class.
+	 *
+	 * @return the class name.
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * Get the binary name of the super class.
+	 *
+	 * @return the super class name or null for java.lang.Object and
+	 *         interfaces.
+	 */
+	public String getSuperName() {
+		return superName;
+	}
+
+	/**
+	 * Get the binary names of the directly implemented interfaces.
+	 *
+	 * @return the interface names in declaration order.
+	 */
+	public List<String> getInterfaceNames() {
+		return interfaceNames;
+	}
+
+	/**
+	 * Get the binary names of the types of the runtime visible annotations
+	 * declared on the class.
+	 *
+	 * @return the annotation type names.
+	 */
+	public Set<String> getAnnotationNames() {
+		return annotationNames;
+	}
+
+	/**
+	 * Check if a runtime visible annotation is declared on the class.
+	 *
+	 * @param annotationName
+	 *            the binary name of the annotation type.
+	 * @return true if the class declares the annotation.
+	 */
+	public boolean hasAnnotation(String annotationName) {
+		return annotationNames.contains(annotationName);
+	}
+
+	/**
+	 * Check if the class is abstract. Interfaces are abstract.
+	 *
+	 * @return true if the class is abstract.
+	 */
+	public boolean isAbstract() {
+		return (accessFlags & ACC_ABSTRACT) != 0;
+	}
+
+	/**
+	 * Check if the class is an interface. Annotation types are interfaces.
+	 *
+	 * @return true if the class is an interface.
+	 */
+	public boolean isInterface() {
+		return (accessFlags & ACC_INTERFACE) != 0;
+	}
+
+	/**
+	 * Check if the class is an annotation type.
+	 *
+	 * @return true if the class is an annotation type.
+	 */
+	public boolean isAnnotation() {
+		return (accessFlags & ACC_ANNOTATION) != 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ClassFileInfo[%s flags=0x%04x super=%s interfaces=%s annotations=%s]", className,
+				accessFlags, superName, interfaceNames, annotationNames);
+	}
+
+	/**
+	 * Parses the class level information from class file bytes. Constant
+	 * pool strings are only decoded when they are needed.
+	 */
+	private static final class Parser {
+		private final byte[] bytes;
+		private final ByteBuffer buffer;
+		/** the offset of each constant pool entry */
+		private int[] offsets;
+
+		Parser(byte[] bytes) {
+			this.bytes = bytes;
+			this.buffer = ByteBuffer.wrap(bytes);
+		}
+
+		ClassFileInfo parse() throws IOException {
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("Not a class file");
+			}
+			// minor and major version
+			buffer.getInt();
+			readConstantPool();
+
+			int accessFlags = buffer.getShort() & 0xFFFF;
+			String className = classRef(buffer.getShort() & 0xFFFF);
+			int superIdx = buffer.getShort() & 0xFFFF;
+			// as with reflection interfaces have no super class.
+			String superName = superIdx == 0 || (accessFlags & ACC_INTERFACE) != 0 ? null : classRef(superIdx);
+			int count = buffer.getShort() & 0xFFFF;
+			List<String> interfaces = new ArrayList<String>(count);
+			for (int i = 0; i < count; i++) {
+				interfaces.add(classRef(buffer.getShort() & 0xFFFF));
+			}
+			skipMembers();
+			skipMembers();
+
+			Set<String> annotations = new LinkedHashSet<String>();
+			count = buffer.getShort() & 0xFFFF;
+			for (int i = 0; i < count; i++) {
+				String name = utf8(buffer.getShort() & 0xFFFF);
+				int length = buffer.getInt();
+				int end = buffer.position() + length;
+				if (RUNTIME_VISIBLE_ANNOTATIONS.equals(name)) {
+					int num = buffer.getShort() & 0xFFFF;
+					for (int j = 0; j < num; j++) {
+						annotations.add(readAnnotation());
+					}
+				}
+				buffer.position(end);
+			}
+			return new ClassFileInfo(accessFlags, className, superName, interfaces, annotations);
+		}
+
+		private void readConstantPool() throws IOException {
+			int count = buffer.getShort() & 0xFFFF;
+			offsets = new int[count];
+			for (int i = 1; i < count; i++) {
+				offsets[i] = buffer.position();
+				int tag = buffer.get();
+				switch (tag) {
+				case 1: // Utf8
+					skip(buffer.getShort() & 0xFFFF);
+					break;
+				case 7: // Class
+				case 8: // String
+				case 16: // MethodType
+				case 19: // Module
+				case 20: // Package
+					skip(2);
+					break;
+				case 15: // MethodHandle
+					skip(3);
+					break;
+				case 3: // Integer
+				case 4: // Float
+				case 9: // Fieldref
+				case 10: // Methodref
+				case 11: // InterfaceMethodref
+				case 12: // NameAndType
+				case 17: // Dynamic
+				case 18: // InvokeDynamic
+					skip(4);
+					break;
+				case 5: // Long
+				case 6: // Double
+					skip(8);
+					// takes two slots
+					i++;
+					break;
+				default:
+					throw new IOException("Invalid constant pool tag " + tag);
+				}
+			}
+		}
+
+		private void skip(int n) {
+			buffer.position(buffer.position() + n);
+		}
+
+		/**
+		 * Skip the fields or methods.
+		 */
+		private void skipMembers() {
+			int count = buffer.getShort() & 0xFFFF;
+			for (int i = 0; i < count; i++) {
+				// access flags, name and descriptor
+				skip(6);
+				skipAttributes();
+			}
+		}
+
+		private void skipAttributes() {
+			int count = buffer.getShort() & 0xFFFF;
+			for (int i = 0; i < count; i++) {
+				skip(2);
+				skip(buffer.getInt());
+			}
+		}
+
+		/**
+		 * Read an annotation returning its type name.
+		 */
+		private String readAnnotation() throws IOException {
+			String type = descriptorToName(utf8(buffer.getShort() & 0xFFFF));
+			int pairs = buffer.getShort() & 0xFFFF;
+			for (int i = 0; i < pairs; i++) {
+				skip(2);
+				skipElementValue();
+			}
+			return type;
+		}
+
+		private void skipElementValue() throws IOException {
+			int tag = buffer.get();
+			switch (tag) {
+			case 'B':
+			case 'C':
+			case 'D':
+			case 'F':
+			case 'I':
+			case 'J':
+			case 'S':
+			case 'Z':
+			case 's':
+			case 'c':
+				skip(2);
+				break;
+			case 'e':
+				skip(4);
+				break;
+			case '@':
+				readAnnotation();
+				break;
+			case '[':
+				int count = buffer.getShort() & 0xFFFF;
+				for (int i = 0; i < count; i++) {
+					skipElementValue();
+				}
+				break;
+			default:
+				throw new IOException("Invalid annotation element tag " + tag);
+			}
+		}
+
+		/**
+		 * Get the class name of a Class constant.
+		 */
+		private String classRef(int index) throws IOException {
+			int offset = offsets[index];
+			if (bytes[offset] != 7) {
+				throw new IOException("Constant " + index + " is not a class");
+			}
+			return utf8(((bytes[offset + 1] & 0xFF) << 8) | (bytes[offset + 2] & 0xFF)).replace('/', '.');
+		}
+
+		/**
+		 * Decode a Utf8 constant.
+		 */
+		private String utf8(int index) throws IOException {
+			int offset = offsets[index];
+			if (bytes[offset] != 1) {
+				throw new IOException("Constant " + index + " is not a Utf8 string");
+			}
+			int length = ((bytes[offset + 1] & 0xFF) << 8) | (bytes[offset + 2] & 0xFF);
+			boolean ascii = true;
+			for (int i = 0; i < length && ascii; i++) {
+				ascii = bytes[offset + 3 + i] > 0;
+			}
+			if (ascii) {
+				return new String(bytes, offset + 3, length, StandardCharsets.ISO_8859_1);
+			}
+			// modified UTF-8
+			return new DataInputStream(new ByteArrayInputStream(bytes, offset + 1, length + 2)).readUTF();
+		}
+
+		/**
+		 * Convert a field descriptor such as <code>La/b/C;</code> to a binary
+		 * name.
+		 */
+		private static String descriptorToName(String descriptor) {
+			if (descriptor.length() > 2 && descriptor.charAt(0) == 'L' && descriptor.endsWith(";")) {
+				return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+			}
+			return descriptor;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The result of loading a set of class names: the classes that were loaded
+ * and the reason each of the others could not be.
+ *
+ * @see ClassPathUtils#loadClasses(ClassLoader, java.util.Collection,
+ *      java.util.concurrent.Executor, int)
+ */
+public final class ClassLoadResult {
+
+	private final Set<Class<?>> classes;
+	private final Map<String, Throwable> failures;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param classes
+	 *            the classes that were loaded.
+	 * @param failures
+	 *            the names of the classes that could not be loaded mapped to
+	 *            the ClassNotFoundException or LinkageError that was thrown.
+	 */
+	ClassLoadResult(Set<Class<?>> classes, Map<String, Throwable> failures) {
+		this.classes = Collections.unmodifiableSet(classes);
+		this.failures = Collections.unmodifiableMap(failures);
+	}
+
+	/**
+	 * Get the classes that were loaded.
+	 *
+	 * @return the classes in the order of their names.
+	 */
+	public Set<Class<?>> getClasses() {
+		return classes;
+	}
+
+	/**
+	 * Get the classes that could not be loaded.
+	 *
+	 * @return the class names mapped to the ClassNotFoundException or
+	 *         LinkageError (e.g. NoClassDefFoundError) that was thrown, in
+	 *         the order of their names.
+	 */
+	public Map<String, Throwable> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Check if any class could not be loaded.
+	 *
+	 * @return true if there are failures.
+	 */
+	public boolean hasFailures() {
+		return !failures.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ClassLoadResult[%s classes, %s failures]", classes.size(), failures.size());
+	}
+}
@@ -20,13 +20,17 @@ package org.xenei.classpathutils;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.xenei.classpathutils.filter.AbstractClassFilter;
 import org.xenei.classpathutils.filter.AnnotationClassFilter;
 import org.xenei.classpathutils.filter.FalseClassFilter;
 import org.xenei.classpathutils.filter.InterfaceClassFilter;
 import org.xenei.classpathutils.filter.TrueClassFilter;
+import org.xenei.classpathutils.filter.types.ClassFilterType;
+import org.xenei.classpathutils.filter.types.CollectionFilterType;
 
 /**
  * Interface that defines a ClassFilter.
@@ -56,6 +60,23 @@ public interface ClassPathFilter {
 
 	public ClassPathFilter optimize();
 
+	/**
+	 * Make the filter and its argument filters immutable so that it can be
+	 * shared between threads. Once frozen, methods that would change the
+	 * filter throw an IllegalStateException and the filter may be evaluated
+	 * from any number of threads without locking. Freeze the optimized
+	 * filter: <code>filter.optimize().freeze()</code>.
+	 * <p>
+	 * The default implementation returns this, for filters that can not
+	 * change.
+	 * </p>
+	 * 
+	 * @return this filter.
+	 */
+	default ClassPathFilter freeze() {
+		return this;
+	}
+
 	/**
 	 * Accept a URL.
 	 * 
@@ -76,6 +97,53 @@ public interface ClassPathFilter {
 	 */
 	boolean accept(String className);
 
+	/**
+	 * Accept a class name, sharing the class file metadata and class with
+	 * the other filters that check the same candidate. Filters that read the
+	 * class file or load the class should get them from the candidate, and
+	 * filters with argument filters should pass the candidate on.
+	 * <p>
+	 * The default implementation calls {@link #accept(Class)} with the
+	 * candidate's class for a {@link ClassFilterType} and
+	 * {@link #accept(String)} with the name otherwise.
+	 * </p>
+	 * 
+	 * @param candidate
+	 *            the candidate to accept.
+	 * @return True if the class matches the filter, false otherwise.
+	 */
+	default boolean accept(Candidate candidate) {
+		if (this instanceof ClassFilterType) {
+			Class<?> clazz = candidate.getLoadedClass();
+			return clazz != null && accept(clazz);
+		}
+		return accept(candidate.getName());
+	}
+
+	/**
+	 * Determine whether the class names that start with a prefix can match.
+	 * Scanners use this to skip whole directories and package ranges. For
+	 * example a filter that only accepts <code>com.acme.api</code> classes
+	 * returns NO for the prefix <code>com.acme.impl.</code>, YES for the
+	 * prefix <code>com.acme.api.</code> and MAYBE for the prefix
+	 * <code>com.</code>
+	 * <p>
+	 * The answer must be conservative: YES only if accept(String) returns
+	 * true for every name that starts with the prefix and NO only if it
+	 * returns false for every such name. The default implementation returns
+	 * MAYBE.
+	 * </p>
+	 * 
+	 * @param prefix
+	 *            the class name prefix, generally a package name followed by
+	 *            a '.'.
+	 * @return YES if every name with the prefix is accepted, NO if no name
+	 *         with the prefix is accepted, MAYBE otherwise.
+	 */
+	default Tristate matchPrefix(String prefix) {
+		return Tristate.MAYBE;
+	}
+
 	/**
 	 * Accept a Class.
 	 * 
@@ -187,6 +255,9 @@ public interface ClassPathFilter {
 		 *         classes iterator returns them.
 		 */
 		public static Collection<Class<?>> filterClasses(Collection<Class<?>> classes, ClassPathFilter filter) {
+			if (classes instanceof LazyClassSet) {
+				return ((LazyClassSet) classes).filter(filter);
+			}
 			Collection<Class<?>> retval = new ArrayList<Class<?>>();
 			for (Class<?> clazz : classes) {
 				if (filter.accept(clazz)) {
@@ -222,12 +293,60 @@ public interface ClassPathFilter {
 			return sb.append(")").toString();
 		}
 
+		/**
+		 * Compare two filters by structure. Filters with arguments that are
+		 * filters compare the argument filters with equals(), others compare
+		 * their function names and arguments. This gives the same result as
+		 * comparing the string forms without building them.
+		 * 
+		 * @param cpf1
+		 *            the first filter.
+		 * @param cpf2
+		 *            the second filter.
+		 * @return true if the filters are equal.
+		 */
 		public static boolean equals(ClassPathFilter cpf1, ClassPathFilter cpf2) {
-			return cpf1.toString().equals(cpf2.toString());
+			if (cpf1 == cpf2) {
+				return true;
+			}
+			if (!cpf1.funcName().equals(cpf2.funcName())) {
+				return false;
+			}
+			if (cpf1 instanceof CollectionFilterType && cpf2 instanceof CollectionFilterType) {
+				List<ClassPathFilter> lst1 = ((CollectionFilterType) cpf1).getFilters();
+				List<ClassPathFilter> lst2 = ((CollectionFilterType) cpf2).getFilters();
+				if (lst1.size() != lst2.size()) {
+					return false;
+				}
+				for (int i = 0; i < lst1.size(); i++) {
+					if (!lst1.get(i).equals(lst2.get(i))) {
+						return false;
+					}
+				}
+				return true;
+			}
+			return Arrays.equals(cpf1.args(), cpf2.args());
 		}
 
+		/**
+		 * Compute the hash code of a filter from its structure, consistent
+		 * with {@link #equals(ClassPathFilter, ClassPathFilter)}. The hash
+		 * codes of argument filters are taken from their hashCode() so cached
+		 * hash codes are reused.
+		 * 
+		 * @param cpf
+		 *            the filter.
+		 * @return the hash code.
+		 */
 		public static int hashCode(ClassPathFilter cpf) {
-			return cpf.toString().hashCode();
+			int hash = cpf.funcName().hashCode();
+			if (cpf instanceof CollectionFilterType) {
+				for (ClassPathFilter filter : ((CollectionFilterType) cpf).getFilters()) {
+					hash = 31 * hash + filter.hashCode();
+				}
+				return hash;
+			}
+			return 31 * hash + Arrays.hashCode(cpf.args());
 		}
 
 		/**
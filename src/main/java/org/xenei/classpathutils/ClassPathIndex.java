@@ -0,0 +1,400 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A persistent index of the entry names of class path jars.
+ * <p>
+ * For each jar the index records the entry names together with a validity
+ * stamp comprising the path, size, modification time and, optionally, a hash
+ * of the content. When the stamp of a jar still matches the recorded stamp
+ * the recorded names are used, otherwise the jar is rescanned and the index
+ * updated. Only jar files are indexed; exploded class directories are always
+ * scanned as their modification times do not reflect changes deeper in the
+ * tree.
+ * </p>
+ * <p>
+ * The index is loaded when constructed and written by {@link #save()}.
+ * ClassPathUtils saves the index it is using after each class path scan.
+ * Instances are safe for use by multiple threads.
+ * </p>
+ *
+ * @see ClassPathUtils#setClassPathIndex(ClassPathIndex)
+ */
+public final class ClassPathIndex {
+
+	private static final Log LOG = LogFactory.getLog(ClassPathIndex.class);
+
+	/** The file magic number */
+	private static final int MAGIC = 0x43504958; // CPIX
+	/** The file format version */
+	private static final int VERSION = 1;
+	/** The algorithm used when hashing is enabled */
+	private static final String HASH_ALGORITHM = "SHA-256";
+
+	/** The file the index is stored in */
+	private final File indexFile;
+	/** True if content hashes are part of the stamp */
+	private final boolean useHash;
+	/** The indexed roots by absolute path */
+	private final Map<String, Root> roots = new ConcurrentHashMap<String, Root>();
+	/** True if the index has changed since it was loaded or saved */
+	private volatile boolean dirty;
+	/** Number of lookups answered from the index */
+	private final AtomicLong hitCount = new AtomicLong();
+	/** Number of lookups that required a scan of the jar */
+	private final AtomicLong scanCount = new AtomicLong();
+
+	/**
+	 * Create an index stored in the file. The stamp does not include a
+	 * content hash.
+	 *
+	 * @param indexFile
+	 *            the file to store the index in. It is read if it exists.
+	 */
+	public ClassPathIndex(File indexFile) {
+		this(indexFile, false);
+	}
+
+	/**
+	 * Create an index stored in the file.
+	 *
+	 * @param indexFile
+	 *            the file to store the index in. It is read if it exists.
+	 * @param useHash
+	 *            if true a hash of the jar content is part of the validity
+	 *            stamp. This detects changes that preserve size and
+	 *            modification time at the cost of reading every jar.
+	 */
+	public ClassPathIndex(File indexFile, boolean useHash) {
+		if (indexFile == null) {
+			throw new IllegalArgumentException("Index file may not be null");
+		}
+		this.indexFile = indexFile;
+		this.useHash = useHash;
+		if (indexFile.exists()) {
+			try {
+				load();
+			} catch (IOException e) {
+				String err = String.format("Unable to read class path index %s: %s", indexFile, e.toString());
+				LOG.warn(err);
+				ClassPathUtils.doLog(err);
+				roots.clear();
+			}
+		}
+	}
+
+	/**
+	 * Get the file the index is stored in.
+	 *
+	 * @return the index file.
+	 */
+	public File getIndexFile() {
+		return indexFile;
+	}
+
+	/**
+	 * Get the entry names for a jar. If the jar is unchanged since it was
+	 * indexed the indexed names are returned, otherwise the jar is scanned and
+	 * the index updated.
+	 *
+	 * @param jar
+	 *            the jar file.
+	 * @return an unmodifiable list of the entry names.
+	 * @throws IOException
+	 *             if the jar can not be read.
+	 */
+	public List<String> getEntryNames(File jar) throws IOException {
+		String path = jar.getAbsolutePath();
+		Stamp stamp = stamp(jar);
+		Root root = roots.get(path);
+		if (root != null && root.stamp.equals(stamp)) {
+			hitCount.incrementAndGet();
+			return root.names;
+		}
+		scanCount.incrementAndGet();
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(String.format("Indexing %s", path));
+		}
+		root = new Root(stamp, Collections.unmodifiableList(ZipCentralDirectory.open(jar).getEntryNames()));
+		roots.put(path, root);
+		dirty = true;
+		return root.names;
+	}
+
+	/**
+	 * Get the number of lookups that were answered from the index.
+	 *
+	 * @return the hit count.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Get the number of lookups that required the jar to be scanned.
+	 *
+	 * @return the scan count.
+	 */
+	public long getScanCount() {
+		return scanCount.get();
+	}
+
+	/**
+	 * Get the number of jars in the index.
+	 *
+	 * @return the number of indexed jars.
+	 */
+	public int size() {
+		return roots.size();
+	}
+
+	/**
+	 * Check if the index has changes that have not been saved.
+	 *
+	 * @return true if the index should be saved.
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Remove all entries from the index.
+	 */
+	public void clear() {
+		roots.clear();
+		dirty = true;
+	}
+
+	/**
+	 * Write the index to the index file if it has changed. Jars that no longer
+	 * exist are dropped from the index. The file is written to a temporary
+	 * file and moved into place so that concurrent readers never see a partial
+	 * index.
+	 *
+	 * @throws IOException
+	 *             on error.
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+		Iterator<Map.Entry<String, Root>> iter = roots.entrySet().iterator();
+		while (iter.hasNext()) {
+			if (!new File(iter.next().getKey()).exists()) {
+				iter.remove();
+			}
+		}
+		File dir = indexFile.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Unable to create directory " + dir);
+		}
+		File tmp = File.createTempFile(indexFile.getName() + ".new", ".tmp", dir);
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				write(out);
+			}
+			try {
+				Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			dirty = true;
+			throw e;
+		} finally {
+			if (tmp.exists() && !tmp.delete()) {
+				tmp.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Write the index. Entry names are front coded as consecutive names
+	 * generally share a package prefix.
+	 */
+	private void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeBoolean(useHash);
+		List<Map.Entry<String, Root>> entries = new ArrayList<Map.Entry<String, Root>>(roots.entrySet());
+		out.writeInt(entries.size());
+		for (Map.Entry<String, Root> entry : entries) {
+			Root root = entry.getValue();
+			out.writeUTF(entry.getKey());
+			out.writeLong(root.stamp.size);
+			out.writeLong(root.stamp.modified);
+			out.writeUTF(root.stamp.hash);
+			out.writeInt(root.names.size());
+			String last = "";
+			for (String name : root.names) {
+				int shared = sharedPrefix(last, name);
+				out.writeShort(shared);
+				out.writeUTF(name.substring(shared));
+				last = name;
+			}
+		}
+	}
+
+	/**
+	 * Read the index file.
+	 */
+	private void load() throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a class path index");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported class path index version " + version);
+			}
+			boolean hashed = in.readBoolean();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				Stamp stamp = new Stamp(in.readLong(), in.readLong(), in.readUTF());
+				int size = in.readInt();
+				List<String> names = new ArrayList<String>(size);
+				String last = "";
+				for (int j = 0; j < size; j++) {
+					int shared = in.readUnsignedShort();
+					last = last.substring(0, shared).concat(in.readUTF());
+					names.add(last);
+				}
+				// an index written with a different hash setting can not be
+				// validated.
+				if (hashed == useHash) {
+					roots.put(path, new Root(stamp, Collections.unmodifiableList(names)));
+				}
+			}
+		}
+	}
+
+	private static int sharedPrefix(String a, String b) {
+		int max = Math.min(Math.min(a.length(), b.length()), 0xFFFF);
+		int i = 0;
+		while (i < max && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Create the current stamp for a jar.
+	 */
+	private Stamp stamp(File jar) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(jar.toPath(), BasicFileAttributes.class);
+		return new Stamp(attrs.size(), attrs.lastModifiedTime().toMillis(), useHash ? hash(jar) : "");
+	}
+
+	/**
+	 * Calculate the content hash of a file.
+	 */
+	private static String hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = new FileInputStream(file)) {
+			int len;
+			while ((len = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, len);
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The validity stamp of an indexed jar.
+	 */
+	private static final class Stamp {
+		private final long size;
+		private final long modified;
+		private final String hash;
+
+		Stamp(long size, long modified, String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof Stamp) {
+				Stamp other = (Stamp) o;
+				return size == other.size && modified == other.modified && hash.equals(other.hash);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (size ^ modified) ^ hash.hashCode();
+		}
+	}
+
+	/**
+	 * An indexed jar.
+	 */
+	private static final class Root {
+		private final Stamp stamp;
+		private final List<String> names;
+
+		Root(Stamp stamp, List<String> names) {
+			this.stamp = stamp;
+			this.names = names;
+		}
+	}
+}
@@ -19,31 +19,50 @@
 package org.xenei.classpathutils;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
-import org.apache.commons.io.filefilter.DirectoryFileFilter;
-import org.apache.commons.io.filefilter.PrefixFileFilter;
-import org.apache.commons.io.filefilter.NotFileFilter;
-import org.apache.commons.io.filefilter.AndFileFilter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xenei.classpathutils.filter.PrefixClassFilter;
 import org.xenei.classpathutils.filter.RegexClassFilter;
 import org.xenei.classpathutils.filter.AndClassFilter;
 import org.xenei.classpathutils.filter.NotClassFilter;
+import org.xenei.classpathutils.filter.StagedFilter;
 import org.xenei.classpathutils.filter.SuffixClassFilter;
 
 /**
@@ -56,11 +75,110 @@ public class ClassPathUtils {
 
 	private static PrintStream os;
 
+	/** The persistent jar index, null if not used */
+	private static volatile ClassPathIndex index;
+
+	/** The scan result cache, null if not used */
+	private static volatile ScanCache scanCache;
+
+	/**
+	 * An executor that does not execute anything so that the root scanning
+	 * tasks are all run on the calling thread.
+	 */
+	private static final Executor CALLER_RUNS = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			// tasks are run by the caller
+		}
+	};
+
+	/**
+	 * ClassLoader.isRegisteredAsParallelCapable(), null if the runtime does
+	 * not provide it.
+	 */
+	private static final Method IS_PARALLEL_CAPABLE = findParallelCapableMethod();
+
+	/**
+	 * ClassLoader.parallelLockMap, which is only set for parallel capable
+	 * class loaders. Used on Java 8 where isRegisteredAsParallelCapable() is
+	 * not available, null if it can not be read.
+	 */
+	private static final Field PARALLEL_LOCK_MAP = IS_PARALLEL_CAPABLE == null ? findParallelLockMap() : null;
+
+	/**
+	 * Scans a single class path root.
+	 */
+	private interface RootScanner {
+		/**
+		 * Scan the root.
+		 * 
+		 * @param dir
+		 *            the path of the root to scan.
+		 */
+		void scan(String dir);
+	}
+
+	/**
+	 * Receives the names found by the scan of a class path root.
+	 */
+	interface NameSink {
+		/**
+		 * Receive a name.
+		 * 
+		 * @param name
+		 *            the name that was found.
+		 * @return true to continue scanning the root, false to stop.
+		 */
+		boolean add(String name);
+	}
+
 	static {
 		String s = System.getProperty("ClassPathUtils_DEBUG");
 		if (s != null) {
 			os = System.out;
 		}
+		s = System.getProperty("ClassPathUtils_INDEX");
+		if (s != null) {
+			index = new ClassPathIndex(new File(s));
+		}
+		s = System.getProperty("ClassPathUtils_CACHE");
+		if (s != null) {
+			try {
+				scanCache = new ScanCache(Integer.parseInt(s));
+			} catch (IllegalArgumentException e) {
+				LOG.warn(String.format("Invalid ClassPathUtils_CACHE size %s: %s", s, e.getMessage()));
+			}
+		}
+	}
+
+	/**
+	 * Locate ClassLoader.isRegisteredAsParallelCapable().
+	 * 
+	 * @return the method or null if the runtime does not provide it.
+	 */
+	private static Method findParallelCapableMethod() {
+		try {
+			return ClassLoader.class.getMethod("isRegisteredAsParallelCapable");
+		} catch (NoSuchMethodException e) {
+			// not available before Java 9
+			return null;
+		}
+	}
+
+	/**
+	 * Locate the ClassLoader.parallelLockMap field.
+	 * 
+	 * @return the accessible field or null if it can not be read.
+	 */
+	private static Field findParallelLockMap() {
+		try {
+			Field field = ClassLoader.class.getDeclaredField("parallelLockMap");
+			field.setAccessible(true);
+			return field;
+		} catch (NoSuchFieldException | RuntimeException e) {
+			LOG.debug("Can not check for parallel capable class loaders: " + e.toString());
+			return null;
+		}
 	}
 
 	/**
@@ -78,6 +196,58 @@ public class ClassPathUtils {
 		}
 	}
 
+	/**
+	 * Set the persistent index used to read the entry names of jars on the
+	 * class path. The index is saved at the end of each class path scan if it
+	 * has changed.
+	 * <p>
+	 * The initial index is read from the file named by the
+	 * <code>ClassPathUtils_INDEX</code> system property, if set.
+	 * </p>
+	 * 
+	 * @param classPathIndex
+	 *            the index to use, null to disable indexing.
+	 */
+	public static void setClassPathIndex(ClassPathIndex classPathIndex) {
+		index = classPathIndex;
+	}
+
+	/**
+	 * Get the persistent index used to read the entry names of jars.
+	 * 
+	 * @return the index or null if indexing is disabled.
+	 */
+	public static ClassPathIndex getClassPathIndex() {
+		return index;
+	}
+
+	/**
+	 * Set the cache of scan results used by getClasses() and getResources().
+	 * When set, repeated scans of the same class loader, package and
+	 * equivalent filter are answered from the cache rather than by scanning
+	 * the class path. The cache must be cleared if the class path contents
+	 * change.
+	 * <p>
+	 * The initial cache is created with the size specified by the
+	 * <code>ClassPathUtils_CACHE</code> system property, if set.
+	 * </p>
+	 * 
+	 * @param cache
+	 *            the cache to use, null to disable caching.
+	 */
+	public static void setScanCache(ScanCache cache) {
+		scanCache = cache;
+	}
+
+	/**
+	 * Get the cache of scan results.
+	 * 
+	 * @return the cache or null if caching is disabled.
+	 */
+	public static ScanCache getScanCache() {
+		return scanCache;
+	}
+
 	/**
 	 * Get the classloader.
 	 * 
@@ -121,6 +291,48 @@ public class ClassPathUtils {
 			throws IOException {
 
 		final Set<String> classes = new HashSet<String>();
+		scanClassNames(directory, packageName, classFilter(packageName, filter, null), name -> {
+			classes.add(name);
+			return true;
+		});
+		return classes;
+	}
+
+	/**
+	 * Scan a directory or jar for classes, passing the class names to the
+	 * sink as they are found.
+	 * 
+	 * @param directory
+	 *            The directory or jar file to search.
+	 * @param packageName
+	 *            The package to look for.
+	 * @param filter
+	 *            The filter from classFilter().
+	 * @param sink
+	 *            The sink to receive the class names.
+	 * @throws IOException
+	 *             on error.
+	 */
+	static void scanClassNames(final String directory, String packageName, final ScanFilter filter,
+			final NameSink sink) throws IOException {
+		drain(classNames(directory, packageName, filter), sink);
+	}
+
+	/**
+	 * Prepare the filter for a scan for classes. The filter is combined with
+	 * the checks for class files in the package, optimized and planned once
+	 * for all of the roots.
+	 * 
+	 * @param packageName
+	 *            The package to look for.
+	 * @param filter
+	 *            The filter to apply to results.
+	 * @param classLoader
+	 *            The class loader to read and load the classes with, null for
+	 *            the default.
+	 * @return the filter for the scan.
+	 */
+	static ScanFilter classFilter(String packageName, final ClassPathFilter filter, final ClassLoader classLoader) {
 		ClassPathFilter myFilter = new AndClassFilter(new SuffixClassFilter(".class"),
 				new NotClassFilter(new PrefixClassFilter("META")),
 				new NotClassFilter(new RegexClassFilter(".+\\$[0-9]+[\\.\\$].*")),
@@ -131,19 +343,83 @@ public class ClassPathUtils {
 			LOG.debug(s);
 			doLog(s);
 		}
+		return new ScanFilter(myFilter, classLoader, false);
+	}
+
+	/**
+	 * Scan a directory or jar for classes, returning the class names as they
+	 * are found.
+	 * 
+	 * @param directory
+	 *            The directory or jar file to search.
+	 * @param packageName
+	 *            The package to look for.
+	 * @param filter
+	 *            The filter from classFilter().
+	 * @return an iterator over the class names.
+	 * @throws IOException
+	 *             on error.
+	 */
+	static Iterator<String> classNames(final String directory, String packageName, final ScanFilter filter)
+			throws IOException {
+		final Iterator<String> names = scan(directory, packageName, filter);
+		return new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return names.hasNext();
+			}
+
+			@Override
+			public String next() {
+				String name = names.next();
+				return name.substring(0, name.length() - ".class".length());
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Scan a directory or jar returning the names that pass the filter as
+	 * they are found.
+	 * 
+	 * @param directory
+	 *            The directory or jar file to search.
+	 * @param packageName
+	 *            The package to look for.
+	 * @param filter
+	 *            The filter for the scan.
+	 * @return an iterator over the names, or the resource paths if the
+	 *         filter is for resources.
+	 * @throws IOException
+	 *             on error.
+	 */
+	private static Iterator<String> scan(final String directory, String packageName, final ScanFilter filter)
+			throws IOException {
 		if (directory.contains("!") || directory.endsWith(".jar")) {
-			handleJar(classes, directory, myFilter);
-		} else {
-			String dirStr = directory.startsWith("file:") ? directory.substring("file:".length()) : directory;
-			scanDir(classes, packageName, new File(dirStr), myFilter);
+			return handleJar(directory, filter);
 		}
+		String dirStr = directory.startsWith("file:") ? directory.substring("file:".length()) : directory;
+		return DirectoryWalker.names(packageName, new File(dirStr), filter.planned, filter.paths);
+	}
 
-		Set<String> retval = new HashSet<String>();
-		for (String s : classes) {
-			retval.add(s.substring(0, s.length() - ".class".length()));
+	/**
+	 * Pass names to a sink until they run out or the sink asks to stop.
+	 * 
+	 * @param names
+	 *            the names.
+	 * @param sink
+	 *            The sink to receive the names.
+	 */
+	private static void drain(Iterator<String> names, NameSink sink) {
+		while (names.hasNext()) {
+			if (!sink.add(names.next())) {
+				return;
+			}
 		}
-		return retval;
-
 	}
 
 	/**
@@ -153,121 +429,652 @@ public class ClassPathUtils {
 	 * An empty or null packageName = all packages.
 	 *
 	 * @param packageName
-	 *            The base package or class name.
-	 * @return A collection of Class objects.
+	 *            The base package or class name.
+	 * @return A collection of Class objects.
+	 */
+	public static Collection<Class<?>> getClasses(final String packageName) {
+		return getClasses(packageName, new PrefixClassFilter(packageName));
+	}
+
+	/**
+	 * Get a collection of classes in the package name that meet the filter.
+	 * Classes will be loaded from the current thread class loader.
+	 * 
+	 * @param packageName
+	 *            The package name to locate.
+	 * @param filter
+	 *            the ClassFilter to filter the results with.
+	 * @return A collection of Class objects.
+	 */
+	public static Collection<Class<?>> getClasses(final String packageName, ClassPathFilter filter) {
+		final ClassLoader classLoader = getClassLoader();
+		if (classLoader == null) {
+			LOG.error("Class loader may not be null.  No class loader for current thread");
+			return Collections.emptyList();
+		}
+		return getClasses(classLoader, packageName, filter);
+	}
+
+	/**
+	 * Find all classes accessible from the class loader which belong to the
+	 * given package and sub packages.
+	 *
+	 * Adapted from http://snippets.dzone.com/posts/show/4831 and extended to
+	 * support use of JAR files
+	 *
+	 * @param classLoader
+	 *            The class loader to load the classes from.
+	 * @param packageName
+	 *            The base package or class name
+	 * @return A collection of Class objects
+	 */
+	public static Collection<Class<?>> getClasses(final ClassLoader classLoader, final String packageName) {
+		return getClasses(classLoader, packageName, new PrefixClassFilter(packageName));
+	}
+
+	/**
+	 * Find all classes accessible from the class loader which belong to the
+	 * given package and sub packages.
+	 *
+	 * Adapted from http://snippets.dzone.com/posts/show/4831 and extended to
+	 * support use of JAR files
+	 *
+	 * @param classLoader
+	 *            The class loader to load the classes from.
+	 * @param packageName
+	 *            The package name to locate the classes in.
+	 * @param filter
+	 *            The filter for the classes.
+	 * @return A collection of Class objects
+	 */
+	public static Collection<Class<?>> getClasses(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter) {
+		return getClasses(classLoader, packageName, filter, CALLER_RUNS);
+	}
+
+	/**
+	 * Find all classes accessible from the class loader which belong to the
+	 * given package and sub packages. The class path roots are scanned in
+	 * parallel on the executor.
+	 * <p>
+	 * Each root (directory or jar) is scanned as a separate task and the
+	 * results merged into a concurrent collection. The calling thread also
+	 * executes any tasks that have not yet been started by the executor, so
+	 * a saturated or single threaded executor will not deadlock the scan.
+	 * The result set is the same as that returned by the sequential
+	 * {@link #getClasses(ClassLoader, String, ClassPathFilter)}.
+	 * </p>
+	 *
+	 * @param classLoader
+	 *            The class loader to load the classes from.
+	 * @param packageName
+	 *            The package name to locate the classes in.
+	 * @param filter
+	 *            The filter for the classes.
+	 * @param executor
+	 *            The executor to scan the roots with. If null the common
+	 *            fork/join pool is used.
+	 * @return A collection of Class objects
+	 */
+	public static Collection<Class<?>> getClasses(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter, final Executor executor) {
+		if (classLoader == null) {
+			LOG.error("Class loader may not be null.");
+			return Collections.emptyList();
+		}
+		if (packageName == null) {
+			LOG.error("Package name may not be null.");
+			return Collections.emptyList();
+		}
+
+		final ScanCache cache = scanCache;
+		if (cache != null) {
+			Set<String> names = cache.getClassNames(classLoader, packageName, filter);
+			if (names != null) {
+				Set<Class<?>> classes = new HashSet<Class<?>>();
+				for (String clazz : names) {
+					Class<?> c = loadClass(classLoader, clazz);
+					if (c != null) {
+						classes.add(c);
+					}
+				}
+				return classes;
+			}
+		}
+
+		final Set<String> names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final Set<Class<?>> classes = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+		final ScanFilter scanFilter = classFilter(packageName, filter, classLoader);
+		boolean complete = scanRoots(getRootDirectories(getAllResources(classLoader)), executor, new RootScanner() {
+			@Override
+			public void scan(String dir) {
+				if (LOG.isDebugEnabled() || os != null) {
+					String s = String.format("getting classes processing: %s ", dir);
+					LOG.debug(s);
+					doLog(s);
+				}
+
+				try {
+					scanClassNames(dir, packageName, scanFilter, clazz -> {
+						names.add(clazz);
+						Class<?> c = loadClass(classLoader, clazz);
+						if (c != null) {
+							classes.add(c);
+						}
+						return true;
+					});
+				} catch (final IOException e) {
+					doLog(e.toString());
+					LOG.warn(e.toString());
+				}
+			}
+		});
+
+		if (cache != null && complete) {
+			cache.putClassNames(classLoader, packageName, filter, names);
+		}
+		return classes;
+	}
+
+	/**
+	 * Find and load all classes accessible from the class loader which belong
+	 * to the given package and sub packages and pass the filter.
+	 * <p>
+	 * The class path roots are scanned for the class names on the executor
+	 * and the names are then loaded by
+	 * {@link #loadClasses(ClassLoader, Collection, Executor, int)}. Classes
+	 * that can not be loaded are reported in the result rather than logged
+	 * individually.
+	 * </p>
+	 *
+	 * @param classLoader
+	 *            The class loader to load the classes from.
+	 * @param packageName
+	 *            The package name to locate the classes in.
+	 * @param filter
+	 *            The filter for the classes.
+	 * @param executor
+	 *            The executor to scan the roots and load the classes with. If
+	 *            null the common fork/join pool is used.
+	 * @param parallelism
+	 *            The maximum number of threads that load classes at the same
+	 *            time.
+	 * @return the loaded classes and the load failures.
+	 */
+	public static ClassLoadResult loadClasses(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter, final Executor executor, final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		if (classLoader == null) {
+			LOG.error("Class loader may not be null.");
+			return new ClassLoadResult(Collections.<Class<?>> emptySet(), Collections.<String, Throwable> emptyMap());
+		}
+		if (packageName == null) {
+			LOG.error("Package name may not be null.");
+			return new ClassLoadResult(Collections.<Class<?>> emptySet(), Collections.<String, Throwable> emptyMap());
+		}
+
+		return loadClasses(classLoader, findClassNames(classLoader, packageName, filter, executor), executor,
+				parallelism);
+	}
+
+	/**
+	 * Find all classes accessible from the class loader which belong to the
+	 * given package and sub packages and pass the filter without loading any
+	 * of them.
+	 * <p>
+	 * The returned set only holds the class names, each class is loaded when
+	 * it is first accessed. Filtering the result with
+	 * {@link #filterClasses(Collection, ClassPathFilter)} works on the names
+	 * so the rejected classes are never loaded.
+	 * </p>
+	 *
+	 * @param classLoader
+	 *            The class loader to load the classes from.
+	 * @param packageName
+	 *            The package name to locate the classes in.
+	 * @param filter
+	 *            The filter for the classes.
+	 * @return A lazily loaded set of classes.
+	 */
+	public static LazyClassSet getLazyClasses(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter) {
+		if (classLoader == null) {
+			throw new IllegalArgumentException("Class loader may not be null");
+		}
+		if (packageName == null) {
+			throw new IllegalArgumentException("Package name may not be null");
+		}
+		return new LazyClassSet(classLoader, findClassNames(classLoader, packageName, filter, CALLER_RUNS));
+	}
+
+	/**
+	 * Find the names of the classes accessible from the class loader which
+	 * belong to the given package and sub packages and pass the filter. The
+	 * scan cache is used if it is enabled.
+	 *
+	 * @param classLoader
+	 *            The class loader to scan.
+	 * @param packageName
+	 *            The package name to locate the classes in.
+	 * @param filter
+	 *            The filter for the classes.
+	 * @param executor
+	 *            The executor to scan the roots with.
+	 * @return the class names.
+	 */
+	private static Set<String> findClassNames(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter, final Executor executor) {
+		final ScanCache cache = scanCache;
+		Set<String> names = cache == null ? null : cache.getClassNames(classLoader, packageName, filter);
+		if (names == null) {
+			final Set<String> found = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			final ScanFilter scanFilter = classFilter(packageName, filter, classLoader);
+			RootScanner scanner = new RootScanner() {
+				@Override
+				public void scan(String dir) {
+					try {
+						scanClassNames(dir, packageName, scanFilter, found::add);
+					} catch (final IOException e) {
+						doLog(e.toString());
+						LOG.warn(e.toString());
+					}
+				}
+			};
+			boolean complete = scanRoots(getRootDirectories(getAllResources(classLoader)), executor, scanner);
+			if (cache != null && complete) {
+				cache.putClassNames(classLoader, packageName, filter, found);
+			}
+			names = found;
+		}
+		return names;
+	}
+
+	/**
+	 * Load the named classes without initializing them.
+	 * <p>
+	 * If the class loader is registered as parallel capable up to parallelism
+	 * classes are loaded at the same time on the executor, the calling thread
+	 * takes part in the loading. Other class loaders lock themselves while
+	 * loading so the classes are loaded one at a time on the calling thread.
+	 * Classes that throw a ClassNotFoundException or a LinkageError (e.g.
+	 * NoClassDefFoundError) are reported in the result rather than logged
+	 * individually.
+	 * </p>
+	 *
+	 * @param classLoader
+	 *            The class loader to load the classes from.
+	 * @param classNames
+	 *            The names of the classes to load.
+	 * @param executor
+	 *            The executor to load the classes with. If null the common
+	 *            fork/join pool is used.
+	 * @param parallelism
+	 *            The maximum number of threads that load classes at the same
+	 *            time.
+	 * @return the loaded classes and the load failures, both in the order of
+	 *         the names.
+	 */
+	public static ClassLoadResult loadClasses(final ClassLoader classLoader, final Collection<String> classNames,
+			final Executor executor, final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		if (classLoader == null) {
+			throw new IllegalArgumentException("Class loader may not be null");
+		}
+		final String[] names = classNames.toArray(new String[classNames.size()]);
+		// each slot holds the loaded Class or the Throwable that was thrown.
+		final Object[] loaded = new Object[names.length];
+		final AtomicInteger next = new AtomicInteger();
+		Runnable loader = new Runnable() {
+			@Override
+			public void run() {
+				int i;
+				while ((i = next.getAndIncrement()) < names.length) {
+					try {
+						loaded[i] = Class.forName(names[i], false, classLoader);
+					} catch (final ClassNotFoundException | LinkageError e) {
+						loaded[i] = e;
+					}
+				}
+			}
+		};
+		int threads = isParallelCapable(classLoader) ? Math.min(parallelism, names.length) : 1;
+		if (threads > 1) {
+			runTasks(Collections.nCopies(threads, loader), executor);
+		} else {
+			loader.run();
+		}
+
+		Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+		Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+		for (int i = 0; i < names.length; i++) {
+			if (loaded[i] instanceof Class) {
+				classes.add((Class<?>) loaded[i]);
+			} else if (loaded[i] != null) {
+				failures.put(names[i], (Throwable) loaded[i]);
+			}
+		}
+		if (!failures.isEmpty()) {
+			String err = String.format("Unable to load %s of %s classes", failures.size(), names.length);
+			doLog(err);
+			LOG.warn(err);
+		}
+		return new ClassLoadResult(classes, failures);
+	}
+
+	/**
+	 * Check if a class loader is registered as parallel capable. Parallel
+	 * capable class loaders can load different classes at the same time. On
+	 * Java 8, which can not report it, the class loader's lock map is checked
+	 * instead; if that can not be read the class loader is treated as not
+	 * parallel capable.
+	 * 
+	 * @param classLoader
+	 *            the class loader to check.
+	 * @return true if the class loader is parallel capable, false if it is not
+	 *         or the runtime can not tell.
+	 */
+	static boolean isParallelCapable(ClassLoader classLoader) {
+		try {
+			if (IS_PARALLEL_CAPABLE != null) {
+				return (Boolean) IS_PARALLEL_CAPABLE.invoke(classLoader);
+			}
+			return PARALLEL_LOCK_MAP != null && PARALLEL_LOCK_MAP.get(classLoader) != null;
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Stream the names of the classes accessible from the class loader which
+	 * belong to the given package and sub packages and pass the filter.
+	 * <p>
+	 * The stream is lazy: class path roots are scanned as the stream is
+	 * consumed, so short-circuiting operations such as findFirst() stop the
+	 * scan early and names are never all held in memory. The stream splits
+	 * on class path roots so a parallel stream scans roots concurrently. A
+	 * class present in more than one root is reported once for each root,
+	 * use distinct() if that is not wanted. The scan cache is not used.
+	 * </p>
+	 * 
+	 * @param classLoader
+	 *            The class loader to scan.
+	 * @param packageName
+	 *            The package name to locate the classes in.
+	 * @param filter
+	 *            The filter for the classes.
+	 * @return A stream of class names in class path order.
+	 */
+	public static Stream<String> streamClassNames(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter) {
+		return stream(classLoader, packageName, filter, true);
+	}
+
+	/**
+	 * Stream the classes accessible from the class loader which belong to the
+	 * given package and sub packages and pass the filter. Classes are loaded
+	 * (but not initialized) as the stream is consumed, classes that can not be
+	 * loaded are logged and skipped.
+	 * 
+	 * @param classLoader
+	 *            The class loader to load the classes from.
+	 * @param packageName
+	 *            The package name to locate the classes in.
+	 * @param filter
+	 *            The filter for the classes.
+	 * @return A stream of classes in class path order.
+	 * @see #streamClassNames(ClassLoader, String, ClassPathFilter)
+	 */
+	public static Stream<Class<?>> streamClasses(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter) {
+		return streamClassNames(classLoader, packageName, filter).<Class<?>> map(name -> loadClass(classLoader, name))
+				.filter(Objects::nonNull);
+	}
+
+	/**
+	 * Stream the resources accessible from the class loader which belong to
+	 * the given package and sub packages and pass the filter. Resources that
+	 * can not be located are logged and skipped.
+	 * 
+	 * @param classLoader
+	 *            The class loader to locate the resources with.
+	 * @param packageName
+	 *            The package name to locate the resources in.
+	 * @param filter
+	 *            The filter for the resources.
+	 * @return A stream of resource URLs in class path order.
+	 * @see #streamClassNames(ClassLoader, String, ClassPathFilter)
+	 */
+	public static Stream<URL> streamResources(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter) {
+		return stream(classLoader, packageName, filter, false).map(path -> getResource(classLoader, path))
+				.filter(Objects::nonNull);
+	}
+
+	private static Stream<String> stream(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter, boolean classNames) {
+		if (classLoader == null) {
+			LOG.error("Class loader may not be null.");
+			return Stream.empty();
+		}
+		if (packageName == null) {
+			LOG.error("Package name may not be null.");
+			return Stream.empty();
+		}
+		List<String> roots = new ArrayList<String>(getRootDirectories(getAllResources(classLoader)));
+		ScanFilter scanFilter = classNames ? classFilter(packageName, filter, classLoader)
+				: resourceFilter(packageName, filter, classLoader);
+		return StreamSupport.stream(new ScanSpliterator(roots, 0, roots.size(), packageName, scanFilter, classNames),
+				false);
+	}
+
+	/**
+	 * Visit the classes accessible from the class loader which belong to the
+	 * given package and sub packages and pass the filter. The class path roots
+	 * are scanned in order and the visitor is called for each class name as it
+	 * is found. Classes are not loaded by the scan.
+	 * 
+	 * @param classLoader
+	 *            The class loader to scan.
+	 * @param packageName
+	 *            The package name to locate the classes in.
+	 * @param filter
+	 *            The filter for the classes.
+	 * @param visitor
+	 *            The visitor to call for each class.
+	 * @return true if the visitor terminated the scan, false otherwise.
+	 */
+	public static boolean visitClasses(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter, final ClassPathVisitor visitor) {
+		return visit(classLoader, packageName, filter, visitor, true);
+	}
+
+	/**
+	 * Visit the resources accessible from the class loader which belong to
+	 * the given package and sub packages and pass the filter. The class path
+	 * roots are scanned in order and the visitor is called for each resource
+	 * name as it is found.
+	 * 
+	 * @param classLoader
+	 *            The class loader to scan.
+	 * @param packageName
+	 *            The package name to locate the resources in.
+	 * @param filter
+	 *            The filter for the resources.
+	 * @param visitor
+	 *            The visitor to call for each resource.
+	 * @return true if the visitor terminated the scan, false otherwise.
+	 */
+	public static boolean visitResources(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter, final ClassPathVisitor visitor) {
+		return visit(classLoader, packageName, filter, visitor, false);
+	}
+
+	private static boolean visit(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter, final ClassPathVisitor visitor, final boolean classNames) {
+		if (visitor == null) {
+			throw new IllegalArgumentException("Visitor may not be null");
+		}
+		if (classLoader == null) {
+			LOG.error("Class loader may not be null.");
+			return false;
+		}
+		if (packageName == null) {
+			LOG.error("Package name may not be null.");
+			return false;
+		}
+		VisitorSink sink = new VisitorSink(classLoader, visitor, classNames);
+		ScanFilter scanFilter = classNames ? classFilter(packageName, filter, classLoader)
+				: resourceFilter(packageName, filter, classLoader);
+		try {
+			for (String root : getRootDirectories(getAllResources(classLoader))) {
+				sink.root = root;
+				try {
+					if (classNames) {
+						scanClassNames(root, packageName, scanFilter, sink);
+					} else {
+						scanResourcePaths(root, packageName, scanFilter, sink);
+					}
+				} catch (final IOException e) {
+					doLog(e.toString());
+					LOG.warn(e.toString());
+				}
+				if (sink.terminated) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			saveIndex();
+		}
+	}
+
+	/**
+	 * Determine whether any class accessible from the class loader belongs to
+	 * the given package and sub packages and passes the filter. The scan stops
+	 * at the first match and no classes are loaded.
+	 * 
+	 * @param classLoader
+	 *            The class loader to scan.
+	 * @param packageName
+	 *            The package name to locate the classes in.
+	 * @param filter
+	 *            The filter for the classes.
+	 * @return true if a matching class exists.
 	 */
-	public static Collection<Class<?>> getClasses(final String packageName) {
-		return getClasses(packageName, new PrefixClassFilter(packageName));
+	public static boolean hasClasses(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter) {
+		return visitClasses(classLoader, packageName, filter, (root, name, url) -> ClassPathVisitor.Result.TERMINATE);
 	}
 
 	/**
-	 * Get a collection of classes in the package name that meet the filter.
-	 * Classes will be loaded from the current thread class loader.
+	 * Find the first class accessible from the class loader which belongs to
+	 * the given package and sub packages and passes the filter. The scan stops
+	 * at the first class that can be loaded.
 	 * 
+	 * @param classLoader
+	 *            The class loader to load the class from.
 	 * @param packageName
-	 *            The package name to locate.
+	 *            The package name to locate the class in.
 	 * @param filter
-	 *            the ClassFilter to filter the results with.
-	 * @return A collection of Class objects.
+	 *            The filter for the class.
+	 * @return the first matching class in class path order, if any.
 	 */
-	public static Collection<Class<?>> getClasses(final String packageName, ClassPathFilter filter) {
-		final ClassLoader classLoader = getClassLoader();
-		if (classLoader == null) {
-			LOG.error("Class loader may not be null.  No class loader for current thread");
-			return Collections.emptyList();
-		}
-		return getClasses(classLoader, packageName, filter);
+	public static Optional<Class<?>> findFirstClass(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter) {
+		Collection<Class<?>> classes = getClasses(classLoader, packageName, filter, 1);
+		return classes.isEmpty() ? Optional.<Class<?>> empty() : Optional.<Class<?>> of(classes.iterator().next());
 	}
 
 	/**
-	 * Find all classes accessible from the class loader which belong to the
-	 * given package and sub packages.
-	 *
-	 * Adapted from http://snippets.dzone.com/posts/show/4831 and extended to
-	 * support use of JAR files
-	 *
+	 * Find the first resource accessible from the class loader which belongs
+	 * to the given package and sub packages and passes the filter. The scan
+	 * stops at the first resource that can be located.
+	 * 
 	 * @param classLoader
-	 *            The class loader to load the classes from.
+	 *            The class loader to locate the resource with.
 	 * @param packageName
-	 *            The base package or class name
-	 * @return A collection of Class objects
+	 *            The package name to locate the resource in.
+	 * @param filter
+	 *            The filter for the resource.
+	 * @return the first matching resource in class path order, if any.
 	 */
-	public static Collection<Class<?>> getClasses(final ClassLoader classLoader, final String packageName) {
-		return getClasses(classLoader, packageName, new PrefixClassFilter(packageName));
+	public static Optional<URL> findFirstResource(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter) {
+		Collection<URL> urls = getResources(classLoader, packageName, filter, 1);
+		return urls.isEmpty() ? Optional.<URL> empty() : Optional.of(urls.iterator().next());
 	}
 
 	/**
-	 * Find all classes accessible from the class loader which belong to the
-	 * given package and sub packages.
-	 *
-	 * Adapted from http://snippets.dzone.com/posts/show/4831 and extended to
-	 * support use of JAR files
-	 *
+	 * Find at most limit classes accessible from the class loader which belong
+	 * to the given package and sub packages and pass the filter. The scan
+	 * stops as soon as the limit is reached.
+	 * 
 	 * @param classLoader
 	 *            The class loader to load the classes from.
 	 * @param packageName
 	 *            The package name to locate the classes in.
 	 * @param filter
 	 *            The filter for the classes.
-	 * @return A collection of Class objects
+	 * @param limit
+	 *            The maximum number of classes to return.
+	 * @return the classes in class path order.
 	 */
 	public static Collection<Class<?>> getClasses(final ClassLoader classLoader, final String packageName,
-			final ClassPathFilter filter) {
-		if (classLoader == null) {
-			LOG.error("Class loader may not be null.");
-			return Collections.emptyList();
+			final ClassPathFilter filter, final int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("Limit may not be negative");
 		}
-		if (packageName == null) {
-			LOG.error("Package name may not be null.");
-			return Collections.emptyList();
+		final Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+		if (limit > 0) {
+			visitClasses(classLoader, packageName, filter, (root, name, url) -> {
+				Class<?> c = loadClass(classLoader, name);
+				if (c != null) {
+					classes.add(c);
+				}
+				return classes.size() < limit ? ClassPathVisitor.Result.CONTINUE : ClassPathVisitor.Result.TERMINATE;
+			});
 		}
+		return classes;
+	}
 
-		Set<URL> resources = getAllResources(classLoader);
-
-		final Set<Class<?>> classes = new HashSet<Class<?>>();
-		final Set<String> directories = new HashSet<String>();
-
-		for (URL resource : resources) {
-			if (LOG.isInfoEnabled() || os != null) {
-
-				String s = String.format("getting classes processing: %s ", resource);
-				LOG.debug(s);
-				doLog(s);
-			}
-
-			String dir = resource.getPath();
-			if (LOG.isDebugEnabled()) {
-				LOG.debug(String.format("Processing dir %s", dir));
-			}
-
-			if (!directories.contains(dir)) {
-				directories.add(dir);
-
-				try {
-					for (final String clazz : findClasses(dir, packageName, filter)) {
-						try {
-							if (LOG.isDebugEnabled()) {
-								LOG.debug(String.format("Adding class %s", clazz));
-							}
-							classes.add(Class.forName(clazz, false, classLoader));
-						} catch (final ClassNotFoundException e) {
-							String err = String.format("Unable to get class %s due to %s", clazz, e.toString());
-							doLog(err);
-							LOG.warn(err);
-						} catch (NoClassDefFoundError e) {
-							String err = String.format("Unable to get class %s due to %s", clazz, e.toString());
-							doLog(err);
-							LOG.warn(err);
-						}
-					}
-				} catch (final IOException e) {
-					doLog(e.toString());
-					LOG.warn(e.toString());
+	/**
+	 * Find at most limit resources accessible from the class loader which
+	 * belong to the given package and sub packages and pass the filter. The
+	 * scan stops as soon as the limit is reached.
+	 * 
+	 * @param classLoader
+	 *            The class loader to locate the resources with.
+	 * @param packageName
+	 *            The package name to locate the resources in.
+	 * @param filter
+	 *            The filter for the resources.
+	 * @param limit
+	 *            The maximum number of resources to return.
+	 * @return the resource URLs in class path order.
+	 */
+	public static Collection<URL> getResources(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter, final int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("Limit may not be negative");
+		}
+		final Set<URL> urls = new LinkedHashSet<URL>();
+		if (limit > 0) {
+			visitResources(classLoader, packageName, filter, (root, name, url) -> {
+				URL u = url.get();
+				if (u != null) {
+					urls.add(u);
+				} else {
+					LOG.warn(String.format("Unable to locate: %s", name));
 				}
-			}
+				return urls.size() < limit ? ClassPathVisitor.Result.CONTINUE : ClassPathVisitor.Result.TERMINATE;
+			});
 		}
-
-		return classes;
+		return urls;
 	}
 
 	/**
@@ -277,9 +1084,14 @@ public class ClassPathUtils {
 	 *            The collection of classes to filter.
 	 * @param filter
 	 *            The filter to use.
-	 * @return the set of Class objects that pass the filter.
+	 * @return the set of Class objects that pass the filter. If classes is a
+	 *         LazyClassSet the names are filtered and a LazyClassSet is
+	 *         returned.
 	 */
 	public static Set<Class<?>> filterClasses(Collection<Class<?>> classes, ClassPathFilter filter) {
+		if (classes instanceof LazyClassSet) {
+			return ((LazyClassSet) classes).filter(filter);
+		}
 		Set<Class<?>> retval = new HashSet<Class<?>>();
 		for (Class<?> clazz : classes) {
 			if (filter.accept(clazz)) {
@@ -413,6 +1225,50 @@ public class ClassPathUtils {
 	 */
 	public static Set<String> findResources(final String directory, String packageName, final ClassPathFilter filter)
 			throws IOException {
+		final Set<String> classes = new HashSet<String>();
+		scanResourcePaths(directory, packageName, resourceFilter(packageName, filter, null), path -> {
+			classes.add(modifyFileName(path));
+			return true;
+		});
+		return classes;
+	}
+
+	/**
+	 * Scan a directory or jar for resources, passing the '/' separated
+	 * resource paths to the sink as they are found. The filter is applied to
+	 * the resource names.
+	 * 
+	 * @param directory
+	 *            The directory or jar file to search.
+	 * @param packageName
+	 *            The package to look for.
+	 * @param filter
+	 *            The filter from resourceFilter().
+	 * @param sink
+	 *            The sink to receive the resource paths.
+	 * @throws IOException
+	 *             on error.
+	 */
+	static void scanResourcePaths(final String directory, String packageName, final ScanFilter filter,
+			final NameSink sink) throws IOException {
+		drain(resourcePaths(directory, packageName, filter), sink);
+	}
+
+	/**
+	 * Prepare the filter for a scan for resources. The filter is optimized
+	 * and planned once for all of the roots.
+	 * 
+	 * @param packageName
+	 *            The package to look for.
+	 * @param filter
+	 *            The filter to apply to results.
+	 * @param classLoader
+	 *            The class loader to read and load the classes with, null for
+	 *            the default.
+	 * @return the filter for the scan.
+	 */
+	static ScanFilter resourceFilter(String packageName, final ClassPathFilter filter,
+			final ClassLoader classLoader) {
 		ClassPathFilter myFilter = filter.optimize();
 
 		if (LOG.isInfoEnabled() || os != null) {
@@ -422,17 +1278,27 @@ public class ClassPathUtils {
 			doLog(s);
 
 		}
+		return new ScanFilter(myFilter, classLoader, true);
+	}
 
-		final Set<String> classes = new HashSet<String>();
-
-		if (directory.contains("!") || directory.endsWith(".jar")) {
-			handleJar(classes, directory, myFilter);
-
-		} else {
-			String dirStr = directory.startsWith("file:") ? directory.substring("file:".length()) : directory;
-			scanDir(classes, packageName, new File(dirStr), myFilter);
-		}
-		return classes;
+	/**
+	 * Scan a directory or jar for resources, returning the '/' separated
+	 * resource paths as they are found. The filter is applied to the resource
+	 * names.
+	 * 
+	 * @param directory
+	 *            The directory or jar file to search.
+	 * @param packageName
+	 *            The package to look for.
+	 * @param filter
+	 *            The filter from resourceFilter().
+	 * @return an iterator over the resource paths.
+	 * @throws IOException
+	 *             on error.
+	 */
+	static Iterator<String> resourcePaths(final String directory, String packageName, final ScanFilter filter)
+			throws IOException {
+		return scan(directory, packageName, filter);
 	}
 
 	/**
@@ -532,6 +1398,31 @@ public class ClassPathUtils {
 	 */
 	public static Collection<URL> getResources(final ClassLoader classLoader, final String packageName,
 			final ClassPathFilter filter) {
+		return getResources(classLoader, packageName, filter, CALLER_RUNS);
+	}
+
+	/**
+	 * Find all resources accessible from the class loader which belong to the
+	 * given package and sub packages. The class path roots are scanned in
+	 * parallel on the executor.
+	 * <p>
+	 * The result set is the same as that returned by the sequential
+	 * {@link #getResources(ClassLoader, String, ClassPathFilter)}.
+	 * </p>
+	 *
+	 * @param classLoader
+	 *            The class loader to load the resources from.
+	 * @param packageName
+	 *            The package name to locate the resources in.
+	 * @param filter
+	 *            The filter for the resources.
+	 * @param executor
+	 *            The executor to scan the roots with. If null the common
+	 *            fork/join pool is used.
+	 * @return A collection of URL objects
+	 */
+	public static Collection<URL> getResources(final ClassLoader classLoader, final String packageName,
+			final ClassPathFilter filter, final Executor executor) {
 		if (classLoader == null) {
 			LOG.error("Class loader may not be null.");
 			return Collections.emptyList();
@@ -550,103 +1441,201 @@ public class ClassPathUtils {
 			}
 		}
 
-		Set<URL> resources = getAllResources(classLoader);
+		final ScanCache cache = scanCache;
+		if (cache != null) {
+			Set<URL> urls = cache.getResources(classLoader, packageName, filter);
+			if (urls != null) {
+				return new HashSet<URL>(urls);
+			}
+		}
 
-		final Set<URL> classes = new HashSet<URL>();
-		final Set<String> directories = new HashSet<String>();
-		for (URL resource : resources) {
-			String dir = resource.getPath();
-			if (!directories.contains(dir)) {
-				directories.add(dir);
+		final Set<URL> classes = Collections.newSetFromMap(new ConcurrentHashMap<URL, Boolean>());
+		final ScanFilter scanFilter = resourceFilter(packageName, filter, classLoader);
 
+		boolean complete = scanRoots(getRootDirectories(getAllResources(classLoader)), executor, new RootScanner() {
+			@Override
+			public void scan(String dir) {
 				try {
-					for (final String clazz : findResources(dir, packageName, filter)) {
-						if (LOG.isDebugEnabled()) {
-							LOG.debug(String.format("Adding class %s", clazz));
-						}
-						URL url = classLoader.getResource(clazz);
+					scanResourcePaths(dir, packageName, scanFilter, path -> {
+						URL url = getResource(classLoader, path);
 						if (url != null) {
 							classes.add(url);
-						} else {
-							LOG.warn(String.format("Unable to locate: %s", clazz));
 						}
-					}
+						return true;
+					});
 				} catch (final IOException e) {
 					LOG.warn(e.toString());
 				}
 			}
+		});
+
+		if (cache != null && complete) {
+			cache.putResources(classLoader, packageName, filter, classes);
 		}
 
 		return classes;
 	}
 
 	/**
-	 * Handle the files in a given package. The directory is already known to be
-	 * at or under the directory specified by the package name. So we just have
-	 * to find matches.
+	 * Load a class without initializing it. Failures are logged.
 	 * 
-	 * @param classes
-	 * @param packageName
-	 * @param dir
-	 * @param cFilter
+	 * @param classLoader
+	 *            the class loader to load the class from.
+	 * @param clazz
+	 *            the name of the class.
+	 * @return the class or null if it could not be loaded.
 	 */
-	private static void handleDir(Set<String> classes, String packageName, File dir, ClassPathFilter cFilter) {
-		if (!dir.exists()) {
-			return;
-		}
-		if (dir.isDirectory()) {
-			// handle all the classes in the directory
-			for (File file : dir.listFiles((FileFilter) new NotFileFilter(DirectoryFileFilter.DIRECTORY))) {
-				handleDir(classes, packageName, file, cFilter);
-			}
-			// handle all the sub-directories
-			for (File file : dir.listFiles((FileFilter) new AndFileFilter(DirectoryFileFilter.DIRECTORY,
-					new NotFileFilter(new PrefixFileFilter("."))))) {
-				final String newPkgName = String.format("%s%s%s", packageName, (packageName.length() > 0 ? "." : ""),
-						file.getName());
-				handleDir(classes, newPkgName, file, cFilter);
-			}
-		} else {
-			String className = String.format("%s%s%s", packageName, (packageName.length() > 0 ? "." : ""),
-					modifyFileName(dir.getName()));
-			if (cFilter.accept(className)) {
-				classes.add(className);
+	private static Class<?> loadClass(ClassLoader classLoader, String clazz) {
+		try {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug(String.format("Adding class %s", clazz));
 			}
+			return Class.forName(clazz, false, classLoader);
+		} catch (final ClassNotFoundException | NoClassDefFoundError e) {
+			String err = String.format("Unable to get class %s due to %s", clazz, e.toString());
+			doLog(err);
+			LOG.warn(err);
+			return null;
 		}
 	}
 
 	/**
-	 * Scan a directory for packages that match. This method is used prior to
-	 * finding a matching directory. Once the package names is matched
-	 * handleDir() is used.
+	 * Locate a resource. Failures are logged.
 	 * 
-	 * @param classes
-	 *            The classes that have been found.
-	 * @param packageName
-	 *            The package name for classes to find.
-	 * @param dir
-	 *            The directory to scan.
-	 * @param cFilter
-	 *            The class acceptance filter.
+	 * @param classLoader
+	 *            the class loader to locate the resource with.
+	 * @param name
+	 *            the name of the resource.
+	 * @return the URL of the resource or null if it could not be located.
 	 */
-	private static void scanDir(Set<String> classes, String packageName, File dir, ClassPathFilter cFilter) {
-		if (!dir.exists()) {
-			return;
+	private static URL getResource(ClassLoader classLoader, String name) {
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(String.format("Adding class %s", name));
 		}
-		if (dir.isDirectory()) {
-			if (dir.getPath().endsWith(packageName.replace('.', '/'))) {
-				// we have a match
-				handleDir(classes, packageName, dir, cFilter);
-			} else {
-				// no match check next level
-				for (File file : dir.listFiles((FileFilter) new AndFileFilter(DirectoryFileFilter.DIRECTORY,
-						new NotFileFilter(new PrefixFileFilter("."))))) {
-					scanDir(classes, packageName, file, cFilter);
+		URL url = classLoader.getResource(name);
+		if (url == null) {
+			LOG.warn(String.format("Unable to locate: %s", name));
+		}
+		return url;
+	}
+
+	/**
+	 * Get the distinct root paths of the resources in the order they were
+	 * presented.
+	 * 
+	 * @param resources
+	 *            the resources as returned from getAllResources().
+	 * @return the distinct paths.
+	 */
+	private static Collection<String> getRootDirectories(Set<URL> resources) {
+		Set<String> directories = new LinkedHashSet<String>();
+		for (URL resource : resources) {
+			directories.add(resource.getPath());
+		}
+		return directories;
+	}
+
+	/**
+	 * Scan each of the root directories with the scanner. One task per root is
+	 * submitted to the executor and the calling thread runs any task the
+	 * executor has not started before waiting for the rest to complete.
+	 * 
+	 * @param dirs
+	 *            The root directories to scan.
+	 * @param executor
+	 *            The executor to run the tasks on, null for the common
+	 *            fork/join pool.
+	 * @param scanner
+	 *            The scanner to execute for each root.
+	 * @return true if every root was scanned, false if the calling thread was
+	 *         interrupted.
+	 */
+	private static boolean scanRoots(Collection<String> dirs, Executor executor, final RootScanner scanner) {
+		List<Runnable> tasks = new ArrayList<Runnable>(dirs.size());
+		for (final String dir : dirs) {
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					scanner.scan(dir);
+				}
+			});
+		}
+		if (!runTasks(tasks, executor)) {
+			return false;
+		}
+		saveIndex();
+		return true;
+	}
+
+	/**
+	 * Run the tasks on the executor and wait for them to complete. The calling
+	 * thread runs any task the executor has not started, including the tasks
+	 * the executor rejects.
+	 * 
+	 * @param runnables
+	 *            The tasks to run.
+	 * @param executor
+	 *            The executor to run the tasks on, null for the common
+	 *            fork/join pool.
+	 * @return true if all tasks completed, false if the calling thread was
+	 *         interrupted.
+	 */
+	private static boolean runTasks(Collection<Runnable> runnables, Executor executor) {
+		Executor exec = executor == null ? ForkJoinPool.commonPool() : executor;
+		List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(runnables.size());
+		for (Runnable runnable : runnables) {
+			FutureTask<Void> task = new FutureTask<Void>(runnable, null);
+			tasks.add(task);
+			try {
+				exec.execute(task);
+			} catch (RejectedExecutionException e) {
+				// the calling thread runs it below.
+				LOG.debug("Executor rejected scan task: " + e.toString());
+			}
+		}
+		// FutureTask.run() is a no-op if the task has already been started
+		for (FutureTask<Void> task : tasks) {
+			task.run();
+		}
+		for (FutureTask<Void> task : tasks) {
+			try {
+				task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for (FutureTask<Void> t : tasks) {
+					t.cancel(true);
 				}
+				LOG.warn("Interrupted while scanning class path");
+				return false;
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Save the persistent index if it has changed.
+	 */
+	static void saveIndex() {
+		ClassPathIndex idx = index;
+		if (idx != null && idx.isDirty()) {
+			try {
+				idx.save();
+			} catch (IOException e) {
+				String err = String.format("Unable to save class path index %s: %s", idx.getIndexFile(),
+						e.toString());
+				doLog(err);
+				LOG.warn(err);
 			}
 		}
-		// if it is not a directory we don't process it here as we are looking
-		// for directories that start with the packageName.
 	}
 
 	/*
@@ -659,15 +1648,14 @@ public class ClassPathUtils {
 	/**
 	 * handle finding classes in a jar.
 	 * 
-	 * @param classes
-	 *            the classes that have been found.
 	 * @param directory
 	 *            The directory path to a file in a jar or the jar itself.
 	 * @param filter
-	 *            The classes to accept.
+	 *            The filter for the scan.
+	 * @return an iterator over the names of the classes that are found.
 	 * @throws IOException
 	 */
-	private static void handleJar(Set<String> classes, String directory, ClassPathFilter filter) throws IOException {
+	private static Iterator<String> handleJar(String directory, ScanFilter filter) throws IOException {
 		final String[] split = directory.split("!");
 		URL jar = null;
 		try {
@@ -677,15 +1665,212 @@ public class ClassPathUtils {
 			jar = new File(split[0]).toURI().toURL();
 		}
 		final String prefix = (split.length > 1 && split[1].length() > 0) ? split[1].substring(1) : "";
-		final ZipInputStream zip = new ZipInputStream(jar.openStream());
-		ClassPathFilter myFilter = new AndClassFilter(new PrefixClassFilter(prefix), filter).optimize();
-		ZipEntry entry = null;
-		while ((entry = zip.getNextEntry()) != null) {
-			final String className = modifyFileName(entry.getName());
-			if (myFilter.accept(className)) {
-				classes.add(className);
+		return new JarNames(getJarEntryNames(jar).iterator(), filter.plan(modifyFileName(prefix)), filter.paths);
+	}
+
+	/**
+	 * The filter for a scan. The filter is planned once and the plan is
+	 * shared by the roots of the scan; only a root inside a jar has its
+	 * prefix added and is planned again.
+	 */
+	static final class ScanFilter {
+		/** The optimized filter */
+		private final ClassPathFilter filter;
+		/** The class loader to read and load the classes with */
+		private final ClassLoader classLoader;
+		/** The planned filter */
+		private final ClassPathFilter planned;
+		/** True to return the resource paths rather than the names */
+		private final boolean paths;
+
+		ScanFilter(ClassPathFilter filter, ClassLoader classLoader, boolean paths) {
+			this.filter = filter;
+			this.classLoader = classLoader;
+			this.planned = StagedFilter.plan(filter, classLoader);
+			this.paths = paths;
+		}
+
+		/**
+		 * Get the planned filter for the names below a prefix.
+		 * 
+		 * @param prefix
+		 *            the prefix the names must start with, may be empty.
+		 * @return the planned filter.
+		 */
+		ClassPathFilter plan(String prefix) {
+			if (prefix.isEmpty()) {
+				return planned;
+			}
+			return StagedFilter.plan(new AndClassFilter(new PrefixClassFilter(prefix), filter).optimize(),
+					classLoader);
+		}
+	}
+
+	/**
+	 * Returns the names, or the entry paths, of the jar entries that pass a
+	 * filter as the entries are read.
+	 */
+	private static final class JarNames implements Iterator<String> {
+		private final Iterator<String> entries;
+		private final ClassPathFilter filter;
+		/** True to return the entry paths rather than the names */
+		private final boolean paths;
+		// entries are generally grouped by directory so remember the last
+		// directory decision as well as all of them.
+		private final Map<String, Tristate> decisions = new HashMap<String, Tristate>();
+		private String lastDir;
+		private Tristate lastMatch;
+		/** The next name, null if it has not been found */
+		private String next;
+
+		JarNames(Iterator<String> entries, ClassPathFilter filter, boolean paths) {
+			this.entries = entries;
+			this.filter = filter;
+			this.paths = paths;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && entries.hasNext()) {
+				String entryName = entries.next();
+				String dir = entryName.substring(0, entryName.lastIndexOf('/') + 1);
+				if (!dir.equals(lastDir)) {
+					lastDir = dir;
+					lastMatch = decisions.get(dir);
+					if (lastMatch == null) {
+						lastMatch = filter.matchPrefix(modifyFileName(dir));
+						decisions.put(dir, lastMatch);
+					}
+				}
+				if (lastMatch == Tristate.NO) {
+					continue;
+				}
+				final String className = modifyFileName(entryName);
+				if (lastMatch == Tristate.YES || filter.accept(className)) {
+					next = paths ? entryName : className;
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			String result = next;
+			next = null;
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Get the names of the entries in a jar. Local jar files are read through
+	 * their central directory, other URLs are streamed.
+	 * 
+	 * @param jar
+	 *            the URL of the jar.
+	 * @return the entry names.
+	 * @throws IOException
+	 *             on error.
+	 */
+	private static Iterable<String> getJarEntryNames(URL jar) throws IOException {
+		File file = toFile(jar);
+		if (file != null && file.isFile()) {
+			ClassPathIndex idx = index;
+			try {
+				return idx == null ? ZipCentralDirectory.open(file) : idx.getEntryNames(file);
+			} catch (IOException e) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug(String.format("Unable to read central directory of %s: %s", file, e.toString()));
+				}
+			}
+		}
+		final List<String> names = new ArrayList<String>();
+		try (ZipInputStream zip = new ZipInputStream(jar.openStream())) {
+			ZipEntry entry = null;
+			while ((entry = zip.getNextEntry()) != null) {
+				names.add(entry.getName());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Convert a file: URL to a file.
+	 * 
+	 * @param url
+	 *            the URL to convert.
+	 * @return the File or null if the URL is not a file URL.
+	 */
+	private static File toFile(URL url) {
+		if (!"file".equalsIgnoreCase(url.getProtocol())) {
+			return null;
+		}
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return new File(url.getPath());
+		}
+	}
+
+	/**
+	 * Passes the names found in a root to a visitor. Class scans add the
+	 * class names, resource scans add the '/' separated resource paths.
+	 */
+	private static final class VisitorSink implements NameSink {
+		private final ClassLoader classLoader;
+		private final ClassPathVisitor visitor;
+		private final boolean classNames;
+		/** The root being scanned */
+		private String root;
+		/** True if the visitor terminated the scan */
+		private boolean terminated;
+
+		VisitorSink(ClassLoader classLoader, ClassPathVisitor visitor, boolean classNames) {
+			this.classLoader = classLoader;
+			this.visitor = visitor;
+			this.classNames = classNames;
+		}
+
+		@Override
+		public boolean add(String entry) {
+			String name = classNames ? entry : modifyFileName(entry);
+			String resource = classNames ? entry.replace('.', '/') + ".class" : entry;
+			ClassPathVisitor.Result result = visitor.visit(root, name, new LazyURL(classLoader, resource));
+			if (result == ClassPathVisitor.Result.TERMINATE) {
+				terminated = true;
 			}
+			return result == ClassPathVisitor.Result.CONTINUE;
 		}
 	}
 
+	/**
+	 * Resolves the URL of a resource on first use.
+	 */
+	private static final class LazyURL implements Supplier<URL> {
+		private final ClassLoader classLoader;
+		private final String resource;
+		private boolean resolved;
+		private URL url;
+
+		LazyURL(ClassLoader classLoader, String resource) {
+			this.classLoader = classLoader;
+			this.resource = resource;
+		}
+
+		@Override
+		public URL get() {
+			if (!resolved) {
+				url = classLoader.getResource(resource);
+				resolved = true;
+			}
+			return url;
+		}
+	}
 }
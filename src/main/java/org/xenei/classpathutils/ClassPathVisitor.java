@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import java.net.URL;
+import java.util.function.Supplier;
+
+/**
+ * A visitor of the entries found by a class path scan.
+ * <p>
+ * The visitor is called for each matching entry as it is found and controls
+ * how the scan proceeds: it may continue, skip the rest of the current root
+ * or terminate the scan. Nothing is loaded unless the visitor asks for it;
+ * the URL of the entry is only resolved when the supplier is called.
+ * </p>
+ *
+ * @see ClassPathUtils#visitClasses(ClassLoader, String, ClassPathFilter,
+ *      ClassPathVisitor)
+ * @see ClassPathUtils#visitResources(ClassLoader, String, ClassPathFilter,
+ *      ClassPathVisitor)
+ */
+public interface ClassPathVisitor {
+
+	/**
+	 * How the scan should proceed after a visit.
+	 */
+	enum Result {
+		/** Continue with the next entry */
+		CONTINUE,
+		/** Skip the remaining entries of the current root */
+		SKIP_ROOT,
+		/** Stop the scan */
+		TERMINATE
+	}
+
+	/**
+	 * Visit an entry.
+	 *
+	 * @param root
+	 *            the class path root (directory or jar) the entry was found
+	 *            in.
+	 * @param name
+	 *            the class name for class scans, the resource name for
+	 *            resource scans.
+	 * @param url
+	 *            supplies the URL of the entry, resolved on first use. The
+	 *            supplied value is null if the entry can not be located.
+	 * @return how the scan should proceed.
+	 */
+	Result visit(String root, String name, Supplier<URL> url);
+
+	/**
+	 * Limit a visitor to a number of entries. The scan is terminated after
+	 * the visitor has been called for the given number of entries.
+	 *
+	 * @param limit
+	 *            the maximum number of entries to visit.
+	 * @param visitor
+	 *            the visitor to limit.
+	 * @return the limited visitor.
+	 */
+	static ClassPathVisitor limit(final int limit, final ClassPathVisitor visitor) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Limit must be at least 1");
+		}
+		return new ClassPathVisitor() {
+			private int count;
+
+			@Override
+			public Result visit(String root, String name, Supplier<URL> url) {
+				Result result = visitor.visit(root, name, url);
+				return ++count < limit ? result : Result.TERMINATE;
+			}
+		};
+	}
+}
@@ -0,0 +1,396 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Walks an exploded class directory returning the names of the files in a
+ * package.
+ * <p>
+ * The tree is searched for the first directory whose path ends with the
+ * package path, every file at or below that directory is then named by
+ * appending its path to the package name and offered to the filter.
+ * Directories whose names start with "." are skipped.
+ * </p>
+ * <p>
+ * Directories that the filter reports can not contain a match (see
+ * {@link ClassPathFilter#matchPrefix(String)}) are not entered, and the filter
+ * is not consulted for the files below a directory it reports always matches.
+ * </p>
+ * <p>
+ * The walk is incremental: a directory is read when the walk enters it and
+ * only the listings of the directories the walk is in are held, so names
+ * can be pulled one at a time with the iterator. Symbolic links are
+ * followed; the walk tracks the file keys of the directories it is in so
+ * link cycles are reported and skipped rather than followed forever. Names
+ * are built in a single buffer that is extended and truncated as the walk
+ * enters and leaves directories.
+ * </p>
+ */
+final class DirectoryWalker implements Iterator<String> {
+
+	private static final Log LOG = LogFactory.getLog(DirectoryWalker.class);
+
+	/** The package name the names start with */
+	private final String packageName;
+	/** The package as a relative path, null for the default package */
+	private final Path packagePath;
+	/** The filter names must pass */
+	private final ClassPathFilter filter;
+	/** The path the resource paths start with, null to return names */
+	private final String pathPrefix;
+	/** The directory the walk starts at */
+	private final Path root;
+	/** The directories the walk is in, innermost first */
+	private final ArrayDeque<Dir> dirs = new ArrayDeque<Dir>();
+	/** The name of the current directory */
+	private final StringBuilder name = new StringBuilder();
+	/** The directory that matched the package, null while searching */
+	private Dir matched;
+	/** The directory below which every name is accepted, null if none */
+	private Dir acceptAll;
+	/** The next name, null if it has not been found */
+	private String next;
+
+	/**
+	 * A directory the walk is in.
+	 */
+	private static final class Dir {
+		/** The directory */
+		private final Path path;
+		/** The file key of the directory, may be null */
+		private final Object key;
+		/** The segment pushed for the directory, null if none */
+		private String segment;
+		/** The entries not yet visited */
+		private Iterator<Path> entries;
+
+		Dir(Path path, Object key) {
+			this.path = path;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param packageName
+	 *            the package to find.
+	 * @param root
+	 *            the directory the walk starts at.
+	 * @param attrs
+	 *            the attributes of the root.
+	 * @param filter
+	 *            the filter names must pass.
+	 * @param paths
+	 *            true to return the resource paths rather than the names.
+	 */
+	private DirectoryWalker(String packageName, Path root, BasicFileAttributes attrs, ClassPathFilter filter,
+			boolean paths) {
+		this.packageName = packageName;
+		String pkgPath = packageName.replace('.', '/');
+		this.packagePath = pkgPath.length() == 0 ? null : root.getFileSystem().getPath(pkgPath);
+		this.filter = filter;
+		this.pathPrefix = paths ? (pkgPath.length() == 0 ? "" : pkgPath + "/") : null;
+		this.root = root;
+		enter(root, attrs);
+	}
+
+	/**
+	 * Walk a directory tree returning the accepted names as they are found.
+	 *
+	 * @param packageName
+	 *            the package to find.
+	 * @param dir
+	 *            the directory to walk. Nothing is returned if it is not a
+	 *            directory.
+	 * @param filter
+	 *            the filter names must pass.
+	 * @return an iterator over the accepted names.
+	 */
+	static Iterator<String> names(String packageName, File dir, ClassPathFilter filter) {
+		return names(packageName, dir, filter, false);
+	}
+
+	/**
+	 * Walk a directory tree returning the accepted names, or the '/'
+	 * separated resource paths of the accepted files, as they are found.
+	 *
+	 * @param packageName
+	 *            the package to find.
+	 * @param dir
+	 *            the directory to walk. Nothing is returned if it is not a
+	 *            directory.
+	 * @param filter
+	 *            the filter names must pass.
+	 * @param paths
+	 *            true to return the resource paths rather than the names.
+	 * @return an iterator over the accepted names or paths.
+	 */
+	static Iterator<String> names(String packageName, File dir, ClassPathFilter filter, boolean paths) {
+		Path path = dir.toPath();
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException e) {
+			return Collections.<String>emptyList().iterator();
+		}
+		if (!attrs.isDirectory()) {
+			return Collections.<String>emptyList().iterator();
+		}
+		return new DirectoryWalker(packageName, path, attrs, filter, paths);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = findNext();
+		}
+		return next != null;
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String result = next;
+		next = null;
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Walk to the next accepted name.
+	 *
+	 * @return the name or null if the walk is complete.
+	 */
+	private String findNext() {
+		while (!dirs.isEmpty()) {
+			Dir dir = dirs.peek();
+			if (!dir.entries.hasNext()) {
+				leave(dirs.pop());
+				continue;
+			}
+			Path file = dir.entries.next();
+			BasicFileAttributes attrs = readAttributes(file);
+			if (attrs == null) {
+				continue;
+			}
+			if (attrs.isDirectory()) {
+				enter(file, attrs);
+			} else if (matched != null) {
+				String fileName = file.getFileName().toString();
+				push(fileName);
+				String className = name.toString();
+				pop(fileName);
+				if (acceptAll != null || filter.accept(className)) {
+					return pathPrefix == null ? className
+							: pathPrefix + toResourcePath(matched.path.relativize(file));
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Read the attributes of a file following links, or of the link itself if
+	 * its target can not be read.
+	 *
+	 * @return the attributes or null if they can not be read.
+	 */
+	private static BasicFileAttributes readAttributes(Path file) {
+		try {
+			return Files.readAttributes(file, BasicFileAttributes.class);
+		} catch (IOException e) {
+			try {
+				return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			} catch (IOException e2) {
+				visitFailed(file, e2);
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Enter a directory unless it is skipped, pruned or a link cycle.
+	 *
+	 * @param path
+	 *            the directory.
+	 * @param attrs
+	 *            the attributes of the directory.
+	 */
+	private void enter(Path path, BasicFileAttributes attrs) {
+		if (path != root && path.getFileName().toString().startsWith(".")) {
+			return;
+		}
+		if (isCycle(path, attrs.fileKey())) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug(String.format("Skipping directory cycle at %s", path));
+			}
+			return;
+		}
+		Dir dir = new Dir(path, attrs.fileKey());
+		if (matched == null) {
+			if (packagePath == null || path.endsWith(packagePath)) {
+				matched = dir;
+				name.setLength(0);
+				name.append(packageName);
+				if (!prune(dir)) {
+					matched = null;
+					return;
+				}
+			}
+		} else {
+			dir.segment = path.getFileName().toString();
+			push(dir.segment);
+			if (!prune(dir)) {
+				pop(dir.segment);
+				return;
+			}
+		}
+		List<Path> entries = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+			for (Path entry : stream) {
+				entries.add(entry);
+			}
+		} catch (IOException | RuntimeException e) {
+			visitFailed(path, e);
+		}
+		dir.entries = entries.iterator();
+		dirs.push(dir);
+	}
+
+	/**
+	 * Check if a directory is one the walk is already in.
+	 */
+	private boolean isCycle(Path path, Object key) {
+		for (Dir dir : dirs) {
+			if (key != null && dir.key != null) {
+				if (key.equals(dir.key)) {
+					return true;
+				}
+			} else {
+				try {
+					if (Files.isSameFile(path, dir.path)) {
+						return true;
+					}
+				} catch (IOException e) {
+					// can not tell, treat as different
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Ask the filter whether anything in the directory can match. The
+	 * directory is skipped if nothing can, the filter is not consulted below
+	 * the directory if everything does.
+	 *
+	 * @param dir
+	 *            the directory being entered.
+	 * @return false if the directory should be skipped.
+	 */
+	private boolean prune(Dir dir) {
+		if (acceptAll != null) {
+			return true;
+		}
+		int len = name.length();
+		if (len > 0) {
+			name.append('.');
+		}
+		Tristate match = filter.matchPrefix(name.toString());
+		name.setLength(len);
+		if (match == Tristate.NO) {
+			return false;
+		}
+		if (match == Tristate.YES) {
+			acceptAll = dir;
+		}
+		return true;
+	}
+
+	/**
+	 * Leave a directory that has been walked.
+	 */
+	private void leave(Dir dir) {
+		if (dir == acceptAll) {
+			acceptAll = null;
+		}
+		if (dir == matched) {
+			matched = null;
+		} else if (dir.segment != null) {
+			pop(dir.segment);
+		}
+	}
+
+	/**
+	 * Convert a relative path to a '/' separated resource path.
+	 */
+	private static String toResourcePath(Path path) {
+		String separator = path.getFileSystem().getSeparator();
+		String str = path.toString();
+		return "/".equals(separator) ? str : str.replace(separator, "/");
+	}
+
+	private static void visitFailed(Path file, Exception exc) {
+		String err = String.format("Unable to read %s: %s", file, exc.toString());
+		ClassPathUtils.doLog(err);
+		LOG.warn(err);
+	}
+
+	/**
+	 * Append a path segment to the name.
+	 */
+	private void push(String segment) {
+		if (name.length() > 0) {
+			name.append('.');
+		}
+		name.append(segment);
+	}
+
+	/**
+	 * Remove a path segment appended by push().
+	 */
+	private void pop(String segment) {
+		int len = name.length() - segment.length();
+		name.setLength(len > 0 ? len - 1 : 0);
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xenei.classpathutils.filter.StagedFilter;
+
+/**
+ * An unmodifiable set of classes that holds class names and only loads a
+ * class when it is accessed.
+ * <p>
+ * Each class is loaded (without initialization) the first time it is
+ * returned by an iterator or {@link #get(String)} and the loaded class is
+ * kept. Classes that can not be loaded are logged once and skipped. Because
+ * the set only contains the classes that load, {@link #size()} loads every
+ * class; use {@link #getNames()} for the names without loading. Filtering
+ * with {@link #filter(ClassPathFilter)} works on the names, and the class
+ * files when the filter needs them, so a class is only loaded when the
+ * filter needs the class.
+ * </p>
+ * <p>
+ * Loading a class more than once returns the same class, so concurrent
+ * readers are safe, but a class may be loaded by more than one of them.
+ * </p>
+ */
+public final class LazyClassSet extends AbstractSet<Class<?>> {
+
+	private static final Log LOG = LogFactory.getLog(LazyClassSet.class);
+
+	/** Marks a class that could not be loaded */
+	private static final Object FAILED = new Object();
+
+	private final ClassLoader classLoader;
+	private final String[] names;
+	/** The loaded class, FAILED or null if not yet loaded for each name */
+	private final Object[] loaded;
+	/** index of the names, created on first lookup */
+	private volatile Map<String, Integer> positions;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param classLoader
+	 *            the class loader to load the classes from.
+	 * @param classNames
+	 *            the names of the classes. Duplicate names are ignored.
+	 */
+	public LazyClassSet(ClassLoader classLoader, Collection<String> classNames) {
+		if (classLoader == null) {
+			throw new IllegalArgumentException("Class loader may not be null");
+		}
+		this.classLoader = classLoader;
+		this.names = new LinkedHashSet<String>(classNames).toArray(new String[0]);
+		this.loaded = new Object[names.length];
+	}
+
+	private LazyClassSet(ClassLoader classLoader, String[] names, Object[] loaded) {
+		this.classLoader = classLoader;
+		this.names = names;
+		this.loaded = loaded;
+	}
+
+	/**
+	 * Get the class loader the classes are loaded from.
+	 *
+	 * @return the class loader.
+	 */
+	public ClassLoader getClassLoader() {
+		return classLoader;
+	}
+
+	/**
+	 * Get the class names without loading any class.
+	 *
+	 * @return the names in iteration order.
+	 */
+	public List<String> getNames() {
+		return Collections.unmodifiableList(Arrays.asList(names));
+	}
+
+	/**
+	 * Get the number of classes that have been loaded so far.
+	 *
+	 * @return the number of loaded classes.
+	 */
+	public int getLoadedCount() {
+		int count = 0;
+		for (Object o : loaded) {
+			if (o instanceof Class) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get a class by name, loading it if necessary.
+	 *
+	 * @param className
+	 *            the name of the class.
+	 * @return the class or null if the name is not in the set or the class
+	 *         can not be loaded.
+	 */
+	public Class<?> get(String className) {
+		Integer idx = positions().get(className);
+		return idx == null ? null : load(idx);
+	}
+
+	/**
+	 * Create a set of the classes that pass the filter. A filter that only
+	 * checks names is applied to the class names so no class is loaded by
+	 * this call. Other filters read the class files and classes from the
+	 * class loader of this set. Classes already loaded are shared with the
+	 * new set.
+	 *
+	 * @param filter
+	 *            the filter to apply.
+	 * @return a new set of the classes that pass the filter.
+	 */
+	public LazyClassSet filter(ClassPathFilter filter) {
+		boolean namesOnly = StagedFilter.isNamesOnly(filter);
+		List<String> keptNames = new ArrayList<String>();
+		List<Object> keptLoaded = new ArrayList<Object>();
+		for (int i = 0; i < names.length; i++) {
+			if (loaded[i] != FAILED && (namesOnly ? filter.accept(names[i]) : accept(filter, i))) {
+				keptNames.add(names[i]);
+				keptLoaded.add(loaded[i]);
+			}
+		}
+		return new LazyClassSet(classLoader, keptNames.toArray(new String[keptNames.size()]), keptLoaded.toArray());
+	}
+
+	/**
+	 * Check the class at the index with a candidate from the class loader,
+	 * keeping the class if the filter loads it.
+	 *
+	 * @return true if the filter accepts the class and it can be loaded.
+	 */
+	private boolean accept(ClassPathFilter filter, int idx) {
+		Object o = loaded[idx];
+		Candidate candidate = new Candidate(names[idx], classLoader, o instanceof Class ? (Class<?>) o : null);
+		boolean result = filter.accept(candidate);
+		if (o == null && candidate.isClassLoaded()) {
+			Class<?> clazz = candidate.getLoadedClass();
+			loaded[idx] = clazz == null ? FAILED : clazz;
+		}
+		return result && loaded[idx] != FAILED;
+	}
+
+	private Map<String, Integer> positions() {
+		Map<String, Integer> map = positions;
+		if (map == null) {
+			map = new HashMap<String, Integer>();
+			for (int i = 0; i < names.length; i++) {
+				map.put(names[i], i);
+			}
+			positions = map;
+		}
+		return map;
+	}
+
+	/**
+	 * Load the class at the index.
+	 *
+	 * @return the class or null if it can not be loaded.
+	 */
+	private Class<?> load(int idx) {
+		Object o = loaded[idx];
+		if (o == null) {
+			try {
+				o = Class.forName(names[idx], false, classLoader);
+			} catch (ClassNotFoundException | LinkageError e) {
+				String err = String.format("Unable to get class %s due to %s", names[idx], e.toString());
+				ClassPathUtils.doLog(err);
+				LOG.warn(err);
+				o = FAILED;
+			}
+			loaded[idx] = o;
+		}
+		return o == FAILED ? null : (Class<?>) o;
+	}
+
+	/**
+	 * Check if the set contains a class. Only a class whose name is in the
+	 * set is loaded.
+	 */
+	@Override
+	public boolean contains(Object o) {
+		if (o instanceof Class) {
+			Class<?> clazz = (Class<?>) o;
+			return clazz.equals(get(clazz.getName()));
+		}
+		return false;
+	}
+
+	/**
+	 * Check if the set is empty. Classes are loaded until one loads.
+	 */
+	@Override
+	public boolean isEmpty() {
+		return !iterator().hasNext();
+	}
+
+	/**
+	 * The number of classes that can be loaded. This loads every class.
+	 */
+	@Override
+	public int size() {
+		int count = 0;
+		for (int i = 0; i < names.length; i++) {
+			if (load(i) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public Iterator<Class<?>> iterator() {
+		return new Iterator<Class<?>>() {
+			private int idx = 0;
+			private Class<?> next;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && idx < names.length) {
+					next = load(idx++);
+				}
+				return next != null;
+			}
+
+			@Override
+			public Class<?> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Class<?> result = next;
+				next = null;
+				return result;
+			}
+		};
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache of class path scan results.
+ * <p>
+ * Results are keyed by class loader, package name and the string form of the
+ * optimized filter, so equivalent filters share an entry. Class loaders are
+ * held weakly and entries for a collected class loader are discarded. Class
+ * scans are cached as class names rather than Class objects so that the
+ * cache never keeps a class loader reachable.
+ * </p>
+ * <p>
+ * When the cache is full the least recently used entry is evicted. Hit, miss
+ * and eviction counts are kept for tuning. Instances are safe for use by
+ * multiple threads.
+ * </p>
+ *
+ * @see ClassPathUtils#setScanCache(ScanCache)
+ */
+public final class ScanCache {
+
+	/**
+	 * The kind of scan a result is for.
+	 */
+	enum Kind {
+		/** class name scans */
+		CLASSES,
+		/** resource scans */
+		RESOURCES
+	}
+
+	/** The maximum number of entries */
+	private final int maxSize;
+	/** Queue of class loaders that have been collected */
+	private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<ClassLoader>();
+	/** The entries in access order */
+	private final LinkedHashMap<Key, Set<?>> entries;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxSize
+	 *            the maximum number of scan results to hold.
+	 */
+	public ScanCache(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be at least 1");
+		}
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<Key, Set<?>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Set<?>> eldest) {
+				if (size() > ScanCache.this.maxSize) {
+					evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Get the cached class names for a scan.
+	 *
+	 * @param classLoader
+	 *            the class loader scanned.
+	 * @param packageName
+	 *            the package scanned.
+	 * @param filter
+	 *            the filter applied.
+	 * @return the class names or null if not cached.
+	 */
+	@SuppressWarnings("unchecked")
+	Set<String> getClassNames(ClassLoader classLoader, String packageName, ClassPathFilter filter) {
+		return (Set<String>) get(new Key(classLoader, null, Kind.CLASSES, packageName, filter));
+	}
+
+	/**
+	 * Cache the class names for a scan.
+	 *
+	 * @param classLoader
+	 *            the class loader scanned.
+	 * @param packageName
+	 *            the package scanned.
+	 * @param filter
+	 *            the filter applied.
+	 * @param names
+	 *            the class names found.
+	 */
+	void putClassNames(ClassLoader classLoader, String packageName, ClassPathFilter filter, Set<String> names) {
+		put(new Key(classLoader, queue, Kind.CLASSES, packageName, filter), names);
+	}
+
+	/**
+	 * Get the cached resources for a scan.
+	 *
+	 * @param classLoader
+	 *            the class loader scanned.
+	 * @param packageName
+	 *            the package scanned.
+	 * @param filter
+	 *            the filter applied.
+	 * @return the resource URLs or null if not cached.
+	 */
+	@SuppressWarnings("unchecked")
+	Set<URL> getResources(ClassLoader classLoader, String packageName, ClassPathFilter filter) {
+		return (Set<URL>) get(new Key(classLoader, null, Kind.RESOURCES, packageName, filter));
+	}
+
+	/**
+	 * Cache the resources for a scan.
+	 *
+	 * @param classLoader
+	 *            the class loader scanned.
+	 * @param packageName
+	 *            the package scanned.
+	 * @param filter
+	 *            the filter applied.
+	 * @param resources
+	 *            the resource URLs found.
+	 */
+	void putResources(ClassLoader classLoader, String packageName, ClassPathFilter filter, Set<URL> resources) {
+		put(new Key(classLoader, queue, Kind.RESOURCES, packageName, filter), resources);
+	}
+
+	private synchronized Set<?> get(Key key) {
+		expunge();
+		Set<?> result = entries.get(key);
+		if (result == null) {
+			missCount++;
+		} else {
+			hitCount++;
+		}
+		return result;
+	}
+
+	private synchronized void put(Key key, Set<?> value) {
+		expunge();
+		entries.put(key, Collections.unmodifiableSet(value));
+	}
+
+	/**
+	 * Remove the entries for class loaders that have been collected.
+	 */
+	private void expunge() {
+		if (queue.poll() == null) {
+			return;
+		}
+		while (queue.poll() != null) {
+			// drain the queue
+		}
+		Iterator<Key> iter = entries.keySet().iterator();
+		while (iter.hasNext()) {
+			if (iter.next().loader.get() == null) {
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Get the maximum number of entries.
+	 *
+	 * @return the maximum size.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Get the number of entries.
+	 *
+	 * @return the number of cached scan results.
+	 */
+	public synchronized int size() {
+		expunge();
+		return entries.size();
+	}
+
+	/**
+	 * Get the number of lookups that found a cached result.
+	 *
+	 * @return the hit count.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Get the number of lookups that did not find a cached result.
+	 *
+	 * @return the miss count.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Get the number of entries evicted to keep within the maximum size.
+	 *
+	 * @return the eviction count.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Remove all entries. The statistics are not reset.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("ScanCache[size=%s, max=%s, hits=%s, misses=%s, evictions=%s]", entries.size(), maxSize,
+				hitCount, missCount, evictionCount);
+	}
+
+	/**
+	 * The cache key. The class loader is compared by identity.
+	 */
+	private static final class Key {
+		private final Reference<ClassLoader> loader;
+		private final int loaderHash;
+		private final Kind kind;
+		private final String packageName;
+		private final String filter;
+		private final int hash;
+
+		Key(ClassLoader classLoader, ReferenceQueue<ClassLoader> queue, Kind kind, String packageName,
+				ClassPathFilter filter) {
+			this.loader = new WeakReference<ClassLoader>(classLoader, queue);
+			this.loaderHash = System.identityHashCode(classLoader);
+			this.kind = kind;
+			this.packageName = packageName;
+			this.filter = filter.optimize().toString();
+			this.hash = ((loaderHash * 31 + kind.hashCode()) * 31 + packageName.hashCode()) * 31
+					+ this.filter.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o instanceof Key) {
+				Key other = (Key) o;
+				ClassLoader cl = loader.get();
+				return hash == other.hash && cl != null && cl == other.loader.get() && kind == other.kind
+						&& packageName.equals(other.packageName) && filter.equals(other.filter);
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A Spliterator over the names found in a range of class path roots.
+ * <p>
+ * Roots are not scanned until the names are requested, and each name is
+ * passed on as it is found: jar entries are read from the central directory
+ * one at a time and directories are walked incrementally, so no root's names
+ * are buffered. The spliterator splits by dividing its remaining roots so
+ * parallel streams scan the roots concurrently.
+ * </p>
+ */
+final class ScanSpliterator implements Spliterator<String> {
+
+	private static final Log LOG = LogFactory.getLog(ScanSpliterator.class);
+
+	/** The roots to scan */
+	private final List<String> roots;
+	/** The package to scan for */
+	private final String packageName;
+	/** The filter names must pass */
+	private final ClassPathUtils.ScanFilter filter;
+	/** True to scan for class names, false for resource paths */
+	private final boolean classNames;
+	/** The names of the root being scanned, null between roots */
+	private Iterator<String> current;
+	/** The next root to scan */
+	private int index;
+	/** One past the last root to scan */
+	private final int end;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param roots
+	 *            the class path roots.
+	 * @param index
+	 *            the first root to scan.
+	 * @param end
+	 *            one past the last root to scan.
+	 * @param packageName
+	 *            the package to scan for.
+	 * @param filter
+	 *            the filter names must pass, planned once for all the roots.
+	 * @param classNames
+	 *            true to scan for class names, false for resource paths.
+	 */
+	ScanSpliterator(List<String> roots, int index, int end, String packageName, ClassPathUtils.ScanFilter filter,
+			boolean classNames) {
+		this.roots = roots;
+		this.index = index;
+		this.end = end;
+		this.packageName = packageName;
+		this.filter = filter;
+		this.classNames = classNames;
+	}
+
+	/**
+	 * Start the scan of the next root.
+	 */
+	private void scanNext() {
+		String root = roots.get(index++);
+		try {
+			current = classNames ? ClassPathUtils.classNames(root, packageName, filter)
+					: ClassPathUtils.resourcePaths(root, packageName, filter);
+		} catch (IOException e) {
+			ClassPathUtils.doLog(e.toString());
+			LOG.warn(e.toString());
+		}
+		if (index == end) {
+			ClassPathUtils.saveIndex();
+		}
+	}
+
+	/**
+	 * Check if there is another name, starting the scan of the following
+	 * roots as needed.
+	 */
+	private boolean hasNext() {
+		while (current == null || !current.hasNext()) {
+			current = null;
+			if (index == end) {
+				return false;
+			}
+			scanNext();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super String> action) {
+		if (!hasNext()) {
+			return false;
+		}
+		action.accept(current.next());
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(final Consumer<? super String> action) {
+		while (hasNext()) {
+			action.accept(current.next());
+		}
+	}
+
+	@Override
+	public Spliterator<String> trySplit() {
+		// the rest of the current root precedes the remaining roots so can not
+		// be split off.
+		if (current != null || end - index < 2) {
+			return null;
+		}
+		int mid = (index + end) >>> 1;
+		ScanSpliterator prefix = new ScanSpliterator(roots, index, mid, packageName, filter, classNames);
+		index = mid;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return index < end || current != null ? Long.MAX_VALUE : 0;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+/**
+ * A three valued logic result: yes, no or maybe.
+ * <p>
+ * Used when a question can be answered for a whole set of values without
+ * examining each value, see {@link ClassPathFilter#matchPrefix(String)}.
+ * </p>
+ */
+public enum Tristate {
+	/** The answer is yes for every value */
+	YES,
+	/** The answer is no for every value */
+	NO,
+	/** The answer depends on the value */
+	MAYBE;
+
+	/**
+	 * Convert a boolean to a Tristate.
+	 *
+	 * @param b
+	 *            the boolean.
+	 * @return YES if b is true, NO otherwise.
+	 */
+	public static Tristate valueOf(boolean b) {
+		return b ? YES : NO;
+	}
+
+	/**
+	 * The logical AND of this and another value.
+	 *
+	 * @param other
+	 *            the other value.
+	 * @return NO if either is NO, YES if both are YES, MAYBE otherwise.
+	 */
+	public Tristate and(Tristate other) {
+		if (this == NO || other == NO) {
+			return NO;
+		}
+		return this == YES && other == YES ? YES : MAYBE;
+	}
+
+	/**
+	 * The logical OR of this and another value.
+	 *
+	 * @param other
+	 *            the other value.
+	 * @return YES if either is YES, NO if both are NO, MAYBE otherwise.
+	 */
+	public Tristate or(Tristate other) {
+		if (this == YES || other == YES) {
+			return YES;
+		}
+		return this == NO && other == NO ? NO : MAYBE;
+	}
+
+	/**
+	 * The logical NOT of this value.
+	 *
+	 * @return YES for NO, NO for YES and MAYBE for MAYBE.
+	 */
+	public Tristate not() {
+		switch (this) {
+		case YES:
+			return NO;
+		case NO:
+			return YES;
+		default:
+			return MAYBE;
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the entry names of a zip (jar) file from its central directory.
+ * <p>
+ * Only the End Of Central Directory record (and the Zip64 records when
+ * present) and the central directory itself are read. The file is memory
+ * mapped so the cost of listing the entries is proportional to the size of
+ * the central directory and not the size of the compressed data.
+ * </p>
+ * <p>
+ * Entry names are decoded as UTF-8, the same as
+ * {@link java.util.zip.ZipInputStream} does by default.
+ * </p>
+ */
+final class ZipCentralDirectory implements Iterable<String> {
+
+	/** End of central directory record signature */
+	private static final int EOCD_SIG = 0x06054b50;
+	/** Zip64 end of central directory record signature */
+	private static final int ZIP64_EOCD_SIG = 0x06064b50;
+	/** Zip64 end of central directory locator signature */
+	private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+	/** Central directory file header signature */
+	private static final int CEN_SIG = 0x02014b50;
+
+	/** Minimum size of the end of central directory record */
+	private static final int EOCD_LEN = 22;
+	/** Size of the zip64 end of central directory locator */
+	private static final int ZIP64_LOCATOR_LEN = 20;
+	/** Minimum size of the zip64 end of central directory record */
+	private static final int ZIP64_EOCD_LEN = 56;
+	/** Size of the fixed part of a central directory file header */
+	private static final int CEN_LEN = 46;
+	/** Maximum length of the zip file comment */
+	private static final int MAX_COMMENT_LEN = 0xFFFF;
+
+	/** The central directory */
+	private final ByteBuffer directory;
+	/** The number of entries in the central directory */
+	private final long entryCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory
+	 *            the central directory, positioned at the first entry.
+	 * @param entryCount
+	 *            the number of entries in the directory.
+	 */
+	private ZipCentralDirectory(ByteBuffer directory, long entryCount) {
+		this.directory = directory;
+		this.entryCount = entryCount;
+	}
+
+	/**
+	 * Read the central directory of a zip file.
+	 *
+	 * @param file
+	 *            the zip file to read.
+	 * @return the central directory.
+	 * @throws IOException
+	 *             if the file can not be read or is not a zip file.
+	 */
+	public static ZipCentralDirectory open(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			long size = channel.size();
+			if (size < EOCD_LEN) {
+				throw new IOException(String.format("%s is not a zip file", file));
+			}
+
+			// locate the end of central directory record within the tail
+			long tailStart = Math.max(0, size - EOCD_LEN - MAX_COMMENT_LEN - ZIP64_LOCATOR_LEN);
+			ByteBuffer tail = map(channel, tailStart, size - tailStart);
+			int eocd = findEndOfCentralDirectory(tail);
+			if (eocd < 0) {
+				throw new IOException(String.format("%s is not a zip file", file));
+			}
+
+			long entries = tail.getShort(eocd + 10) & 0xFFFFL;
+			long cenSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+			long cenOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+			// the position the central directory ends at.
+			long cenEnd = tailStart + eocd;
+
+			if (entries == 0xFFFFL || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL) {
+				int locator = eocd - ZIP64_LOCATOR_LEN;
+				if (locator >= 0 && tail.getInt(locator) == ZIP64_LOCATOR_SIG) {
+					long zip64Pos = tail.getLong(locator + 8);
+					ByteBuffer zip64 = map(channel, zip64Pos, ZIP64_EOCD_LEN);
+					if (zip64.getInt(0) != ZIP64_EOCD_SIG) {
+						throw new IOException(String.format("%s has an invalid Zip64 end of central directory", file));
+					}
+					entries = zip64.getLong(32);
+					cenSize = zip64.getLong(40);
+					cenOffset = zip64.getLong(48);
+					cenEnd = zip64Pos;
+				}
+			}
+
+			if (cenSize > Integer.MAX_VALUE || cenSize > cenEnd) {
+				throw new IOException(String.format("%s has an invalid central directory size", file));
+			}
+			/*
+			 * the central directory immediately precedes the end record. Use that
+			 * rather than the recorded offset so that files with data prepended
+			 * (e.g. self extracting archives) are handled.
+			 */
+			long cenStart = cenEnd - cenSize;
+			if (cenStart != cenOffset && cenSize > 0) {
+				ByteBuffer check = map(channel, cenStart, 4);
+				if (check.getInt(0) != CEN_SIG) {
+					cenStart = cenOffset;
+				}
+			}
+			ByteBuffer directory = map(channel, cenStart, cenSize);
+			validate(file, directory, entries);
+			return new ZipCentralDirectory(directory, entries);
+		}
+	}
+
+	/**
+	 * Check the signature and length of every entry so that iterating over
+	 * the entries can not fail.
+	 *
+	 * @param file
+	 *            the zip file, for the error messages.
+	 * @param directory
+	 *            the central directory.
+	 * @param entries
+	 *            the number of entries in the directory.
+	 * @throws IOException
+	 *             if an entry is invalid or extends past the end of the
+	 *             directory.
+	 */
+	private static void validate(File file, ByteBuffer directory, long entries) throws IOException {
+		int limit = directory.limit();
+		long position = 0;
+		for (long i = 0; i < entries; i++) {
+			if (position + CEN_LEN > limit) {
+				throw new IOException(String.format("%s has a truncated central directory at entry %s", file, i));
+			}
+			int pos = (int) position;
+			if (directory.getInt(pos) != CEN_SIG) {
+				throw new IOException(String.format("%s has an invalid central directory entry at %s", file, pos));
+			}
+			position += CEN_LEN + (directory.getShort(pos + 28) & 0xFFFF) + (directory.getShort(pos + 30) & 0xFFFF)
+					+ (directory.getShort(pos + 32) & 0xFFFF);
+			if (position > limit) {
+				throw new IOException(String.format("%s has a truncated central directory at entry %s", file, i));
+			}
+		}
+	}
+
+	/**
+	 * Memory map a region of the channel in little endian order.
+	 */
+	private static ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+		if (position < 0 || position + length > channel.size()) {
+			throw new IOException("Zip structure points outside of the file");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Search backwards through the buffer for the end of central directory
+	 * record.
+	 *
+	 * @param tail
+	 *            the end of the zip file.
+	 * @return the position of the record in the buffer or -1 if not found.
+	 */
+	private static int findEndOfCentralDirectory(ByteBuffer tail) {
+		int limit = tail.limit();
+		for (int pos = limit - EOCD_LEN; pos >= 0; pos--) {
+			if (tail.getInt(pos) == EOCD_SIG) {
+				// the comment must extend exactly to the end of the file.
+				int commentLen = tail.getShort(pos + 20) & 0xFFFF;
+				if (pos + EOCD_LEN + commentLen == limit) {
+					return pos;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the number of entries in the central directory.
+	 *
+	 * @return the number of entries.
+	 */
+	public long size() {
+		return entryCount;
+	}
+
+	/**
+	 * Get the names of all the entries.
+	 *
+	 * @return the entry names in central directory order.
+	 */
+	public List<String> getEntryNames() {
+		List<String> names = new ArrayList<String>((int) Math.min(entryCount, Integer.MAX_VALUE));
+		for (String name : this) {
+			names.add(name);
+		}
+		return names;
+	}
+
+	/**
+	 * Iterate over the entry names. Names are decoded as the iterator advances,
+	 * the entries were validated when the directory was opened.
+	 *
+	 * @return an iterator over the entry names.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			private final ByteBuffer buffer = directory.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			private int position = 0;
+			private long remaining = entryCount;
+			private byte[] scratch = new byte[256];
+
+			@Override
+			public boolean hasNext() {
+				return remaining > 0 && position + CEN_LEN <= buffer.limit();
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int nameLen = buffer.getShort(position + 28) & 0xFFFF;
+				int extraLen = buffer.getShort(position + 30) & 0xFFFF;
+				int commentLen = buffer.getShort(position + 32) & 0xFFFF;
+				if (scratch.length < nameLen) {
+					scratch = new byte[nameLen];
+				}
+				buffer.position(position + CEN_LEN);
+				buffer.get(scratch, 0, nameLen);
+				position += CEN_LEN + nameLen + extraLen + commentLen;
+				remaining--;
+				return new String(scratch, 0, nameLen, StandardCharsets.UTF_8);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
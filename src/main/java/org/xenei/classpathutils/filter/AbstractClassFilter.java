@@ -21,7 +21,10 @@ import java.net.URL;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.xenei.classpathutils.Candidate;
+import org.xenei.classpathutils.ClassFileInfo;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.types.ClassFilterType;
 
 /**
@@ -82,12 +85,36 @@ public class AbstractClassFilter extends _AbstractBaseFilter implements ClassFil
 	 */
 	@Override
 	public boolean accept(String className) {
+		return accept(new Candidate(className));
+	}
 
-		try {
-			return accept(loadClass(className));
-		} catch (ClassNotFoundException e) {
-			return false;
+	/**
+	 * Checks to see if the class is abstract, from the class file if it can be
+	 * read.
+	 *
+	 * @param candidate
+	 *            the candidate to check
+	 * @return true if the class is abstract.
+	 */
+	@Override
+	public boolean accept(Candidate candidate) {
+		Tristate result = accept(candidate.getClassFileInfo());
+		if (result != Tristate.MAYBE) {
+			return result == Tristate.YES;
 		}
+		Class<?> clazz = candidate.getLoadedClass();
+		return clazz != null && accept(clazz);
+	}
+
+	/**
+	 * Checks the class file metadata to see if the class is abstract.
+	 *
+	 * @param info
+	 *            the class file metadata, may be null.
+	 * @return MAYBE if info is null.
+	 */
+	/* package private */Tristate accept(ClassFileInfo info) {
+		return info == null ? Tristate.MAYBE : Tristate.valueOf(info.isAbstract());
 	}
 
 	/**
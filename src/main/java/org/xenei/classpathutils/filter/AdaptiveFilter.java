@@ -0,0 +1,430 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
+
+/**
+ * A filter that learns the best order to evaluate the arguments of its And
+ * and Or filters while it is used.
+ * <p>
+ * The static execution order ranks arguments by their type only. This filter
+ * times a sample of the name checks and records how often each argument
+ * passes. Every so often the arguments of each And and Or are sorted so that
+ * the ones that are cheap and usually decide the result run first: by cost
+ * divided by the chance of failing for an And and of passing for an Or. The
+ * result of a check never depends on the order.
+ * </p>
+ * <p>
+ * Wrap a filter before a scan and call {@link #getLearnedFilter()} afterwards
+ * to get the filter with its arguments in the learned order, for example to
+ * save its string form for the next run. The learned filter is not
+ * optimized again, as optimizing restores the static execution order.
+ * </p>
+ * <p>
+ * Only {@link #accept(String)} is adaptive, the other methods are delegated
+ * to the source filter. The filter is safe to use from several threads.
+ * </p>
+ * <p>
+ * The scan methods check names with a {@link StagedFilter}. The parts of
+ * the filter that only check names keep adapting there, but the parts that
+ * read the class file or load the class are staged in the order learned
+ * when the staged filter is built and are not reordered after that.
+ * </p>
+ */
+public final class AdaptiveFilter extends _AbstractBaseFilter {
+
+	private static final Log LOG = LogFactory.getLog(AdaptiveFilter.class);
+
+	/** One in SAMPLE_RATE checks of a node is timed */
+	static final int SAMPLE_RATE = 16;
+
+	/** The arguments of a node are reordered after REORDER_SAMPLES timed checks */
+	static final int REORDER_SAMPLES = 256;
+
+	/**
+	 * The longest time recorded for one check, so a thread that is paused
+	 * (garbage collection, scheduling) does not make an argument look slow.
+	 */
+	private static final long MAX_NANOS = 1000000L;
+
+	private final ClassPathFilter source;
+	private final Part root;
+
+	/**
+	 * Constructor. The filter should be optimized first, its arguments are
+	 * initially checked in their current order.
+	 *
+	 * @param filter
+	 *            the filter to evaluate.
+	 * @throws IllegalArgumentException
+	 *             if the filter is null.
+	 */
+	public AdaptiveFilter(ClassPathFilter filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("Filter may not be null");
+		}
+		this.source = filter;
+		this.root = build(filter);
+	}
+
+	/**
+	 * Build the adaptive form of a filter.
+	 */
+	private static Part build(ClassPathFilter filter) {
+		if (filter instanceof AdaptiveFilter) {
+			return ((AdaptiveFilter) filter).root;
+		}
+		if (filter instanceof AndClassFilter && ((AndClassFilter) filter).getFilters().size() > 1) {
+			List<Part> parts = new ArrayList<Part>();
+			for (ClassPathFilter child : ((AndClassFilter) filter).getFilters()) {
+				parts.add(build(child));
+			}
+			return new Node(true, parts);
+		}
+		if (filter instanceof OrClassFilter && ((OrClassFilter) filter).getFilters().size() > 1) {
+			OrClassFilter or = (OrClassFilter) filter;
+			OrClassFilter.Union union = or.getUnion();
+			List<Part> parts = new ArrayList<Part>();
+			if (union == null) {
+				for (ClassPathFilter child : or.getFilters()) {
+					parts.add(build(child));
+				}
+			} else {
+				// the merged children are checked together.
+				Map<ClassPathFilter, Boolean> others = new IdentityHashMap<ClassPathFilter, Boolean>();
+				for (ClassPathFilter child : union.getBefore()) {
+					others.put(child, Boolean.TRUE);
+					parts.add(build(child));
+				}
+				for (ClassPathFilter child : union.getAfter()) {
+					others.put(child, Boolean.TRUE);
+				}
+				List<ClassPathFilter> merged = new ArrayList<ClassPathFilter>();
+				for (ClassPathFilter child : or.getFilters()) {
+					if (!others.containsKey(child)) {
+						merged.add(child);
+					}
+				}
+				parts.add(new Leaf(merged, union::matches));
+				for (ClassPathFilter child : union.getAfter()) {
+					parts.add(build(child));
+				}
+			}
+			return new Node(false, parts);
+		}
+		if (filter instanceof NotClassFilter) {
+			return new Negation(build(((NotClassFilter) filter).getFilters().get(0)));
+		}
+		return new Leaf(Collections.singletonList(filter), FilterCompiler.toPredicate(filter));
+	}
+
+	/**
+	 * Get the adaptive predicate for accept(String).
+	 *
+	 * @return the predicate.
+	 */
+	Predicate<String> getPredicate() {
+		return root;
+	}
+
+	/**
+	 * Get the filter this filter was created from.
+	 *
+	 * @return the source filter.
+	 */
+	ClassPathFilter getSource() {
+		return source;
+	}
+
+	/**
+	 * Get the source filter with the arguments of each And and Or in the
+	 * order learned so far.
+	 *
+	 * @return a filter that accepts the same names as the source filter.
+	 */
+	public ClassPathFilter getLearnedFilter() {
+		List<ClassPathFilter> result = new ArrayList<ClassPathFilter>(1);
+		root.learned(result);
+		return result.get(0);
+	}
+
+	@Override
+	protected Log getLog() {
+		return LOG;
+	}
+
+	@Override
+	public boolean accept(String className) {
+		return root.test(className);
+	}
+
+	@Override
+	public boolean accept(URL url) {
+		return source.accept(url);
+	}
+
+	@Override
+	public boolean accept(Class<?> clazz) {
+		return source.accept(clazz);
+	}
+
+	@Override
+	public Tristate matchPrefix(String prefix) {
+		return source.matchPrefix(prefix);
+	}
+
+	@Override
+	public String funcName() {
+		return source.funcName();
+	}
+
+	@Override
+	public String[] args() {
+		return source.args();
+	}
+
+	@Override
+	public String toString() {
+		return source.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		return source.hashCode();
+	}
+
+	@Override
+	void freezeState() {
+		source.freeze();
+	}
+
+	@Override
+	public ClassPathFilter optimize() {
+		return this;
+	}
+
+	/**
+	 * A part of the adaptive tree.
+	 */
+	private abstract static class Part implements Predicate<String> {
+		/**
+		 * Add the filters this part stands for, in the learned order.
+		 */
+		abstract void learned(List<ClassPathFilter> result);
+	}
+
+	/**
+	 * A filter that is not reordered, or the merged children of an Or.
+	 */
+	private static final class Leaf extends Part {
+		private final List<ClassPathFilter> filters;
+		private final Predicate<String> predicate;
+
+		Leaf(List<ClassPathFilter> filters, Predicate<String> predicate) {
+			this.filters = filters;
+			this.predicate = predicate;
+		}
+
+		@Override
+		public boolean test(String name) {
+			return predicate.test(name);
+		}
+
+		@Override
+		void learned(List<ClassPathFilter> result) {
+			result.addAll(filters);
+		}
+	}
+
+	/**
+	 * A Not filter.
+	 */
+	private static final class Negation extends Part {
+		private final Part part;
+
+		Negation(Part part) {
+			this.part = part;
+		}
+
+		@Override
+		public boolean test(String name) {
+			return !part.test(name);
+		}
+
+		@Override
+		void learned(List<ClassPathFilter> result) {
+			List<ClassPathFilter> inner = new ArrayList<ClassPathFilter>(1);
+			part.learned(inner);
+			result.add(new NotClassFilter(inner.get(0)));
+		}
+	}
+
+	/**
+	 * An argument of an And or Or with its statistics. The statistics are
+	 * only updated for timed checks and may lose updates under contention,
+	 * they are only used to rank the arguments.
+	 */
+	private static final class Child {
+		private final Part part;
+		private final AtomicLong checks = new AtomicLong();
+		private final AtomicLong passes = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+		/** the rank computed by the last reorder */
+		private double rank;
+		/** the number of checks after the last reorder */
+		private long lastChecks;
+
+		Child(Part part) {
+			this.part = part;
+		}
+
+		void record(boolean passed, long elapsed) {
+			checks.incrementAndGet();
+			if (passed) {
+				passes.incrementAndGet();
+			}
+			nanos.addAndGet(Math.min(elapsed, MAX_NANOS));
+		}
+
+		/**
+		 * Compute the expected cost of deciding the result with this argument.
+		 * Arguments that have never been checked rank last.
+		 */
+		double rank(boolean and) {
+			long n = checks.get();
+			if (n == 0) {
+				return Double.MAX_VALUE;
+			}
+			double pass = (passes.get() + 1.0) / (n + 2.0);
+			double decides = and ? 1.0 - pass : pass;
+			return (nanos.get() / (double) n) / decides;
+		}
+
+		/**
+		 * Halve the statistics so that recent checks count more. The
+		 * statistics of an argument that has not been checked since the last
+		 * reorder are kept, otherwise an argument that is never reached
+		 * would lose its history and be ranked on a handful of old checks.
+		 */
+		void decay() {
+			if (checks.get() != lastChecks) {
+				checks.set(checks.get() / 2);
+				passes.set(passes.get() / 2);
+				nanos.set(nanos.get() / 2);
+				lastChecks = checks.get();
+			}
+		}
+	}
+
+	/**
+	 * An And or Or filter that reorders its arguments.
+	 */
+	private static final class Node extends Part {
+		private final boolean and;
+		private final AtomicLong samples = new AtomicLong();
+		/** the arguments in the current order, replaced when reordered */
+		private volatile Child[] order;
+
+		Node(boolean and, List<Part> parts) {
+			this.and = and;
+			Child[] children = new Child[parts.size()];
+			for (int i = 0; i < children.length; i++) {
+				children[i] = new Child(parts.get(i));
+			}
+			this.order = children;
+		}
+
+		@Override
+		public boolean test(String name) {
+			Child[] children = order;
+			if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) {
+				for (Child child : children) {
+					if (child.part.test(name) != and) {
+						return !and;
+					}
+				}
+				return and;
+			}
+			boolean result = and;
+			for (Child child : children) {
+				long start = System.nanoTime();
+				boolean passed = child.part.test(name);
+				child.record(passed, System.nanoTime() - start);
+				if (passed != and) {
+					result = !and;
+					break;
+				}
+			}
+			if (samples.incrementAndGet() % REORDER_SAMPLES == 0) {
+				reorder();
+			}
+			return result;
+		}
+
+		/**
+		 * Sort the arguments by rank. The sort is stable so arguments with
+		 * the same rank keep their order.
+		 */
+		synchronized void reorder() {
+			Child[] children = order.clone();
+			for (Child child : children) {
+				child.rank = child.rank(and);
+			}
+			Arrays.sort(children, new Comparator<Child>() {
+				@Override
+				public int compare(Child c1, Child c2) {
+					return Double.compare(c1.rank, c2.rank);
+				}
+			});
+			for (Child child : children) {
+				child.decay();
+			}
+			order = children;
+		}
+
+		@Override
+		void learned(List<ClassPathFilter> result) {
+			List<ClassPathFilter> filters = new ArrayList<ClassPathFilter>();
+			for (Child child : order) {
+				child.part.learned(filters);
+			}
+			if (filters.size() == 1) {
+				result.add(filters.get(0));
+			} else {
+				result.add(and ? new AndClassFilter(filters) : new OrClassFilter(filters));
+			}
+		}
+	}
+}
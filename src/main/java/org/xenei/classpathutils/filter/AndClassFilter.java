@@ -20,11 +20,12 @@ import java.io.Serializable;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import org.xenei.classpathutils.Candidate;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 
 /**
  * A ClassFilter providing conditional AND logic across a list of file filters.
@@ -74,13 +75,30 @@ public class AndClassFilter extends _AbstractConditionalFilter implements Serial
 	 */
 	@Override
 	public boolean accept(String className) {
+		return accept(className, isNamesOnly() ? null : new Candidate(className));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean accept(Candidate candidate) {
+		return accept(candidate.getName(), candidate);
+	}
+
+	@Override
+	boolean acceptNamesOnly(String className) {
+		return accept(className, null);
+	}
+
+	private boolean accept(String className, Candidate candidate) {
 		List<ClassPathFilter> filters = this.getFilters();
 
 		if (filters.isEmpty()) {
 			return false;
 		}
 		for (ClassPathFilter classFilter : filters) {
-			if (!classFilter.accept(className)) {
+			if (!accept(classFilter, className, candidate)) {
 				return false;
 			}
 		}
@@ -123,19 +141,49 @@ public class AndClassFilter extends _AbstractConditionalFilter implements Serial
 		return true;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Tristate matchPrefix(String prefix) {
+		List<ClassPathFilter> filters = this.getFilters();
+
+		if (filters.isEmpty()) {
+			return Tristate.NO;
+		}
+		Tristate result = Tristate.YES;
+		for (ClassPathFilter classFilter : filters) {
+			result = result.and(classFilter.matchPrefix(prefix));
+			if (result == Tristate.NO) {
+				return Tristate.NO;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Nested Ands are merged, TRUE and duplicate arguments are removed and the
+	 * arguments are simplified by the boolean rewrite rules: a filter and its
+	 * negation is FALSE, prefix (and suffix) filters are replaced by their
+	 * intersection, negated string filters are merged and names that the
+	 * other arguments reject are removed.
+	 * </p>
+	 */
 	@Override
 	public ClassPathFilter optimize() {
 		// use a map to make merging enclosed ANDs easier.
-		Map<String, ClassPathFilter> filters = new HashMap<String, ClassPathFilter>();
+		Map<ClassPathFilter, ClassPathFilter> filters = new LinkedHashMap<ClassPathFilter, ClassPathFilter>();
 		boolean changed = false;
 		for (ClassPathFilter cpf : this.getFilters()) {
 			ClassPathFilter cpf2 = cpf.optimize();
-			changed |= !cpf2.toString().equals(cpf.toString());
+			changed |= !cpf2.equals(cpf);
 			if (cpf2 instanceof AndClassFilter) {
 				changed = true;
 				AndClassFilter acf = (AndClassFilter) cpf2;
 				for (ClassPathFilter filter : acf.getFilters()) {
-					filters.put(filter.toString(), filter);
+					filters.put(filter, filter);
 				}
 			} else if (cpf2 == FalseClassFilter.FALSE) {
 				return FalseClassFilter.FALSE;
@@ -143,31 +191,28 @@ public class AndClassFilter extends _AbstractConditionalFilter implements Serial
 				// remove any TRUE filters.
 				changed = true;
 			} else {
-				filters.put(cpf2.toString(), cpf2);
+				filters.put(cpf2, cpf2);
 			}
 		}
 
-		if (filters.size() == 0) {
-			return FalseClassFilter.FALSE;
+		List<ClassPathFilter> filterOrder = new ArrayList<ClassPathFilter>(filters.values());
+		ClassPathFilter constant = FilterRewriter.simplify(true, filterOrder);
+		if (constant != null) {
+			return constant;
+		}
+
+		// every argument was TRUE.
+		if (filterOrder.size() == 0) {
+			return TrueClassFilter.TRUE;
 		}
 
 		// if there is only one argument just return that.
-		if (filters.size() == 1) {
-			return filters.values().iterator().next();
+		if (filterOrder.size() == 1) {
+			return filterOrder.get(0);
 		}
 
-		List<ClassPathFilter> filterOrder = new ArrayList<ClassPathFilter>(filters.values());
 		filterOrder.sort(EXECUTION_ORDER);
-		if (!changed) {
-			Iterator<ClassPathFilter> iter1 = filters.values().iterator();
-			Iterator<ClassPathFilter> iter2 = filterOrder.iterator();
-			while (iter1.hasNext()) {
-				if (!iter1.next().equals(iter2.next())) {
-					changed = true;
-					break;
-				}
-			}
-		}
+		changed |= !filterOrder.equals(this.getFilters());
 
 		if (changed) {
 			return new AndClassFilter(filterOrder);
@@ -21,6 +21,7 @@ import java.net.URL;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.types.LogicFilterType;
 
 /**
@@ -83,6 +84,18 @@ public class FalseClassFilter extends _AbstractBaseFilter implements LogicFilter
 		return false;
 	}
 
+	/**
+	 * Returns NO.
+	 *
+	 * @param prefix
+	 *            the prefix (ignored)
+	 * @return NO
+	 */
+	@Override
+	public Tristate matchPrefix(String prefix) {
+		return Tristate.NO;
+	}
+
 	@Override
 	public String[] args() {
 		return NO_ARGS;
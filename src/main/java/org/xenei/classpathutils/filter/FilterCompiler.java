@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
+
+/**
+ * Compiles a filter tree into a flat name predicate.
+ * <p>
+ * Interpreting a filter tree costs a virtual call per node, a list view per
+ * And or Or and a virtual call for each string test. The compiler replaces
+ * each node it knows with a small final predicate specialized for its
+ * arguments (single or multiple strings, case sensitivity, two child or n
+ * child logic) so the JIT can inline the whole tree. Nodes it does not know,
+ * such as the class filters, are interpreted by calling the filter.
+ * </p>
+ * <p>
+ * The compiled filter only replaces {@link ClassPathFilter#accept(String)};
+ * every other method is delegated to the source filter, so the compiled
+ * filter has the same string representation and prefix matching.
+ * </p>
+ */
+public final class FilterCompiler {
+
+	private FilterCompiler() {
+	}
+
+	/**
+	 * Compile a filter. The filter should be optimized first. The compiled
+	 * filter is a snapshot: later changes to the source filter are not seen.
+	 * Compiling an already compiled filter returns it unchanged.
+	 *
+	 * @param filter
+	 *            the filter to compile.
+	 * @return a filter that accepts the same names as the source filter.
+	 */
+	public static ClassPathFilter compile(ClassPathFilter filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("Filter may not be null");
+		}
+		if (filter instanceof CompiledFilter || filter instanceof TrueClassFilter
+				|| filter instanceof FalseClassFilter) {
+			return filter;
+		}
+		return new CompiledFilter(filter, toPredicate(filter));
+	}
+
+	/**
+	 * Get the filter a compiled filter was compiled from.
+	 *
+	 * @param filter
+	 *            the filter.
+	 * @return the source filter if filter is compiled, filter otherwise.
+	 */
+	static ClassPathFilter getSource(ClassPathFilter filter) {
+		return filter instanceof CompiledFilter ? ((CompiledFilter) filter).source : filter;
+	}
+
+	/**
+	 * Create the predicate for a filter node.
+	 *
+	 * @param filter
+	 *            the filter.
+	 * @return the predicate equivalent to filter.accept(String).
+	 */
+	static Predicate<String> toPredicate(ClassPathFilter filter) {
+		if (filter instanceof CompiledFilter) {
+			return ((CompiledFilter) filter).predicate;
+		}
+		if (filter instanceof AdaptiveFilter) {
+			return ((AdaptiveFilter) filter).getPredicate();
+		}
+		if (filter instanceof TrueClassFilter) {
+			return name -> true;
+		}
+		if (filter instanceof FalseClassFilter) {
+			return name -> false;
+		}
+		if (filter instanceof AndClassFilter) {
+			List<Predicate<String>> lst = children(((AndClassFilter) filter).getFilters(), AndClassFilter.class);
+			if (lst.isEmpty()) {
+				return name -> false;
+			}
+			if (lst.size() == 1) {
+				return lst.get(0);
+			}
+			if (lst.size() == 2) {
+				return new And2(lst.get(0), lst.get(1));
+			}
+			return new AndN(lst);
+		}
+		if (filter instanceof OrClassFilter) {
+			OrClassFilter.Union union = ((OrClassFilter) filter).getUnion();
+			List<Predicate<String>> lst;
+			if (union == null) {
+				lst = children(((OrClassFilter) filter).getFilters(), OrClassFilter.class);
+			} else {
+				lst = children(union.getBefore(), OrClassFilter.class);
+				lst.add(union::matches);
+				lst.addAll(children(union.getAfter(), OrClassFilter.class));
+			}
+			if (lst.isEmpty()) {
+				return name -> false;
+			}
+			if (lst.size() == 1) {
+				return lst.get(0);
+			}
+			if (lst.size() == 2) {
+				return new Or2(lst.get(0), lst.get(1));
+			}
+			return new OrN(lst);
+		}
+		if (filter instanceof NotClassFilter) {
+			return new Not(toPredicate(((NotClassFilter) filter).getFilters().get(0)));
+		}
+		if (filter.getClass() == PrefixClassFilter.class) {
+			return strings((PrefixClassFilter) filter, false);
+		}
+		if (filter.getClass() == SuffixClassFilter.class) {
+			return strings((SuffixClassFilter) filter, true);
+		}
+		if (filter.getClass() == NameClassFilter.class) {
+			return new Names(((NameClassFilter) filter).getIndex());
+		}
+		if (filter.getClass() == RegexClassFilter.class) {
+			return new Regex(((RegexClassFilter) filter).getPattern());
+		}
+		if (filter.getClass() == WildcardClassFilter.class) {
+			return new Glob(((WildcardClassFilter) filter).getMatcher());
+		}
+		// interpret anything else.
+		return filter::accept;
+	}
+
+	/**
+	 * Compile the children of a conditional flattening nested conditionals of
+	 * the same type.
+	 */
+	private static List<Predicate<String>> children(List<ClassPathFilter> filters,
+			Class<? extends _AbstractConditionalFilter> type) {
+		List<Predicate<String>> result = new ArrayList<Predicate<String>>();
+		for (ClassPathFilter child : filters) {
+			// an empty conditional is false so is not flattened, nor is an Or
+			// with merged children.
+			if (child.getClass() == type && !((_AbstractConditionalFilter) child).getFilters().isEmpty()
+					&& !(child instanceof OrClassFilter && ((OrClassFilter) child).getUnion() != null)) {
+				result.addAll(children(((_AbstractConditionalFilter) child).getFilters(), type));
+			} else {
+				result.add(toPredicate(child));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Create a prefix or suffix predicate. A single case sensitive string is
+	 * checked directly, anything else with the filter's trie.
+	 */
+	private static Predicate<String> strings(_AbstractStringFilter filter, boolean suffix) {
+		List<String> strings = filter.getStrings();
+		if (strings.isEmpty()) {
+			return name -> false;
+		}
+		if (strings.size() == 1 && filter.caseSensitivity.isCaseSensitive()) {
+			return suffix ? new EndsWith(strings.get(0)) : new StartsWith(strings.get(0));
+		}
+		return new Trie(filter.getTrie(suffix));
+	}
+
+	/**
+	 * The compiled form of a filter.
+	 */
+	private static final class CompiledFilter extends _AbstractBaseFilter {
+		private static final Log LOG = LogFactory.getLog(CompiledFilter.class);
+
+		private final ClassPathFilter source;
+		private final Predicate<String> predicate;
+
+		CompiledFilter(ClassPathFilter source, Predicate<String> predicate) {
+			this.source = source;
+			this.predicate = predicate;
+		}
+
+		@Override
+		protected Log getLog() {
+			return LOG;
+		}
+
+		@Override
+		public boolean accept(String className) {
+			return predicate.test(className);
+		}
+
+		@Override
+		public boolean accept(URL url) {
+			return source.accept(url);
+		}
+
+		@Override
+		public boolean accept(Class<?> clazz) {
+			return source.accept(clazz);
+		}
+
+		@Override
+		public Tristate matchPrefix(String prefix) {
+			return source.matchPrefix(prefix);
+		}
+
+		@Override
+		public String funcName() {
+			return source.funcName();
+		}
+
+		@Override
+		public String[] args() {
+			return source.args();
+		}
+
+		@Override
+		public String toString() {
+			return source.toString();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return source.equals(o instanceof CompiledFilter ? ((CompiledFilter) o).source : o);
+		}
+
+		@Override
+		public int hashCode() {
+			return source.hashCode();
+		}
+
+		@Override
+		void freezeState() {
+			source.freeze();
+		}
+
+		@Override
+		public ClassPathFilter optimize() {
+			return this;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Predicate<String>[] toArray(List<Predicate<String>> nodes) {
+		return nodes.toArray((Predicate<String>[]) new Predicate<?>[nodes.size()]);
+	}
+
+	private static final class And2 implements Predicate<String> {
+		private final Predicate<String> a;
+		private final Predicate<String> b;
+
+		And2(Predicate<String> a, Predicate<String> b) {
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override
+		public boolean test(String name) {
+			return a.test(name) && b.test(name);
+		}
+	}
+
+	private static final class AndN implements Predicate<String> {
+		private final Predicate<String>[] nodes;
+
+		AndN(List<Predicate<String>> nodes) {
+			this.nodes = toArray(nodes);
+		}
+
+		@Override
+		public boolean test(String name) {
+			for (Predicate<String> node : nodes) {
+				if (!node.test(name)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static final class Or2 implements Predicate<String> {
+		private final Predicate<String> a;
+		private final Predicate<String> b;
+
+		Or2(Predicate<String> a, Predicate<String> b) {
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override
+		public boolean test(String name) {
+			return a.test(name) || b.test(name);
+		}
+	}
+
+	private static final class OrN implements Predicate<String> {
+		private final Predicate<String>[] nodes;
+
+		OrN(List<Predicate<String>> nodes) {
+			this.nodes = toArray(nodes);
+		}
+
+		@Override
+		public boolean test(String name) {
+			for (Predicate<String> node : nodes) {
+				if (node.test(name)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final class Not implements Predicate<String> {
+		private final Predicate<String> node;
+
+		Not(Predicate<String> node) {
+			this.node = node;
+		}
+
+		@Override
+		public boolean test(String name) {
+			return !node.test(name);
+		}
+	}
+
+	private static final class StartsWith implements Predicate<String> {
+		private final String prefix;
+
+		StartsWith(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public boolean test(String name) {
+			return name.startsWith(prefix);
+		}
+	}
+
+	private static final class EndsWith implements Predicate<String> {
+		private final String suffix;
+
+		EndsWith(String suffix) {
+			this.suffix = suffix;
+		}
+
+		@Override
+		public boolean test(String name) {
+			return name.endsWith(suffix);
+		}
+	}
+
+	private static final class Trie implements Predicate<String> {
+		private final StringTrie trie;
+
+		Trie(StringTrie trie) {
+			this.trie = trie;
+		}
+
+		@Override
+		public boolean test(String name) {
+			return trie.matches(name);
+		}
+	}
+
+	/**
+	 * Name match, with or without the ".class" suffix.
+	 */
+	private static final class Names implements Predicate<String> {
+		private final NameIndex index;
+
+		Names(NameIndex index) {
+			this.index = index;
+		}
+
+		@Override
+		public boolean test(String name) {
+			int len = name.endsWith(".class") ? name.length() - ".class".length() : name.length();
+			return index.contains(name, len);
+		}
+	}
+
+	private static final class Glob implements Predicate<String> {
+		private final GlobMatcher matcher;
+
+		Glob(GlobMatcher matcher) {
+			this.matcher = matcher;
+		}
+
+		@Override
+		public boolean test(String name) {
+			return matcher.matches(name);
+		}
+	}
+
+	private static final class Regex implements Predicate<String> {
+		private final Pattern pattern;
+
+		Regex(Pattern pattern) {
+			this.pattern = pattern;
+		}
+
+		@Override
+		public boolean test(String name) {
+			return pattern.matcher(name).matches();
+		}
+	}
+}
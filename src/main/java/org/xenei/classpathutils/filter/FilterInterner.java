@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.filter.types.CollectionFilterType;
+
+/**
+ * A pool of filters that shares equal filters and sub filters.
+ * <p>
+ * Interning a filter replaces it, and each of its argument filters, with the
+ * equal filter already in the pool. A filter that is built many times (for
+ * example parsed from the same string) is then held once, and equal filters
+ * are the same object so equals() returns on the reference check.
+ * </p>
+ * <p>
+ * Filters in the pool are shared so they are frozen when they are interned,
+ * see {@link ClassPathFilter#freeze()}. The pool is safe to use from several
+ * threads.
+ * </p>
+ */
+public final class FilterInterner {
+
+	private static final Log LOG = LogFactory.getLog(FilterInterner.class);
+
+	private final Map<ClassPathFilter, ClassPathFilter> pool = new HashMap<ClassPathFilter, ClassPathFilter>();
+
+	/**
+	 * Get the pooled filter equal to a filter. Argument filters are interned
+	 * first, an And, Or or Not filter whose arguments were replaced is
+	 * rebuilt with the pooled arguments.
+	 *
+	 * @param filter
+	 *            the filter to intern.
+	 * @return the pooled filter equal to filter.
+	 * @throws IllegalArgumentException
+	 *             if the filter is null.
+	 */
+	public ClassPathFilter intern(ClassPathFilter filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("Filter may not be null");
+		}
+		if (filter == TrueClassFilter.TRUE || filter == FalseClassFilter.FALSE) {
+			return filter;
+		}
+		ClassPathFilter candidate = filter;
+		if (filter instanceof AndClassFilter || filter instanceof OrClassFilter || filter instanceof NotClassFilter) {
+			candidate = internArgs(filter);
+		}
+		synchronized (pool) {
+			ClassPathFilter pooled = pool.get(candidate);
+			if (pooled == null) {
+				pooled = candidate.freeze();
+				pool.put(pooled, pooled);
+			} else if (LOG.isDebugEnabled()) {
+				LOG.debug("Reusing " + pooled);
+			}
+			return pooled;
+		}
+	}
+
+	/**
+	 * Intern the arguments of an And, Or or Not filter.
+	 *
+	 * @return the filter, or a new filter with the pooled arguments.
+	 */
+	private ClassPathFilter internArgs(ClassPathFilter filter) {
+		List<ClassPathFilter> args = ((CollectionFilterType) filter).getFilters();
+		List<ClassPathFilter> pooled = new ArrayList<ClassPathFilter>(args.size());
+		boolean changed = false;
+		for (ClassPathFilter arg : args) {
+			ClassPathFilter p = intern(arg);
+			changed |= p != arg;
+			pooled.add(p);
+		}
+		if (!changed) {
+			return filter;
+		}
+		if (filter instanceof NotClassFilter) {
+			return new NotClassFilter(pooled.get(0));
+		}
+		if (filter instanceof AndClassFilter) {
+			return new AndClassFilter(pooled);
+		}
+		OrClassFilter or = new OrClassFilter(pooled);
+		if (((OrClassFilter) filter).getUnion() != null) {
+			or.buildUnion();
+		}
+		return or;
+	}
+
+	/**
+	 * Get the number of filters in the pool.
+	 *
+	 * @return the number of pooled filters.
+	 */
+	public int size() {
+		synchronized (pool) {
+			return pool.size();
+		}
+	}
+
+	/**
+	 * Remove all the filters from the pool.
+	 */
+	public void clear() {
+		synchronized (pool) {
+			pool.clear();
+		}
+	}
+}
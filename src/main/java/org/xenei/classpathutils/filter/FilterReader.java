@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.xenei.classpathutils.Case;
+import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.filter.parser.Parser;
+
+/**
+ * Reads filters written by {@link FilterWriter}.
+ * <p>
+ * Filters are built directly from their binary form, they are not parsed
+ * or optimized. The matchers of the filters are built as the filters are
+ * read, and regular expressions that occur more than once in the stream are
+ * compiled once. Filters written in their string form are parsed with the
+ * parser given to the constructor.
+ * </p>
+ * <p>
+ * A reader is not safe to use from several threads.
+ * </p>
+ */
+public final class FilterReader {
+
+	/** The largest number of bytes allocated before they are read */
+	private static final int CHUNK_SIZE = 8192;
+
+	private final DataInput in;
+	private final List<String> strings = new ArrayList<String>();
+	private final List<ClassPathFilter> filters = new ArrayList<ClassPathFilter>();
+	/** Compiled patterns by flags and pattern */
+	private final Map<String, Pattern> patterns = new HashMap<String, Pattern>();
+	private Parser parser;
+	private boolean started;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in
+	 *            the input to read from.
+	 * @throws IllegalArgumentException
+	 *             if the input is null.
+	 */
+	public FilterReader(DataInput in) {
+		this(in, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in
+	 *            the input to read from.
+	 * @param parser
+	 *            the parser for filters written in their string form, null
+	 *            for a default parser.
+	 * @throws IllegalArgumentException
+	 *             if the input is null.
+	 */
+	public FilterReader(DataInput in, Parser parser) {
+		if (in == null) {
+			throw new IllegalArgumentException("Input may not be null");
+		}
+		this.in = in;
+		this.parser = parser;
+	}
+
+	/**
+	 * Read a filter from a byte array.
+	 *
+	 * @param bytes
+	 *            the binary form of a filter.
+	 * @return the filter.
+	 * @throws IOException
+	 *             if the bytes are not a filter.
+	 */
+	public static ClassPathFilter fromBytes(byte[] bytes) throws IOException {
+		return new FilterReader(new DataInputStream(new ByteArrayInputStream(bytes))).read();
+	}
+
+	/**
+	 * Read the next filter.
+	 *
+	 * @return the filter.
+	 * @throws IOException
+	 *             on error or if the input is not a filter stream of a known
+	 *             version.
+	 */
+	public ClassPathFilter read() throws IOException {
+		if (!started) {
+			if (in.readInt() != FilterWriter.MAGIC) {
+				throw new IOException("Not a filter stream");
+			}
+			int version = in.readUnsignedByte();
+			if (version < 1 || version > FilterWriter.VERSION) {
+				throw new IOException(String.format("Unsupported filter format version %s", version));
+			}
+			started = true;
+		}
+		try {
+			return readFilter();
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid filter: " + e.getMessage(), e);
+		}
+	}
+
+	private ClassPathFilter readFilter() throws IOException {
+		int tag = in.readUnsignedByte();
+		ClassPathFilter filter;
+		switch (tag) {
+		case FilterWriter.TRUE:
+			return TrueClassFilter.TRUE;
+		case FilterWriter.FALSE:
+			return FalseClassFilter.FALSE;
+		case FilterWriter.ABSTRACT:
+			return AbstractClassFilter.ABSTRACT;
+		case FilterWriter.ANNOTATION:
+			return AnnotationClassFilter.ANNOTATION;
+		case FilterWriter.INTERFACE:
+			return InterfaceClassFilter.INTERFACE;
+		case FilterWriter.REF:
+			int ref = readInt();
+			if (ref >= filters.size()) {
+				throw new IOException("Invalid filter reference " + ref);
+			}
+			return filters.get(ref);
+		case FilterWriter.AND:
+			filter = new AndClassFilter(readFilters());
+			break;
+		case FilterWriter.OR:
+			int flags = in.readUnsignedByte();
+			OrClassFilter or = new OrClassFilter(readFilters());
+			if ((flags & FilterWriter.OR_UNION) != 0) {
+				or.buildUnion();
+			}
+			filter = or;
+			break;
+		case FilterWriter.NOT:
+			filter = new NotClassFilter(readFilter());
+			break;
+		case FilterWriter.NAME:
+			NameClassFilter name = new NameClassFilter(readCase(), readStrings());
+			name.getIndex();
+			filter = name;
+			break;
+		case FilterWriter.PREFIX:
+			PrefixClassFilter prefix = new PrefixClassFilter(readCase(), readStrings());
+			prefix.getTrie(false);
+			filter = prefix;
+			break;
+		case FilterWriter.SUFFIX:
+			SuffixClassFilter suffix = new SuffixClassFilter(readCase(), readStrings());
+			suffix.getTrie(true);
+			filter = suffix;
+			break;
+		case FilterWriter.WILDCARD:
+			WildcardClassFilter wildcard = new WildcardClassFilter(readCase(), readStrings());
+			wildcard.getMatcher();
+			filter = wildcard;
+			break;
+		case FilterWriter.REGEX:
+			filter = new RegexClassFilter(readPattern());
+			break;
+		case FilterWriter.HAS_ANNOTATION:
+			filter = readHasAnnotation();
+			break;
+		case FilterWriter.TEXT:
+			if (parser == null) {
+				parser = new Parser(0);
+			}
+			filter = parser.parse(readString());
+			break;
+		default:
+			throw new IOException("Invalid filter tag " + tag);
+		}
+		filters.add(filter);
+		return filter;
+	}
+
+	private List<ClassPathFilter> readFilters() throws IOException {
+		int count = readInt();
+		List<ClassPathFilter> lst = new ArrayList<ClassPathFilter>(Math.min(count, 16));
+		for (int i = 0; i < count; i++) {
+			lst.add(readFilter());
+		}
+		return lst;
+	}
+
+	private Case readCase() throws IOException {
+		return in.readUnsignedByte() == 0 ? Case.SENSITIVE : Case.INSENSITIVE;
+	}
+
+	private List<String> readStrings() throws IOException {
+		int count = readInt();
+		List<String> lst = new ArrayList<String>(Math.min(count, 16));
+		for (int i = 0; i < count; i++) {
+			lst.add(readString());
+		}
+		return lst;
+	}
+
+	private Pattern readPattern() throws IOException {
+		String regex = readString();
+		int flags = readInt();
+		String key = flags + ":" + regex;
+		Pattern pattern = patterns.get(key);
+		if (pattern == null) {
+			try {
+				pattern = Pattern.compile(regex, flags);
+			} catch (PatternSyntaxException e) {
+				throw new IOException("Invalid regular expression: " + regex, e);
+			}
+			patterns.put(key, pattern);
+		}
+		return pattern;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ClassPathFilter readHasAnnotation() throws IOException {
+		String className = readString();
+		Class<?> cls;
+		try {
+			cls = Thread.currentThread().getContextClassLoader().loadClass(className);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Can not load annotation " + className, e);
+		}
+		if (!Annotation.class.isAssignableFrom(cls)) {
+			throw new IOException(className + " is not an Annotation");
+		}
+		return new HasAnnotationClassFilter((Class<? extends Annotation>) cls);
+	}
+
+	private String readString() throws IOException {
+		int idx = readInt();
+		if (idx > 0) {
+			if (idx > strings.size()) {
+				throw new IOException("Invalid string reference " + idx);
+			}
+			return strings.get(idx - 1);
+		}
+		String str = new String(readBytes(readInt()), StandardCharsets.UTF_8);
+		strings.add(str);
+		return str;
+	}
+
+	/**
+	 * Read bytes. Long lengths are read in chunks so that a corrupt length
+	 * fails at the end of the input instead of allocating the length.
+	 */
+	private byte[] readBytes(int length) throws IOException {
+		byte[] chunk = new byte[Math.min(length, CHUNK_SIZE)];
+		if (length <= CHUNK_SIZE) {
+			in.readFully(chunk);
+			return chunk;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(CHUNK_SIZE);
+		for (int left = length; left > 0; left -= chunk.length) {
+			if (left < chunk.length) {
+				chunk = new byte[left];
+			}
+			in.readFully(chunk);
+			bytes.write(chunk);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Read an int written in 7 bit groups, low group first.
+	 */
+	private int readInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0) {
+					throw new IOException("Invalid length " + value);
+				}
+				return value;
+			}
+		}
+		throw new IOException("Invalid variable length int");
+	}
+}
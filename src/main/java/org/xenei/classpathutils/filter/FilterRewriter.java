@@ -0,0 +1,409 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xenei.classpathutils.Case;
+import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.filter.types.CollectionFilterType;
+
+/**
+ * Boolean rewrite rules used by the optimize() methods of the logic filters.
+ * <p>
+ * The rules only rely on each filter being a function of its argument, so
+ * they hold for accept(String), accept(URL) and accept(Class). Rules that
+ * reason about which names a filter accepts are only applied to filters
+ * that check nothing but the name: the string filters and logic built from
+ * them.
+ * </p>
+ */
+final class FilterRewriter {
+
+	/** the suffix NameClassFilter ignores */
+	private static final String CLASS_SUFFIX = ".class";
+
+	private FilterRewriter() {
+	}
+
+	/**
+	 * Count the filters in a tree.
+	 *
+	 * @param filter
+	 *            the root of the tree.
+	 * @return the number of filters in the tree.
+	 */
+	static int size(ClassPathFilter filter) {
+		int size = 1;
+		if (filter instanceof CollectionFilterType) {
+			for (ClassPathFilter child : ((CollectionFilterType) filter).getFilters()) {
+				size += size(child);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Remove the strings that are redundant because another string is their
+	 * prefix (or suffix). Duplicates are removed as well.
+	 *
+	 * @param strings
+	 *            the strings of a prefix or suffix filter.
+	 * @param caseSensitivity
+	 *            the case sensitivity of the filter.
+	 * @param suffix
+	 *            true for suffixes, false for prefixes.
+	 * @return the strings that are needed, in their original order.
+	 */
+	static List<String> minimal(Collection<String> strings, Case caseSensitivity, boolean suffix) {
+		List<String> result = new ArrayList<String>();
+		for (String str : strings) {
+			boolean covered = false;
+			Iterator<String> iter = result.iterator();
+			while (iter.hasNext() && !covered) {
+				String kept = iter.next();
+				if (covers(caseSensitivity, suffix, str, kept)) {
+					covered = true;
+				} else if (covers(caseSensitivity, suffix, kept, str)) {
+					iter.remove();
+				}
+			}
+			if (!covered) {
+				result.add(str);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Check if every name matched by the longer string is matched by the
+	 * shorter one.
+	 */
+	private static boolean covers(Case caseSensitivity, boolean suffix, String longer, String shorter) {
+		return suffix ? caseSensitivity.checkEndsWith(longer, shorter)
+				: caseSensitivity.checkStartsWith(longer, shorter);
+	}
+
+	/**
+	 * Simplify the optimized and flattened children of an And or an Or.
+	 * <ul>
+	 * <li>A filter and its negation make the conditional constant.</li>
+	 * <li>Prefix, suffix, name and wildcard filters with the same case
+	 * sensitivity are merged: into their union under Or, and for prefixes and
+	 * suffixes into their intersection under And. Negated filters are merged
+	 * the other way round.</li>
+	 * <li>The names of a case sensitive name filter are checked against its
+	 * siblings: under And names the siblings reject are dropped and the
+	 * siblings are then implied by the names, under Or names the siblings
+	 * accept are dropped.</li>
+	 * </ul>
+	 *
+	 * @param and
+	 *            true for the children of an And, false for an Or.
+	 * @param filters
+	 *            the children, modified in place.
+	 * @return TRUE or FALSE if the conditional is constant, null otherwise.
+	 */
+	static ClassPathFilter simplify(boolean and, List<ClassPathFilter> filters) {
+		ClassPathFilter absorbing = and ? ClassPathFilter.FALSE : ClassPathFilter.TRUE;
+		ClassPathFilter identity = and ? ClassPathFilter.TRUE : ClassPathFilter.FALSE;
+
+		if (hasComplement(filters)) {
+			return absorbing;
+		}
+		merge(and, filters);
+		if (!checkNames(and, filters)) {
+			return absorbing;
+		}
+		Iterator<ClassPathFilter> iter = filters.iterator();
+		while (iter.hasNext()) {
+			ClassPathFilter filter = iter.next();
+			if (filter == absorbing) {
+				return absorbing;
+			}
+			if (filter == identity) {
+				iter.remove();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Check for a filter and its negation.
+	 */
+	private static boolean hasComplement(List<ClassPathFilter> filters) {
+		Set<ClassPathFilter> set = new HashSet<ClassPathFilter>(filters);
+		for (ClassPathFilter filter : filters) {
+			if (filter instanceof NotClassFilter && set.contains(((NotClassFilter) filter).getFilters().get(0))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the case sensitivity of a filter that can be merged.
+	 *
+	 * @return the case sensitivity or null if the filter can not be merged.
+	 */
+	private static Case mergeCase(ClassPathFilter filter) {
+		Class<?> type = filter.getClass();
+		if (type == PrefixClassFilter.class || type == SuffixClassFilter.class || type == NameClassFilter.class) {
+			return ((_AbstractStringFilter) filter).caseSensitivity;
+		}
+		if (type == WildcardClassFilter.class) {
+			return ((WildcardClassFilter) filter).getCaseSensitivity();
+		}
+		return null;
+	}
+
+	/**
+	 * Merge the string filters of the same type and case sensitivity.
+	 */
+	private static void merge(boolean and, List<ClassPathFilter> filters) {
+		Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+		for (int i = 0; i < filters.size(); i++) {
+			ClassPathFilter filter = filters.get(i);
+			boolean negated = filter instanceof NotClassFilter;
+			ClassPathFilter leaf = negated ? ((NotClassFilter) filter).getFilters().get(0) : filter;
+			Case caseSensitivity = mergeCase(leaf);
+			if (caseSensitivity != null) {
+				String key = negated + " " + leaf.getClass().getName() + " " + caseSensitivity;
+				List<Integer> group = groups.get(key);
+				if (group == null) {
+					group = new ArrayList<Integer>();
+					groups.put(key, group);
+				}
+				group.add(i);
+			}
+		}
+
+		BitSet removed = new BitSet();
+		for (List<Integer> group : groups.values()) {
+			if (group.size() < 2) {
+				continue;
+			}
+			List<ClassPathFilter> leaves = new ArrayList<ClassPathFilter>();
+			boolean negated = false;
+			for (int i : group) {
+				ClassPathFilter filter = filters.get(i);
+				negated = filter instanceof NotClassFilter;
+				leaves.add(negated ? ((NotClassFilter) filter).getFilters().get(0) : filter);
+			}
+			// not(a) and not(b) is not(a or b), not(a) or not(b) is not(a and b)
+			ClassPathFilter merged = and == negated ? union(leaves) : intersection(leaves);
+			if (merged == null) {
+				continue;
+			}
+			merged = merged.optimize();
+			if (negated) {
+				merged = new NotClassFilter(merged).optimize();
+			}
+			filters.set(group.get(0), merged);
+			for (int i = 1; i < group.size(); i++) {
+				removed.set(group.get(i));
+			}
+		}
+		for (int i = removed.length() - 1; i >= 0; i = removed.previousSetBit(i - 1)) {
+			filters.remove(i);
+		}
+	}
+
+	/**
+	 * Create a filter that accepts the names any of the filters accept.
+	 */
+	private static ClassPathFilter union(List<ClassPathFilter> leaves) {
+		ClassPathFilter first = leaves.get(0);
+		Case caseSensitivity = mergeCase(first);
+		List<String> strings = new ArrayList<String>();
+		for (ClassPathFilter leaf : leaves) {
+			if (leaf instanceof WildcardClassFilter) {
+				strings.addAll(((WildcardClassFilter) leaf).getWildcards());
+			} else {
+				strings.addAll(((_AbstractStringFilter) leaf).getStrings());
+			}
+		}
+		if (first instanceof PrefixClassFilter) {
+			return new PrefixClassFilter(caseSensitivity, strings);
+		}
+		if (first instanceof SuffixClassFilter) {
+			return new SuffixClassFilter(caseSensitivity, strings);
+		}
+		if (first instanceof NameClassFilter) {
+			return new NameClassFilter(caseSensitivity, strings);
+		}
+		return new WildcardClassFilter(caseSensitivity, strings);
+	}
+
+	/**
+	 * Create a filter that accepts the names all of the prefix (or suffix)
+	 * filters accept. A name starts with a and with b only if one of them
+	 * starts with the other, and then starting with the longer one is
+	 * enough.
+	 *
+	 * @return the filter or null if the filters are not prefix or suffix
+	 *         filters.
+	 */
+	private static ClassPathFilter intersection(List<ClassPathFilter> leaves) {
+		ClassPathFilter first = leaves.get(0);
+		if (!(first instanceof PrefixClassFilter || first instanceof SuffixClassFilter)) {
+			return null;
+		}
+		boolean suffix = first instanceof SuffixClassFilter;
+		Case caseSensitivity = mergeCase(first);
+		List<String> result = ((_AbstractStringFilter) first).getStrings();
+		for (int i = 1; i < leaves.size(); i++) {
+			List<String> next = new ArrayList<String>();
+			for (String a : result) {
+				for (String b : ((_AbstractStringFilter) leaves.get(i)).getStrings()) {
+					if (covers(caseSensitivity, suffix, a, b)) {
+						next.add(a);
+					} else if (covers(caseSensitivity, suffix, b, a)) {
+						next.add(b);
+					}
+				}
+			}
+			result = next;
+		}
+		if (result.isEmpty()) {
+			return ClassPathFilter.FALSE;
+		}
+		return suffix ? new SuffixClassFilter(caseSensitivity, result)
+				: new PrefixClassFilter(caseSensitivity, result);
+	}
+
+	/**
+	 * Check if a filter only looks at the name, so that accepting a name
+	 * string means accepting the class and its URL.
+	 */
+	private static boolean isNameOnly(ClassPathFilter filter) {
+		Class<?> type = filter.getClass();
+		if (type == PrefixClassFilter.class || type == SuffixClassFilter.class || type == NameClassFilter.class
+				|| type == RegexClassFilter.class || type == WildcardClassFilter.class
+				|| filter == ClassPathFilter.TRUE || filter == ClassPathFilter.FALSE) {
+			return true;
+		}
+		if (type == NotClassFilter.class || type == AndClassFilter.class || type == OrClassFilter.class) {
+			for (ClassPathFilter child : ((CollectionFilterType) filter).getFilters()) {
+				if (!isNameOnly(child)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Get the strings a case sensitive name filter accepts for a name. The
+	 * filter ignores a ".class" suffix on the string it checks.
+	 */
+	private static String[] candidates(String name) {
+		if (name.endsWith(CLASS_SUFFIX)) {
+			return new String[] { name + CLASS_SUFFIX };
+		}
+		return new String[] { name, name + CLASS_SUFFIX };
+	}
+
+	/**
+	 * Check the names of the first case sensitive name filter against the
+	 * siblings that only look at the name.
+	 *
+	 * @return false if an And can accept nothing.
+	 */
+	private static boolean checkNames(boolean and, List<ClassPathFilter> filters) {
+		NameClassFilter names = null;
+		List<ClassPathFilter> siblings = new ArrayList<ClassPathFilter>();
+		for (ClassPathFilter filter : filters) {
+			if (names == null && filter.getClass() == NameClassFilter.class
+					&& ((NameClassFilter) filter).caseSensitivity.isCaseSensitive()) {
+				names = (NameClassFilter) filter;
+			} else if (isNameOnly(filter)) {
+				siblings.add(filter);
+			}
+		}
+		if (names == null || siblings.isEmpty()) {
+			return true;
+		}
+
+		List<String> kept = new ArrayList<String>();
+		for (String name : names.getStrings()) {
+			String[] candidates = candidates(name);
+			int accepted = 0;
+			for (String candidate : candidates) {
+				if (and ? acceptsAll(siblings, candidate) : acceptsAny(siblings, candidate)) {
+					accepted++;
+				}
+			}
+			if (and) {
+				if (accepted == candidates.length) {
+					kept.add(name);
+				} else if (accepted > 0) {
+					// only some forms of the name are accepted, leave it.
+					return true;
+				}
+			} else if (accepted < candidates.length) {
+				kept.add(name);
+			}
+		}
+
+		int idx = filters.indexOf(names);
+		if (and) {
+			if (kept.isEmpty()) {
+				return false;
+			}
+			// every kept name is accepted by the siblings.
+			filters.removeAll(siblings);
+			idx = filters.indexOf(names);
+		} else if (kept.isEmpty()) {
+			filters.remove(idx);
+			return true;
+		}
+		if (kept.size() < names.getStrings().size()) {
+			filters.set(idx, new NameClassFilter(names.caseSensitivity, kept).optimize());
+		}
+		return true;
+	}
+
+	private static boolean acceptsAll(List<ClassPathFilter> filters, String name) {
+		for (ClassPathFilter filter : filters) {
+			if (!filter.accept(name)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean acceptsAny(List<ClassPathFilter> filters, String name) {
+		for (ClassPathFilter filter : filters) {
+			if (filter.accept(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
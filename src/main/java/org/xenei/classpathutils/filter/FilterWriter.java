@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xenei.classpathutils.Case;
+import org.xenei.classpathutils.ClassPathFilter;
+
+/**
+ * Writes filters in a compact binary form that {@link FilterReader} reads
+ * back without parsing or optimizing them.
+ * <p>
+ * The stream starts with a magic number and the format version. Each
+ * filter is written as a tag byte followed by its arguments. A string is
+ * written in full the first time it is used and as an index into the
+ * strings already written after that, and a filter that is written again
+ * (a shared sub filter) is written as an index into the filters already
+ * written. Numbers are written as variable length integers.
+ * </p>
+ * <p>
+ * All the built in filters are written in binary form. Other filters,
+ * including subclasses of the built in filters, are written as their string
+ * form and parsed when read. The matchers of
+ * optimized filters (merged Or arguments, wildcard automata, name indexes)
+ * are not written, the reader builds them from the arguments.
+ * </p>
+ * <p>
+ * Several filters may be written to one stream, the strings and filters of
+ * earlier filters are reused. A writer is not safe to use from several
+ * threads.
+ * </p>
+ */
+public final class FilterWriter {
+
+	private static final Log LOG = LogFactory.getLog(FilterWriter.class);
+
+	/** The magic number at the start of the stream: "CPFT" */
+	static final int MAGIC = 0x43504654;
+	/** The format version */
+	public static final int VERSION = 1;
+
+	static final int TRUE = 1;
+	static final int FALSE = 2;
+	static final int ABSTRACT = 3;
+	static final int ANNOTATION = 4;
+	static final int INTERFACE = 5;
+	static final int AND = 6;
+	static final int OR = 7;
+	static final int NOT = 8;
+	static final int NAME = 9;
+	static final int PREFIX = 10;
+	static final int SUFFIX = 11;
+	static final int WILDCARD = 12;
+	static final int REGEX = 13;
+	static final int HAS_ANNOTATION = 14;
+	/** A filter written before, followed by its index */
+	static final int REF = 15;
+	/** Any other filter, followed by its string form */
+	static final int TEXT = 16;
+
+	/** Or flag: the regex and wildcard arguments were merged */
+	static final int OR_UNION = 1;
+
+	private final DataOutput out;
+	private final Map<String, Integer> strings = new HashMap<String, Integer>();
+	private final Map<ClassPathFilter, Integer> filters = new IdentityHashMap<ClassPathFilter, Integer>();
+	private boolean started;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out
+	 *            the output to write to.
+	 * @throws IllegalArgumentException
+	 *             if the output is null.
+	 */
+	public FilterWriter(DataOutput out) {
+		if (out == null) {
+			throw new IllegalArgumentException("Output may not be null");
+		}
+		this.out = out;
+	}
+
+	/**
+	 * Write a filter to a byte array.
+	 *
+	 * @param filter
+	 *            the filter to write.
+	 * @return the binary form of the filter.
+	 */
+	public static byte[] toBytes(ClassPathFilter filter) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			new FilterWriter(new DataOutputStream(bytes)).write(filter);
+		} catch (IOException e) {
+			// a byte array can not fail.
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Write a filter.
+	 *
+	 * @param filter
+	 *            the filter to write.
+	 * @throws IOException
+	 *             on error.
+	 * @throws IllegalArgumentException
+	 *             if the filter is null.
+	 */
+	public void write(ClassPathFilter filter) throws IOException {
+		if (filter == null) {
+			throw new IllegalArgumentException("Filter may not be null");
+		}
+		if (!started) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			started = true;
+		}
+		writeFilter(filter);
+	}
+
+	private void writeFilter(ClassPathFilter filter) throws IOException {
+		if (filter == TrueClassFilter.TRUE) {
+			out.writeByte(TRUE);
+			return;
+		}
+		if (filter == FalseClassFilter.FALSE) {
+			out.writeByte(FALSE);
+			return;
+		}
+		if (filter == AbstractClassFilter.ABSTRACT) {
+			out.writeByte(ABSTRACT);
+			return;
+		}
+		if (filter == AnnotationClassFilter.ANNOTATION) {
+			out.writeByte(ANNOTATION);
+			return;
+		}
+		if (filter == InterfaceClassFilter.INTERFACE) {
+			out.writeByte(INTERFACE);
+			return;
+		}
+		Integer ref = filters.get(filter);
+		if (ref != null) {
+			out.writeByte(REF);
+			writeInt(ref);
+			return;
+		}
+		// subclasses may change what a filter accepts so only the built in
+		// classes are written in their binary form.
+		Class<?> type = filter.getClass();
+		if (type == AndClassFilter.class) {
+			out.writeByte(AND);
+			writeFilters(((AndClassFilter) filter).getFilters());
+		} else if (type == OrClassFilter.class) {
+			OrClassFilter or = (OrClassFilter) filter;
+			out.writeByte(OR);
+			out.writeByte(or.getUnion() == null ? 0 : OR_UNION);
+			writeFilters(or.getFilters());
+		} else if (type == NotClassFilter.class) {
+			out.writeByte(NOT);
+			writeFilter(((NotClassFilter) filter).getFilters().get(0));
+		} else if (type == NameClassFilter.class) {
+			writeStrings(NAME, (_AbstractStringFilter) filter);
+		} else if (type == PrefixClassFilter.class) {
+			writeStrings(PREFIX, (_AbstractStringFilter) filter);
+		} else if (type == SuffixClassFilter.class) {
+			writeStrings(SUFFIX, (_AbstractStringFilter) filter);
+		} else if (type == WildcardClassFilter.class) {
+			WildcardClassFilter wildcard = (WildcardClassFilter) filter;
+			out.writeByte(WILDCARD);
+			writeCase(wildcard.getCaseSensitivity());
+			writeStrings(wildcard.getWildcards());
+		} else if (type == RegexClassFilter.class) {
+			RegexClassFilter regex = (RegexClassFilter) filter;
+			out.writeByte(REGEX);
+			writeString(regex.getPattern().pattern());
+			writeInt(regex.getPattern().flags());
+		} else if (type == HasAnnotationClassFilter.class) {
+			out.writeByte(HAS_ANNOTATION);
+			writeString(filter.args()[0]);
+		} else {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Writing the string form of " + filter.getClass().getName());
+			}
+			out.writeByte(TEXT);
+			writeString(filter.toString());
+		}
+		filters.put(filter, filters.size());
+	}
+
+	private void writeFilters(List<ClassPathFilter> lst) throws IOException {
+		writeInt(lst.size());
+		for (ClassPathFilter filter : lst) {
+			writeFilter(filter);
+		}
+	}
+
+	private void writeStrings(int tag, _AbstractStringFilter filter) throws IOException {
+		out.writeByte(tag);
+		writeCase(filter.caseSensitivity);
+		writeStrings(filter.getStrings());
+	}
+
+	private void writeCase(Case caze) throws IOException {
+		out.writeByte(caze.isCaseSensitive() ? 0 : 1);
+	}
+
+	private void writeStrings(List<String> lst) throws IOException {
+		writeInt(lst.size());
+		for (String str : lst) {
+			writeString(str);
+		}
+	}
+
+	/**
+	 * Write a string: 0 and the UTF-8 bytes the first time, the index plus 1
+	 * after that.
+	 */
+	private void writeString(String str) throws IOException {
+		Integer idx = strings.get(str);
+		if (idx != null) {
+			writeInt(idx + 1);
+			return;
+		}
+		writeInt(0);
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		writeInt(bytes.length);
+		out.write(bytes);
+		strings.put(str, strings.size());
+	}
+
+	/**
+	 * Write a non negative int in 7 bit groups, low group first.
+	 */
+	private void writeInt(int value) throws IOException {
+		int v = value;
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches strings against a set of wildcards ('*' matches any run of
+ * characters, '?' matches any single character) in one pass.
+ * <p>
+ * All the wildcards are combined into a single non-deterministic automaton
+ * whose active states are held in a bit set, so each character of the
+ * candidate is processed once with a few word operations regardless of the
+ * number of wildcards or stars: there is no backtracking.
+ * </p>
+ * <p>
+ * The semantics are those of the regular expression produced by
+ * {@link WildcardClassFilter#makeRegex(String)}: wildcards match whole
+ * code points, '*' and '?' do not match line terminators and case
+ * insensitive matching folds US-ASCII letters only.
+ * </p>
+ */
+final class GlobMatcher {
+
+	/** token for '*' */
+	private static final int STAR = -1;
+	/** token for '?' */
+	private static final int ANY = -2;
+
+	/** number of 64 bit words in a state set */
+	private final int words;
+	/** the start states */
+	private final long[] start;
+	/** the accepting states */
+	private final long[] accept;
+	/** states whose token is '?' */
+	private final long[] any;
+	/** states whose token is '*' */
+	private final long[] star;
+	/** states whose token matches each ASCII character */
+	private final long[][] ascii = new long[128][];
+	/** states whose token matches each other code point */
+	private final Map<Integer, long[]> other = new HashMap<Integer, long[]>();
+	/** an empty state set */
+	private final long[] none;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param wildcards
+	 *            the wildcards to match.
+	 * @param ignoreCase
+	 *            true to ignore the case of US-ASCII letters.
+	 */
+	GlobMatcher(Collection<String> wildcards, boolean ignoreCase) {
+		List<int[]> patterns = new ArrayList<int[]>(wildcards.size());
+		int states = 0;
+		for (String wildcard : wildcards) {
+			int[] tokens = tokenize(wildcard);
+			patterns.add(tokens);
+			// one state per token plus the accepting state
+			states += tokens.length + 1;
+		}
+		words = Math.max(1, (states + 63) >>> 6);
+		start = new long[words];
+		accept = new long[words];
+		any = new long[words];
+		star = new long[words];
+		none = new long[words];
+		for (int c = 0; c < 128; c++) {
+			ascii[c] = none;
+		}
+
+		int base = 0;
+		for (int[] tokens : patterns) {
+			set(start, base);
+			for (int j = 0; j < tokens.length; j++) {
+				int state = base + j;
+				int token = tokens[j];
+				if (token == STAR) {
+					set(star, state);
+				} else if (token == ANY) {
+					set(any, state);
+				} else {
+					set(mask(token), state);
+					if (ignoreCase && token < 128 && Character.isLetter(token)) {
+						set(mask(token ^ 0x20), state);
+					}
+				}
+			}
+			set(accept, base + tokens.length);
+			base += tokens.length + 1;
+		}
+		closure(start);
+	}
+
+	/**
+	 * Split a wildcard into code point, STAR and ANY tokens. Runs of stars
+	 * are collapsed as they match the same strings as a single star.
+	 */
+	private static int[] tokenize(String wildcard) {
+		int[] tokens = new int[wildcard.length()];
+		int count = 0;
+		for (int i = 0; i < wildcard.length();) {
+			int cp = wildcard.codePointAt(i);
+			i += Character.charCount(cp);
+			int token = cp == '*' ? STAR : cp == '?' ? ANY : cp;
+			if (token != STAR || count == 0 || tokens[count - 1] != STAR) {
+				tokens[count++] = token;
+			}
+		}
+		int[] result = new int[count];
+		System.arraycopy(tokens, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * Get the writable mask for a code point.
+	 */
+	private long[] mask(int cp) {
+		long[] m = cp < 128 ? ascii[cp] : other.get(cp);
+		if (m == null || m == none) {
+			m = new long[words];
+			if (cp < 128) {
+				ascii[cp] = m;
+			} else {
+				other.put(cp, m);
+			}
+		}
+		return m;
+	}
+
+	private static void set(long[] bits, int bit) {
+		bits[bit >>> 6] |= 1L << bit;
+	}
+
+	/**
+	 * Add the states reachable without consuming a character: the state
+	 * after each active star. As runs of stars are collapsed a single step
+	 * is enough.
+	 */
+	private void closure(long[] states) {
+		long carry = 0;
+		for (int w = 0; w < words; w++) {
+			long s = states[w] & star[w];
+			long shifted = (s << 1) | carry;
+			carry = s >>> 63;
+			states[w] |= shifted;
+		}
+	}
+
+	private static boolean isLineTerminator(int cp) {
+		return cp == '\n' || cp == '\r' || cp == '\u0085' || cp == '\u2028' || cp == '\u2029';
+	}
+
+	/**
+	 * Check if the candidate matches any of the wildcards.
+	 *
+	 * @param candidate
+	 *            the string to check.
+	 * @return true if one of the wildcards matches the whole string.
+	 */
+	boolean matches(String candidate) {
+		if (words == 1) {
+			return matches1(candidate);
+		}
+		long[] current = start.clone();
+		long[] next = new long[words];
+		int len = candidate.length();
+		for (int i = 0; i < len;) {
+			int cp = candidate.codePointAt(i);
+			i += Character.charCount(cp);
+			long[] m = cp < 128 ? ascii[cp] : other.get(cp);
+			if (m == null) {
+				m = none;
+			}
+			boolean wild = !isLineTerminator(cp);
+			long carry = 0;
+			boolean active = false;
+			for (int w = 0; w < words; w++) {
+				long step = current[w] & (wild ? m[w] | any[w] : m[w]);
+				long n = (step << 1) | carry;
+				carry = step >>> 63;
+				if (wild) {
+					n |= current[w] & star[w];
+				}
+				next[w] = n;
+				active |= n != 0;
+			}
+			if (!active) {
+				return false;
+			}
+			closure(next);
+			long[] t = current;
+			current = next;
+			next = t;
+		}
+		for (int w = 0; w < words; w++) {
+			if ((current[w] & accept[w]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * matches() for automata of at most 64 states.
+	 */
+	private boolean matches1(String candidate) {
+		long current = start[0];
+		long anyMask = any[0];
+		long starMask = star[0];
+		int len = candidate.length();
+		for (int i = 0; i < len;) {
+			int cp = candidate.charAt(i);
+			if (cp < 128) {
+				i++;
+			} else {
+				cp = candidate.codePointAt(i);
+				i += Character.charCount(cp);
+			}
+			long[] m = cp < 128 ? ascii[cp] : other.get(cp);
+			long mask = m == null ? 0 : m[0];
+			if (isLineTerminator(cp)) {
+				current = (current & mask) << 1;
+			} else {
+				current = ((current & (mask | anyMask)) << 1) | (current & starMask);
+			}
+			if (current == 0) {
+				return false;
+			}
+			current |= (current & starMask) << 1;
+		}
+		return (current & accept[0]) != 0;
+	}
+}
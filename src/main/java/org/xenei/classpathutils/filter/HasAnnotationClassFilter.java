@@ -17,10 +17,14 @@
 package org.xenei.classpathutils.filter;
 
 import java.lang.annotation.Annotation;
+import java.lang.annotation.Inherited;
 import java.net.URL;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.xenei.classpathutils.Candidate;
+import org.xenei.classpathutils.ClassFileInfo;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.types.ClassFilterType;
 
 /**
@@ -71,13 +75,54 @@ public class HasAnnotationClassFilter extends _AbstractBaseFilter implements Cla
 	 */
 	@Override
 	public boolean accept(String className) {
-		try {
-			return accept(loadClass(className));
-		} catch (ClassNotFoundException e) {
-			return false;
-		} catch (NoClassDefFoundError x) {
-			return false;
+		return accept(new Candidate(className));
+	}
+
+	/**
+	 * Checks to see if the class has the annotation, from the class file if it
+	 * can be read.
+	 *
+	 * @param candidate
+	 *            the candidate to check
+	 * @return true if the class has the annotation.
+	 */
+	@Override
+	public boolean accept(Candidate candidate) {
+		// check the class file first so that rejected classes are not loaded.
+		Tristate result = accept(candidate.getClassFileInfo(), candidate.getClassLoader());
+		if (result != Tristate.MAYBE) {
+			return result == Tristate.YES;
+		}
+		Class<?> clazz = candidate.getLoadedClass();
+		return clazz != null && accept(clazz);
+	}
+
+	/**
+	 * Checks the class file metadata to see if the class has the annotation.
+	 * If the annotation is inherited the class files of the super classes are
+	 * read as well, from the class loader the class was read from.
+	 *
+	 * @param info
+	 *            the class file metadata, may be null.
+	 * @param classLoader
+	 *            the class loader to read the super classes from.
+	 * @return MAYBE if info, or the metadata of a super class that is needed,
+	 *         is null.
+	 */
+	/* package private */Tristate accept(ClassFileInfo info, ClassLoader classLoader) {
+		String annotationName = annotation.getName();
+		boolean inherited = annotation.isAnnotationPresent(Inherited.class);
+		ClassFileInfo current = info;
+		while (current != null) {
+			if (current.hasAnnotation(annotationName)) {
+				return Tristate.YES;
+			}
+			if (!inherited || current.isInterface() || current.getSuperName() == null) {
+				return Tristate.NO;
+			}
+			current = readClassInfo(current.getSuperName(), classLoader);
 		}
+		return Tristate.MAYBE;
 	}
 
 	/**
@@ -26,6 +26,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xenei.classpathutils.Case;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 
 /**
  * filters classes by name.
@@ -35,6 +36,9 @@ public class NameClassFilter extends _AbstractStringFilter implements Serializab
 
 	private static final Log LOG = LogFactory.getLog(NameClassFilter.class);
 
+	/** Hashed index of the names, built on first use */
+	private transient volatile NameIndex index;
+
 	/**
 	 * 
 	 */
@@ -146,13 +150,47 @@ public class NameClassFilter extends _AbstractStringFilter implements Serializab
 	 */
 	@Override
 	public boolean accept(String className) {
-		String cn = removeDotClass(className);
+		// look up the name without the ".class" suffix without creating it.
+		int len = className.endsWith(".class") ? className.length() - ".class".length() : className.length();
+		return getIndex().contains(className, len);
+	}
+
+	/**
+	 * Get the hashed index of the names.
+	 * 
+	 * @return the index.
+	 */
+	NameIndex getIndex() {
+		NameIndex idx = index;
+		if (idx == null) {
+			idx = new NameIndex(getStrings(), !caseSensitivity.isCaseSensitive());
+			index = idx;
+		}
+		return idx;
+	}
+
+	@Override
+	void stringsChanged() {
+		index = null;
+	}
+
+	/**
+	 * Checks the prefix against our names. Names with the prefix may match if
+	 * the prefix is the start of one of our names (with or without the
+	 * ".class" suffix).
+	 * 
+	 * @param prefix
+	 *            the class name prefix to check.
+	 * @return NO or MAYBE.
+	 */
+	@Override
+	public Tristate matchPrefix(String prefix) {
 		for (String name2 : getStrings()) {
-			if (caseSensitivity.checkEquals(cn, name2)) {
-				return true;
+			if (caseSensitivity.checkStartsWith(name2 + ".class", prefix)) {
+				return Tristate.MAYBE;
 			}
 		}
-		return false;
+		return Tristate.NO;
 	}
 
 	/**
@@ -211,10 +249,11 @@ public class NameClassFilter extends _AbstractStringFilter implements Serializab
 		if (lst.size() == 0) {
 			return FalseClassFilter.FALSE;
 		}
-		if (lst.size() < getStrings().size()) {
-			return new NameClassFilter(lst);
-		}
-		return this;
+		NameClassFilter result = lst.size() < getStrings().size() ? new NameClassFilter(caseSensitivity, lst)
+				: this;
+		// build the hashed index now rather than on the first accept.
+		result.getIndex();
+		return result;
 	}
 
 }
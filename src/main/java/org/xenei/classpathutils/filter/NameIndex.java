@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import java.util.Collection;
+
+/**
+ * An immutable hash set of names that can be probed with the leading region
+ * of a string, so a name can be looked up without creating a substring.
+ * <p>
+ * The table uses open addressing with linear probing. For a case
+ * insensitive index characters are folded before hashing the same way
+ * {@link String#equalsIgnoreCase(String)} compares them, so names that are
+ * equal ignoring case hash alike.
+ * </p>
+ */
+final class NameIndex {
+
+	private final String[] keys;
+	private final int[] hashes;
+	private final int mask;
+	private final boolean ignoreCase;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param names
+	 *            the names to hold, duplicates are ignored.
+	 * @param ignoreCase
+	 *            true for case insensitive lookups.
+	 */
+	NameIndex(Collection<String> names, boolean ignoreCase) {
+		this.ignoreCase = ignoreCase;
+		int capacity = 2;
+		// keep the table at most half full
+		while (capacity < names.size() * 2) {
+			capacity <<= 1;
+		}
+		keys = new String[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+		for (String name : names) {
+			int h = hash(name, name.length());
+			int i = h & mask;
+			while (keys[i] != null && !matches(i, h, name, name.length())) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = name;
+			hashes[i] = h;
+		}
+	}
+
+	private int hash(String str, int len) {
+		int h = 0;
+		for (int i = 0; i < len; i++) {
+			char c = str.charAt(i);
+			h = 31 * h + (ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c);
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private boolean matches(int slot, int h, String str, int len) {
+		String key = keys[slot];
+		return hashes[slot] == h && key.length() == len && str.regionMatches(ignoreCase, 0, key, 0, len);
+	}
+
+	/**
+	 * Check if the first len characters of str are one of the names.
+	 *
+	 * @param str
+	 *            the string to check.
+	 * @param len
+	 *            the number of leading characters to look up.
+	 * @return true if the region is one of the names.
+	 */
+	boolean contains(String str, int len) {
+		int h = hash(str, len);
+		for (int i = h & mask; keys[i] != null; i = (i + 1) & mask) {
+			if (matches(i, h, str, len)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
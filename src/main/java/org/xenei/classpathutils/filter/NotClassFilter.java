@@ -17,12 +17,15 @@
 package org.xenei.classpathutils.filter;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.xenei.classpathutils.Candidate;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.types.CollectionFilterType;
 
 /**
@@ -92,7 +95,37 @@ public class NotClassFilter extends _AbstractBaseFilter implements CollectionFil
 	 */
 	@Override
 	public boolean accept(String className) {
-		return !filter.accept(className);
+		return isNamesOnly() ? acceptNamesOnly(className) : accept(new Candidate(className));
+	}
+
+	@Override
+	boolean acceptNamesOnly(String className) {
+		return !accept(filter, className, null);
+	}
+
+	/**
+	 * Returns the logical NOT of the underlying filter's return value for the
+	 * same candidate.
+	 * 
+	 * @param candidate
+	 *            the candidate to check.
+	 * @return true if the enclosed filter returns false
+	 */
+	@Override
+	public boolean accept(Candidate candidate) {
+		return !filter.accept(candidate);
+	}
+
+	/**
+	 * Returns the logical NOT of the underlying filter's prefix match.
+	 * 
+	 * @param prefix
+	 *            the class name prefix to check.
+	 * @return the negation of the enclosed filter's result.
+	 */
+	@Override
+	public Tristate matchPrefix(String prefix) {
+		return filter.matchPrefix(prefix).not();
 	}
 
 	/**
@@ -113,6 +146,14 @@ public class NotClassFilter extends _AbstractBaseFilter implements CollectionFil
 		return new String[] { filter.toString() };
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * A double negation is removed. The negation of an And or an Or is pushed
+	 * down to its arguments (De Morgan's laws) when the result is smaller,
+	 * which is the case when the negated arguments simplify.
+	 * </p>
+	 */
 	@Override
 	public ClassPathFilter optimize() {
 		ClassPathFilter f = filter.optimize();
@@ -122,6 +163,23 @@ public class NotClassFilter extends _AbstractBaseFilter implements CollectionFil
 		if (f == TrueClassFilter.TRUE) {
 			return FalseClassFilter.FALSE;
 		}
+		if (f instanceof NotClassFilter) {
+			return ((NotClassFilter) f).filter;
+		}
+		if (f instanceof AndClassFilter || f instanceof OrClassFilter) {
+			List<ClassPathFilter> args = ((_AbstractConditionalFilter) f).getFilters();
+			if (args.size() > 1) {
+				List<ClassPathFilter> negated = new ArrayList<ClassPathFilter>(args.size());
+				for (ClassPathFilter arg : args) {
+					negated.add(new NotClassFilter(arg));
+				}
+				ClassPathFilter pushed = f instanceof AndClassFilter ? new OrClassFilter(negated).optimize()
+						: new AndClassFilter(negated).optimize();
+				if (FilterRewriter.size(pushed) <= FilterRewriter.size(f)) {
+					return pushed;
+				}
+			}
+		}
 		if (f == filter) {
 			return this;
 		}
@@ -129,6 +187,11 @@ public class NotClassFilter extends _AbstractBaseFilter implements CollectionFil
 
 	}
 
+	@Override
+	void freezeState() {
+		filter.freeze();
+	}
+
 	@Override
 	public List<ClassPathFilter> getFilters() {
 		return Arrays.asList(filter);
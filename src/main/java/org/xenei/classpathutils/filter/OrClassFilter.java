@@ -20,12 +20,15 @@ import java.io.Serializable;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+import org.xenei.classpathutils.Candidate;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 
 /**
  * A ClassFilter providing conditional OR logic across a list of class filters.
@@ -41,6 +44,9 @@ public class OrClassFilter extends _AbstractConditionalFilter implements Seriali
 	 */
 	private static final long serialVersionUID = 4219706007335645398L;
 
+	/** The regex and wildcard children merged by optimize() */
+	private transient volatile Union union;
+
 	/**
 	 * Constructs a new instance of <code>OrClassFilter</code> with the
 	 * specified filters.
@@ -96,12 +102,33 @@ public class OrClassFilter extends _AbstractConditionalFilter implements Seriali
 	 */
 	@Override
 	public boolean accept(final String className) {
+		return accept(className, isNamesOnly() ? null : new Candidate(className));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean accept(final Candidate candidate) {
+		return accept(candidate.getName(), candidate);
+	}
+
+	@Override
+	boolean acceptNamesOnly(final String className) {
+		return accept(className, null);
+	}
+
+	private boolean accept(final String className, final Candidate candidate) {
+		Union u = union;
+		if (u != null) {
+			return u.accept(className, candidate);
+		}
 		List<ClassPathFilter> filters = this.getFilters();
 		if (filters.isEmpty()) {
 			return false;
 		}
 		for (ClassPathFilter filter : filters) {
-			if (filter.accept(className)) {
+			if (accept(filter, className, candidate)) {
 				return true;
 			}
 		}
@@ -122,54 +149,296 @@ public class OrClassFilter extends _AbstractConditionalFilter implements Seriali
 		return false;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Tristate matchPrefix(String prefix) {
+		List<ClassPathFilter> filters = this.getFilters();
+		Tristate result = Tristate.NO;
+		for (ClassPathFilter filter : filters) {
+			result = result.or(filter.matchPrefix(prefix));
+			if (result == Tristate.YES) {
+				return Tristate.YES;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the union of the regex and wildcard children.
+	 * 
+	 * @return the union or null if optimize() did not merge any children.
+	 */
+	Union getUnion() {
+		return union;
+	}
+
+	@Override
+	void filtersChanged() {
+		union = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Nested Ors are merged, FALSE and duplicate arguments are removed and the
+	 * arguments are simplified by the boolean rewrite rules: a filter and its
+	 * negation is TRUE, string filters of the same type are merged and
+	 * prefixes (or suffixes) and names covered by other arguments are
+	 * removed.
+	 * </p>
+	 * <p>
+	 * The regular expression and wildcard children of the optimized filter are
+	 * merged so that a name is checked with one pattern and one wildcard
+	 * matcher rather than once per child. The children are still reported by
+	 * getFilters(), toString() and args(). The merged matchers are built from
+	 * the children as they are when optimize() is called; changing the list
+	 * of filters discards them.
+	 * </p>
+	 */
 	@Override
 	public ClassPathFilter optimize() {
-		Set<ClassPathFilter> filters = new LinkedHashSet<ClassPathFilter>(this.getFilters());
+		// use a map to make merging enclosed ORs easier.
+		Map<ClassPathFilter, ClassPathFilter> filters = new LinkedHashMap<ClassPathFilter, ClassPathFilter>();
 		// optimize the arguments first
 		boolean changed = false;
 		for (ClassPathFilter f : this.getFilters()) {
 			ClassPathFilter f2 = f.optimize();
-			// if any of them resolve to TRUE then the entire OR is true.
-			if (f2 == TrueClassFilter.TRUE) {
-				return TrueClassFilter.TRUE;
-			}
-			// remove any FALSE
-			if (f2 == FalseClassFilter.FALSE) {
+			changed |= !f2.equals(f);
+			if (f2 instanceof OrClassFilter) {
 				changed = true;
-				filters.remove(f);
-			} else if (!f.equals(f2)) {
+				for (ClassPathFilter filter : ((OrClassFilter) f2).getFilters()) {
+					filters.put(filter, filter);
+				}
+			} else if (f2 == TrueClassFilter.TRUE) {
+				// if any of them resolve to TRUE then the entire OR is true.
+				return TrueClassFilter.TRUE;
+			} else if (f2 == FalseClassFilter.FALSE) {
+				// remove any FALSE
 				changed = true;
-				filters.remove(f);
-				filters.add(f2);
+			} else {
+				filters.put(f2, f2);
 			}
 		}
 
-		if (filters.size() == 0) {
+		List<ClassPathFilter> filterOrder = new ArrayList<ClassPathFilter>(filters.values());
+		ClassPathFilter constant = FilterRewriter.simplify(false, filterOrder);
+		if (constant != null) {
+			return constant;
+		}
+
+		if (filterOrder.size() == 0) {
 			return FalseClassFilter.FALSE;
 		}
 
 		// if there is only one argument just return that.
-		if (filters.size() == 1) {
-			return filters.iterator().next();
+		if (filterOrder.size() == 1) {
+			return filterOrder.get(0);
 		}
 
-		List<ClassPathFilter> filterOrder = new ArrayList<ClassPathFilter>(filters);
 		filterOrder.sort(EXECUTION_ORDER);
-		if (!changed) {
-			Iterator<ClassPathFilter> iter1 = this.getFilters().iterator();
-			Iterator<ClassPathFilter> iter2 = filterOrder.iterator();
-			while (iter1.hasNext()) {
-				if (!iter1.next().equals(iter2.next())) {
-					changed = true;
-					break;
+		changed |= !filterOrder.equals(this.getFilters());
+
+		// never modify this, it may be frozen and shared.
+		if (!changed && union != null) {
+			return this;
+		}
+		OrClassFilter result = new OrClassFilter(filterOrder);
+		result.buildUnion();
+		return result;
+	}
+
+	/**
+	 * Merge the regular expression and wildcard arguments. Called on new
+	 * optimized filters only, before they are shared; the union is discarded
+	 * when the arguments change.
+	 */
+	void buildUnion() {
+		union = Union.build(getFilters());
+	}
+
+	/**
+	 * The regular expression and wildcard children of an Or combined into a
+	 * single alternation and a wildcard matcher per case. The other children
+	 * keep their place in the execution order, the union is checked where the
+	 * first merged child was.
+	 */
+	static final class Union {
+		/** the inline flag for each pattern flag that has one */
+		private static final int[] FLAGS = { Pattern.CASE_INSENSITIVE, Pattern.MULTILINE, Pattern.DOTALL,
+				Pattern.UNICODE_CASE, Pattern.COMMENTS, Pattern.UNIX_LINES, Pattern.UNICODE_CHARACTER_CLASS };
+		private static final String FLAG_CHARS = "imsuxdU";
+		/** back references and named groups break when alternated */
+		private static final Pattern UNSAFE = Pattern.compile("\\\\[1-9k]|\\(\\?<[a-zA-Z]");
+
+		/** the children checked before the union */
+		private final List<ClassPathFilter> before;
+		/** the children checked after the union */
+		private final List<ClassPathFilter> after;
+		/** the alternation of the regular expressions, may be null */
+		private final Pattern pattern;
+		/** the case sensitive wildcards, may be null */
+		private final GlobMatcher sensitive;
+		/** the case insensitive wildcards, may be null */
+		private final GlobMatcher insensitive;
+
+		private Union(List<ClassPathFilter> before, List<ClassPathFilter> after, Pattern pattern,
+				GlobMatcher sensitive, GlobMatcher insensitive) {
+			this.before = before;
+			this.after = after;
+			this.pattern = pattern;
+			this.sensitive = sensitive;
+			this.insensitive = insensitive;
+		}
+
+		/**
+		 * Merge the regular expression and wildcard filters.
+		 * 
+		 * @param filters
+		 *            the children of the Or.
+		 * @return the union or null if fewer than two children can be merged.
+		 */
+		static Union build(List<ClassPathFilter> filters) {
+			List<ClassPathFilter> before = new ArrayList<ClassPathFilter>();
+			List<ClassPathFilter> after = new ArrayList<ClassPathFilter>();
+			StringBuilder alternation = new StringBuilder();
+			int regexCount = 0;
+			List<String> sensitive = new ArrayList<String>();
+			List<String> insensitive = new ArrayList<String>();
+			int merged = 0;
+			for (ClassPathFilter filter : filters) {
+				String regex = null;
+				if (filter.getClass() == RegexClassFilter.class) {
+					regex = toGroup(((RegexClassFilter) filter).getPattern());
+				}
+				if (regex != null) {
+					if (regexCount++ > 0) {
+						alternation.append('|');
+					}
+					alternation.append(regex);
+				} else if (filter.getClass() == WildcardClassFilter.class) {
+					WildcardClassFilter wildcard = (WildcardClassFilter) filter;
+					if (wildcard.getCaseSensitivity().isCaseSensitive()) {
+						sensitive.addAll(wildcard.getWildcards());
+					} else {
+						insensitive.addAll(wildcard.getWildcards());
+					}
+				} else {
+					(merged == 0 ? before : after).add(filter);
+					continue;
 				}
+				merged++;
 			}
+			if (merged < 2) {
+				return null;
+			}
+			Pattern pattern = null;
+			if (regexCount > 0) {
+				try {
+					pattern = Pattern.compile(alternation.toString());
+				} catch (PatternSyntaxException e) {
+					// e.g. the same group name in two patterns
+					return null;
+				}
+			}
+			return new Union(before, after, pattern,
+					sensitive.isEmpty() ? null : new GlobMatcher(sensitive, false),
+					insensitive.isEmpty() ? null : new GlobMatcher(insensitive, true));
 		}
 
-		if (changed) {
-			return new OrClassFilter(filterOrder);
+		/**
+		 * Convert a pattern to a non-capturing group with the pattern flags
+		 * inline.
+		 * 
+		 * @return the group or null if the pattern can not be alternated.
+		 */
+		private static String toGroup(Pattern p) {
+			String regex = p.pattern();
+			if (UNSAFE.matcher(regex).find()) {
+				return null;
+			}
+			StringBuilder sb = new StringBuilder("(?");
+			int flags = p.flags();
+			for (int i = 0; i < FLAGS.length; i++) {
+				if ((flags & FLAGS[i]) != 0) {
+					sb.append(FLAG_CHARS.charAt(i));
+					flags &= ~FLAGS[i];
+				}
+			}
+			if (flags != 0) {
+				// LITERAL and CANON_EQ have no inline form.
+				return null;
+			}
+			String group = sb.append(':').append(regex).append(')').toString();
+			try {
+				// an unterminated quote or comment swallows the closing bracket.
+				if (Pattern.compile(group).matcher("").groupCount() != p.matcher("").groupCount()) {
+					return null;
+				}
+			} catch (PatternSyntaxException e) {
+				return null;
+			}
+			return group;
+		}
+
+		/**
+		 * Check the merged children only.
+		 * 
+		 * @param className
+		 *            the name to check.
+		 * @return true if one of the merged children accepts the name.
+		 */
+		boolean matches(String className) {
+			return (sensitive != null && sensitive.matches(className))
+					|| (insensitive != null && insensitive.matches(className))
+					|| (pattern != null && pattern.matcher(className).matches());
+		}
+
+		/**
+		 * Get the children that are checked before the merged children.
+		 * 
+		 * @return the children.
+		 */
+		List<ClassPathFilter> getBefore() {
+			return before;
+		}
+
+		/**
+		 * Get the children that are checked after the merged children.
+		 * 
+		 * @return the children.
+		 */
+		List<ClassPathFilter> getAfter() {
+			return after;
+		}
+
+		/**
+		 * Check all the children.
+		 * 
+		 * @param className
+		 *            the class name to check.
+		 * @param candidate
+		 *            the candidate to check or null if the children only
+		 *            check names.
+		 * @return true if any child accepts the class name.
+		 */
+		boolean accept(String className, Candidate candidate) {
+			for (ClassPathFilter filter : before) {
+				if (_AbstractBaseFilter.accept(filter, className, candidate)) {
+					return true;
+				}
+			}
+			if (matches(className)) {
+				return true;
+			}
+			for (ClassPathFilter filter : after) {
+				if (_AbstractBaseFilter.accept(filter, className, candidate)) {
+					return true;
+				}
+			}
+			return false;
 		}
-		return this;
 	}
 
 }
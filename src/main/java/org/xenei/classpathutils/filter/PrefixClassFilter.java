@@ -27,6 +27,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xenei.classpathutils.Case;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 
 /**
  * A filter that matches classes by prefix.
@@ -140,12 +141,30 @@ public class PrefixClassFilter extends _AbstractStringFilter implements Serializ
 	 */
 	@Override
 	public boolean accept(String className) {
-		for (String prefix : getStrings()) {
-			if (caseSensitivity.checkStartsWith(className, prefix)) {
-				return true;
+		return getTrie(false).matches(className);
+	}
+
+	/**
+	 * Checks the prefix against our prefixes. Names with the prefix all match
+	 * if it starts with one of our prefixes, they may match if it is the start
+	 * of one of our prefixes.
+	 * 
+	 * @param prefix
+	 *            the class name prefix to check.
+	 * @return YES, NO or MAYBE.
+	 */
+	@Override
+	public Tristate matchPrefix(String prefix) {
+		Tristate result = Tristate.NO;
+		for (String str : getStrings()) {
+			if (caseSensitivity.checkStartsWith(prefix, str)) {
+				return Tristate.YES;
+			}
+			if (caseSensitivity.checkStartsWith(str, prefix)) {
+				result = Tristate.MAYBE;
 			}
 		}
-		return false;
+		return result;
 	}
 
 	@Override
@@ -162,8 +181,10 @@ public class PrefixClassFilter extends _AbstractStringFilter implements Serializ
 				return TrueClassFilter.TRUE;
 			}
 		}
-		if (set.size() < getStrings().size()) {
-			return new PrefixClassFilter(caseSensitivity, set);
+		// strings that start (end) with another string match nothing more.
+		List<String> minimal = FilterRewriter.minimal(set, caseSensitivity, false);
+		if (minimal.size() < getStrings().size()) {
+			return new PrefixClassFilter(caseSensitivity, minimal);
 		}
 		return this;
 
@@ -37,6 +37,8 @@ public class RegexClassFilter implements ClassPathFilter, Serializable, StringFi
 	private static final long serialVersionUID = -3282334808113162667L;
 	/** The regular expression pattern that will be used to match filenames */
 	private final Pattern pattern;
+	/** The cached hash code, 0 if not computed */
+	private transient int hash;
 
 	/**
 	 * Construct a new regular expression filter.
@@ -106,6 +108,15 @@ public class RegexClassFilter implements ClassPathFilter, Serializable, StringFi
 		this.pattern = pattern;
 	}
 
+	/**
+	 * Get the compiled pattern.
+	 * 
+	 * @return the pattern.
+	 */
+	Pattern getPattern() {
+		return pattern;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -159,14 +170,21 @@ public class RegexClassFilter implements ClassPathFilter, Serializable, StringFi
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof ClassPathFilter) {
-			return ClassPathFilter.Util.equals(this, (ClassPathFilter) o);
+			return !(o instanceof RegexClassFilter && hashCode() != o.hashCode())
+					&& ClassPathFilter.Util.equals(this, (ClassPathFilter) o);
 		}
 		return false;
 	}
 
 	@Override
 	public int hashCode() {
-		return ClassPathFilter.Util.hashCode(this);
+		// the filter can not change so the hash code is computed once.
+		int h = hash;
+		if (h == 0) {
+			h = ClassPathFilter.Util.hashCode(this);
+			hash = h;
+		}
+		return h;
 	}
 
 	/**
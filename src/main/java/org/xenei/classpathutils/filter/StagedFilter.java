@@ -0,0 +1,597 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xenei.classpathutils.Candidate;
+import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
+import org.xenei.classpathutils.filter.types.ClassFilterType;
+import org.xenei.classpathutils.filter.types.StringFilterType;
+
+/**
+ * A filter that checks a class name in three stages, each more expensive
+ * than the one before: the name, the class file metadata and the loaded
+ * class.
+ * <p>
+ * The execution order puts the name filters of an And or Or first, but a
+ * class filter under an Or or a Not may still load a class that a name
+ * filter elsewhere in the tree rejects. This filter evaluates the whole tree
+ * in three valued logic at each stage. The name stage only runs the name
+ * filters, the filters that need more are MAYBE. The metadata stage adds the
+ * filters that can be answered from the class file (AbstractClass,
+ * AnnotationClass, InterfaceClass and HasAnnotation). Only when the tree is
+ * still MAYBE is the class loaded and the remaining filters run. A class is
+ * loaded at most once per check, and only when the names and the class file
+ * can not decide the result.
+ * </p>
+ * <p>
+ * Parts of the tree that only check names are compiled with
+ * {@link FilterCompiler}. Filters that are not built in and are not
+ * {@link ClassFilterType}s are called with the {@link Candidate} in the last
+ * stage, so they share its class file metadata and class.
+ * </p>
+ * <p>
+ * Only {@link #accept(String)} and {@link #accept(Candidate)} are staged, the
+ * other methods are delegated to the source filter. The filter is safe to use
+ * from several threads.
+ * </p>
+ */
+public final class StagedFilter extends _AbstractBaseFilter {
+
+	private static final Log LOG = LogFactory.getLog(StagedFilter.class);
+
+	private final ClassPathFilter source;
+	private final Stage root;
+	/** The class loader for the candidates, null for the default */
+	private final ClassLoader classLoader;
+
+	/**
+	 * Constructor. The filter should be optimized first.
+	 *
+	 * @param filter
+	 *            the filter to evaluate.
+	 * @throws IllegalArgumentException
+	 *             if the filter is null.
+	 */
+	public StagedFilter(ClassPathFilter filter) {
+		this(filter, null);
+	}
+
+	/**
+	 * Constructor. The filter should be optimized first.
+	 *
+	 * @param filter
+	 *            the filter to evaluate.
+	 * @param classLoader
+	 *            the class loader to read and load the named classes with,
+	 *            null for
+	 *            {@link org.xenei.classpathutils.ClassPathUtils#getClassLoader()}.
+	 * @throws IllegalArgumentException
+	 *             if the filter is null.
+	 */
+	public StagedFilter(ClassPathFilter filter, ClassLoader classLoader) {
+		if (filter == null) {
+			throw new IllegalArgumentException("Filter may not be null");
+		}
+		this.source = filter;
+		this.root = filter instanceof StagedFilter ? ((StagedFilter) filter).root : build(filter);
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * Plan the evaluation of a filter. A filter that only checks names is
+	 * compiled, any other filter is staged.
+	 *
+	 * @param filter
+	 *            the optimized filter.
+	 * @return a filter that accepts the same names as filter.
+	 * @throws IllegalArgumentException
+	 *             if the filter is null.
+	 */
+	public static ClassPathFilter plan(ClassPathFilter filter) {
+		return plan(filter, null);
+	}
+
+	/**
+	 * Plan the evaluation of a filter. A filter that only checks names is
+	 * compiled, any other filter is staged.
+	 *
+	 * @param filter
+	 *            the optimized filter.
+	 * @param classLoader
+	 *            the class loader to read and load the named classes with,
+	 *            null for
+	 *            {@link org.xenei.classpathutils.ClassPathUtils#getClassLoader()}.
+	 * @return a filter that accepts the same names as filter.
+	 * @throws IllegalArgumentException
+	 *             if the filter is null.
+	 */
+	public static ClassPathFilter plan(ClassPathFilter filter, ClassLoader classLoader) {
+		if (filter == null) {
+			throw new IllegalArgumentException("Filter may not be null");
+		}
+		if (filter instanceof StagedFilter && ((StagedFilter) filter).classLoader == classLoader) {
+			return filter;
+		}
+		if (isNamesOnly(filter)) {
+			return FilterCompiler.compile(filter);
+		}
+		return new StagedFilter(filter, classLoader);
+	}
+
+	/**
+	 * Remove a compiled or adaptive wrapper from a filter.
+	 */
+	private static ClassPathFilter unwrap(ClassPathFilter filter) {
+		if (filter instanceof AdaptiveFilter) {
+			return ((AdaptiveFilter) filter).getSource();
+		}
+		if (filter instanceof StagedFilter) {
+			return ((StagedFilter) filter).source;
+		}
+		return FilterCompiler.getSource(filter);
+	}
+
+	/**
+	 * Check if a filter only needs the class name.
+	 *
+	 * @param filter
+	 *            the filter to check.
+	 * @return true if no part of the filter reads the class file or loads the
+	 *         class.
+	 */
+	public static boolean isNamesOnly(ClassPathFilter filter) {
+		ClassPathFilter f = unwrap(filter);
+		if (f instanceof TrueClassFilter || f instanceof FalseClassFilter) {
+			return true;
+		}
+		if (f instanceof _AbstractConditionalFilter) {
+			for (ClassPathFilter child : ((_AbstractConditionalFilter) f).getFilters()) {
+				if (!isNamesOnly(child)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (f instanceof NotClassFilter) {
+			return isNamesOnly(((NotClassFilter) f).getFilters().get(0));
+		}
+		return f instanceof StringFilterType;
+	}
+
+	/**
+	 * Build the stages of a filter.
+	 */
+	private static Stage build(ClassPathFilter filter) {
+		if (isNamesOnly(filter)) {
+			return new Names(FilterCompiler.toPredicate(filter));
+		}
+		// stage the arguments of an adaptive filter in the order learned so far.
+		ClassPathFilter f = filter instanceof AdaptiveFilter ? ((AdaptiveFilter) filter).getLearnedFilter()
+				: unwrap(filter);
+		if (f instanceof AndClassFilter) {
+			List<Stage> stages = new ArrayList<Stage>();
+			for (ClassPathFilter child : ((AndClassFilter) f).getFilters()) {
+				stages.add(build(child));
+			}
+			return new Node(true, stages);
+		}
+		if (f instanceof OrClassFilter) {
+			OrClassFilter or = (OrClassFilter) f;
+			OrClassFilter.Union union = or.getUnion();
+			List<Stage> stages = new ArrayList<Stage>();
+			if (union == null) {
+				for (ClassPathFilter child : or.getFilters()) {
+					stages.add(build(child));
+				}
+			} else {
+				// the merged children only check names.
+				for (ClassPathFilter child : union.getBefore()) {
+					stages.add(build(child));
+				}
+				stages.add(new Names(union::matches));
+				for (ClassPathFilter child : union.getAfter()) {
+					stages.add(build(child));
+				}
+			}
+			return new Node(false, stages);
+		}
+		if (f instanceof NotClassFilter) {
+			return new Negation(build(((NotClassFilter) f).getFilters().get(0)));
+		}
+		if (f instanceof AbstractClassFilter) {
+			AbstractClassFilter abstractFilter = (AbstractClassFilter) f;
+			return new Metadata(f, candidate -> abstractFilter.accept(candidate.getClassFileInfo()));
+		}
+		if (f instanceof AnnotationClassFilter) {
+			AnnotationClassFilter annotationFilter = (AnnotationClassFilter) f;
+			return new Metadata(f, candidate -> annotationFilter.accept(candidate.getClassFileInfo()));
+		}
+		if (f instanceof InterfaceClassFilter) {
+			InterfaceClassFilter interfaceFilter = (InterfaceClassFilter) f;
+			return new Metadata(f, candidate -> interfaceFilter.accept(candidate.getClassFileInfo()));
+		}
+		if (f instanceof HasAnnotationClassFilter) {
+			HasAnnotationClassFilter hasAnnotation = (HasAnnotationClassFilter) f;
+			return new Metadata(f,
+					candidate -> hasAnnotation.accept(candidate.getClassFileInfo(), candidate.getClassLoader()));
+		}
+		if (f instanceof ClassFilterType) {
+			return new Loaded(f);
+		}
+		return new Other(f);
+	}
+
+	/**
+	 * Check a class name with the name filters only.
+	 *
+	 * @param className
+	 *            the class name.
+	 * @return YES or NO if the name decides the result, MAYBE otherwise.
+	 */
+	public Tristate acceptName(String className) {
+		return root.name(className);
+	}
+
+	/**
+	 * Check a candidate with the name filters and the class file metadata.
+	 *
+	 * @param candidate
+	 *            the candidate, its class file is read if needed.
+	 * @return YES or NO if the name and metadata decide the result, MAYBE
+	 *         otherwise.
+	 */
+	public Tristate acceptMetadata(Candidate candidate) {
+		return root.metadata(new Lookup(candidate));
+	}
+
+	@Override
+	protected Log getLog() {
+		return LOG;
+	}
+
+	@Override
+	public boolean accept(String className) {
+		Tristate result = root.name(className);
+		if (result == Tristate.MAYBE) {
+			return accept(new Lookup(new Candidate(className, classLoader)));
+		}
+		return result == Tristate.YES;
+	}
+
+	@Override
+	public boolean accept(Candidate candidate) {
+		Tristate result = root.name(candidate.getName());
+		if (result == Tristate.MAYBE) {
+			return accept(new Lookup(candidate));
+		}
+		return result == Tristate.YES;
+	}
+
+	/**
+	 * Run the metadata and load stages.
+	 */
+	private boolean accept(Lookup lookup) {
+		Tristate result = root.metadata(lookup);
+		if (result == Tristate.MAYBE) {
+			return root.loaded(lookup);
+		}
+		return result == Tristate.YES;
+	}
+
+	@Override
+	public boolean accept(URL url) {
+		return source.accept(url);
+	}
+
+	@Override
+	public boolean accept(Class<?> clazz) {
+		return source.accept(clazz);
+	}
+
+	@Override
+	public Tristate matchPrefix(String prefix) {
+		return source.matchPrefix(prefix);
+	}
+
+	@Override
+	public String funcName() {
+		return source.funcName();
+	}
+
+	@Override
+	public String[] args() {
+		return source.args();
+	}
+
+	@Override
+	public String toString() {
+		return source.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		return source.hashCode();
+	}
+
+	@Override
+	void freezeState() {
+		source.freeze();
+	}
+
+	@Override
+	public ClassPathFilter optimize() {
+		return this;
+	}
+
+	/**
+	 * The candidate being checked and the results of the metadata filters,
+	 * which may read several class files.
+	 */
+	private static final class Lookup {
+		private final Candidate candidate;
+		private Map<Metadata, Tristate> results;
+
+		Lookup(Candidate candidate) {
+			this.candidate = candidate;
+		}
+
+		/**
+		 * Get the result of a metadata filter.
+		 */
+		Tristate getResult(Metadata stage) {
+			if (results == null) {
+				results = new IdentityHashMap<Metadata, Tristate>();
+			}
+			Tristate result = results.get(stage);
+			if (result == null) {
+				result = stage.check.apply(candidate);
+				results.put(stage, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A part of the staged tree. The last stage is only checked for parts
+	 * that the metadata stage found to be MAYBE.
+	 */
+	private abstract static class Stage {
+		/**
+		 * Check the name.
+		 */
+		abstract Tristate name(String className);
+
+		/**
+		 * Check the name and the class file metadata.
+		 */
+		abstract Tristate metadata(Lookup lookup);
+
+		/**
+		 * Check the name, the class file metadata and the class.
+		 */
+		abstract boolean loaded(Lookup lookup);
+	}
+
+	/**
+	 * A filter, or part of the tree, that only checks names.
+	 */
+	private static final class Names extends Stage {
+		private final Predicate<String> predicate;
+
+		Names(Predicate<String> predicate) {
+			this.predicate = predicate;
+		}
+
+		@Override
+		Tristate name(String className) {
+			return Tristate.valueOf(predicate.test(className));
+		}
+
+		@Override
+		Tristate metadata(Lookup lookup) {
+			return name(lookup.candidate.getName());
+		}
+
+		@Override
+		boolean loaded(Lookup lookup) {
+			return predicate.test(lookup.candidate.getName());
+		}
+	}
+
+	/**
+	 * A filter that can be answered from the class file metadata. The class
+	 * is only loaded if the metadata can not be read.
+	 */
+	private static final class Metadata extends Stage {
+		private final ClassPathFilter filter;
+		private final Function<Candidate, Tristate> check;
+
+		Metadata(ClassPathFilter filter, Function<Candidate, Tristate> check) {
+			this.filter = filter;
+			this.check = check;
+		}
+
+		@Override
+		Tristate name(String className) {
+			return Tristate.MAYBE;
+		}
+
+		@Override
+		Tristate metadata(Lookup lookup) {
+			return lookup.getResult(this);
+		}
+
+		@Override
+		boolean loaded(Lookup lookup) {
+			Class<?> clazz = lookup.candidate.getLoadedClass();
+			return clazz != null && filter.accept(clazz);
+		}
+	}
+
+	/**
+	 * A filter that needs the loaded class.
+	 */
+	private static final class Loaded extends Stage {
+		private final ClassPathFilter filter;
+
+		Loaded(ClassPathFilter filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		Tristate name(String className) {
+			return Tristate.MAYBE;
+		}
+
+		@Override
+		Tristate metadata(Lookup lookup) {
+			return Tristate.MAYBE;
+		}
+
+		@Override
+		boolean loaded(Lookup lookup) {
+			Class<?> clazz = lookup.candidate.getLoadedClass();
+			return clazz != null && filter.accept(clazz);
+		}
+	}
+
+	/**
+	 * A filter that is not known, it is called with the class name in the
+	 * last stage.
+	 */
+	private static final class Other extends Stage {
+		private final ClassPathFilter filter;
+
+		Other(ClassPathFilter filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		Tristate name(String className) {
+			return Tristate.MAYBE;
+		}
+
+		@Override
+		Tristate metadata(Lookup lookup) {
+			return Tristate.MAYBE;
+		}
+
+		@Override
+		boolean loaded(Lookup lookup) {
+			return filter.accept(lookup.candidate);
+		}
+	}
+
+	/**
+	 * A Not filter.
+	 */
+	private static final class Negation extends Stage {
+		private final Stage stage;
+
+		Negation(Stage stage) {
+			this.stage = stage;
+		}
+
+		@Override
+		Tristate name(String className) {
+			return stage.name(className).not();
+		}
+
+		@Override
+		Tristate metadata(Lookup lookup) {
+			return stage.metadata(lookup).not();
+		}
+
+		@Override
+		boolean loaded(Lookup lookup) {
+			return !stage.loaded(lookup);
+		}
+	}
+
+	/**
+	 * An And or Or filter.
+	 */
+	private static final class Node extends Stage {
+		private final boolean and;
+		private final Stage[] stages;
+		/** the result that decides the node: NO for an And, YES for an Or */
+		private final Tristate decides;
+
+		Node(boolean and, List<Stage> stages) {
+			this.and = and;
+			this.stages = stages.toArray(new Stage[stages.size()]);
+			this.decides = and ? Tristate.NO : Tristate.YES;
+		}
+
+		@Override
+		Tristate name(String className) {
+			Tristate result = decides.not();
+			for (Stage stage : stages) {
+				Tristate t = stage.name(className);
+				if (t == decides) {
+					return t;
+				}
+				if (t == Tristate.MAYBE) {
+					result = Tristate.MAYBE;
+				}
+			}
+			return result;
+		}
+
+		@Override
+		Tristate metadata(Lookup lookup) {
+			Tristate result = decides.not();
+			for (Stage stage : stages) {
+				Tristate t = stage.metadata(lookup);
+				if (t == decides) {
+					return t;
+				}
+				if (t == Tristate.MAYBE) {
+					result = Tristate.MAYBE;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * As the node is MAYBE no child decides it, the children that are
+		 * MAYBE are checked.
+		 */
+		@Override
+		boolean loaded(Lookup lookup) {
+			for (Stage stage : stages) {
+				if (stage.metadata(lookup) == Tristate.MAYBE && stage.loaded(lookup) != and) {
+					return !and;
+				}
+			}
+			return and;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A character trie that checks if a string starts (or ends) with any of a set
+ * of strings in time proportional to the length of the string rather than
+ * the number of strings.
+ * <p>
+ * The trie is immutable. Each node holds its child characters in a sorted
+ * array that is binary searched. A suffix trie holds the strings reversed
+ * and is walked from the end of the candidate. A case insensitive trie folds
+ * characters the same way {@link String#regionMatches(boolean, int, String, int, int)}
+ * compares them.
+ * </p>
+ */
+final class StringTrie {
+
+	private final Node root;
+	private final boolean ignoreCase;
+	private final boolean suffix;
+	private final int size;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param strings
+	 *            the strings to match.
+	 * @param ignoreCase
+	 *            true to match case insensitively.
+	 * @param suffix
+	 *            true to match the end of candidates, false to match the
+	 *            start.
+	 */
+	StringTrie(Collection<String> strings, boolean ignoreCase, boolean suffix) {
+		this.ignoreCase = ignoreCase;
+		this.suffix = suffix;
+		this.size = strings.size();
+		Builder builder = new Builder();
+		for (String str : strings) {
+			Builder node = builder;
+			int len = str.length();
+			for (int i = 0; i < len; i++) {
+				char c = fold(str.charAt(suffix ? len - 1 - i : i));
+				Builder next = node.children.get(c);
+				if (next == null) {
+					next = new Builder();
+					node.children.put(c, next);
+				}
+				node = next;
+			}
+			node.terminal = true;
+		}
+		root = builder.build();
+	}
+
+	/**
+	 * Get the number of strings the trie was built from.
+	 *
+	 * @return the number of strings, including duplicates.
+	 */
+	int size() {
+		return size;
+	}
+
+	private char fold(char c) {
+		return ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+	}
+
+	/**
+	 * Check if the candidate starts with (or for a suffix trie ends with) any
+	 * of the strings.
+	 *
+	 * @param candidate
+	 *            the string to check.
+	 * @return true if one of the strings matches.
+	 */
+	boolean matches(String candidate) {
+		Node node = root;
+		int len = candidate.length();
+		for (int i = 0; !node.terminal; i++) {
+			if (i == len) {
+				return false;
+			}
+			node = node.child(fold(candidate.charAt(suffix ? len - 1 - i : i)));
+			if (node == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * An immutable trie node.
+	 */
+	private static final class Node {
+		private static final char[] NO_KEYS = new char[0];
+		private static final Node[] NO_NODES = new Node[0];
+
+		/** the sorted child characters */
+		private final char[] keys;
+		/** the child for each character */
+		private final Node[] nodes;
+		/** true if a string ends at this node */
+		private final boolean terminal;
+
+		Node(char[] keys, Node[] nodes, boolean terminal) {
+			this.keys = keys.length == 0 ? NO_KEYS : keys;
+			this.nodes = nodes.length == 0 ? NO_NODES : nodes;
+			this.terminal = terminal;
+		}
+
+		Node child(char c) {
+			if (keys.length == 1) {
+				return keys[0] == c ? nodes[0] : null;
+			}
+			int lo = 0;
+			int hi = keys.length - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				char k = keys[mid];
+				if (k < c) {
+					lo = mid + 1;
+				} else if (k > c) {
+					hi = mid - 1;
+				} else {
+					return nodes[mid];
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A mutable node used while building the trie.
+	 */
+	private static final class Builder {
+		private final TreeMap<Character, Builder> children = new TreeMap<Character, Builder>();
+		private boolean terminal;
+
+		Node build() {
+			char[] keys = new char[children.size()];
+			Node[] nodes = new Node[children.size()];
+			int i = 0;
+			for (Map.Entry<Character, Builder> e : children.entrySet()) {
+				keys[i] = e.getKey();
+				nodes[i] = e.getValue().build();
+				i++;
+			}
+			return new Node(keys, nodes, terminal);
+		}
+	}
+}
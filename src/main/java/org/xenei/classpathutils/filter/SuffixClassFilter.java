@@ -20,6 +20,7 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -137,12 +138,7 @@ public class SuffixClassFilter extends _AbstractStringFilter implements Serializ
 	 */
 	@Override
 	public boolean accept(String className) {
-		for (String suffix : getStrings()) {
-			if (caseSensitivity.checkEndsWith(className, suffix)) {
-				return true;
-			}
-		}
-		return false;
+		return getTrie(true).matches(className);
 	}
 
 	@Override
@@ -159,8 +155,10 @@ public class SuffixClassFilter extends _AbstractStringFilter implements Serializ
 				return TrueClassFilter.TRUE;
 			}
 		}
-		if (set.size() < getStrings().size()) {
-			return new SuffixClassFilter(caseSensitivity, set);
+		// strings that start (end) with another string match nothing more.
+		List<String> minimal = FilterRewriter.minimal(set, caseSensitivity, true);
+		if (minimal.size() < getStrings().size()) {
+			return new SuffixClassFilter(caseSensitivity, minimal);
 		}
 		return this;
 
@@ -21,6 +21,7 @@ import java.net.URL;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.types.LogicFilterType;
 
 /**
@@ -84,6 +85,18 @@ public class TrueClassFilter extends _AbstractBaseFilter implements LogicFilterT
 		return true;
 	}
 
+	/**
+	 * Returns YES.
+	 * 
+	 * @param prefix
+	 *            the prefix (ignored)
+	 * @return YES
+	 */
+	@Override
+	public Tristate matchPrefix(String prefix) {
+		return Tristate.YES;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -19,9 +19,8 @@ package org.xenei.classpathutils.filter;
 import java.io.Serializable;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -29,6 +28,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xenei.classpathutils.Case;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.types.StringFilterType;
 
 /**
@@ -59,12 +59,16 @@ public class WildcardClassFilter extends _AbstractBaseFilter implements Serializ
 	 * 
 	 */
 	private static final long serialVersionUID = 4689016340648211889L;
-	/** The wildcards that will be used to match filenames. */
-	private final List<String> wildcards = new ArrayList<String>();
+	/**
+	 * The wildcards that will be used to match filenames. Replaced by an
+	 * immutable copy when the filter is frozen.
+	 */
+	private volatile List<String> wildcards = new ArrayList<String>();
 	/** Whether the comparison is case sensitive. */
 	private final Case caseSensitivity;
 
-	private ClassPathFilter wrapped;
+	/** The matcher for the wildcards, built on first use */
+	private transient volatile GlobMatcher matcher;
 
 	/**
 	 * Construct a new case-sensitive wildcard filter for a single wildcard.
@@ -219,17 +223,41 @@ public class WildcardClassFilter extends _AbstractBaseFilter implements Serializ
 		if (wildcard == null) {
 			throw new IllegalArgumentException("The wildcard must not be null");
 		}
+		checkNotFrozen();
 		this.wildcards.add(wildcard);
-		RegexClassFilter filter = new RegexClassFilter(caseSensitivity, makeRegex(wildcard));
-		if (wrapped == null) {
-			wrapped = filter;
-		} else {
-			if (wrapped instanceof RegexClassFilter) {
-				wrapped = new OrClassFilter(wrapped, filter);
-			} else {
-				((OrClassFilter) wrapped).addFilter(filter);
-			}
+		matcher = null;
+	}
+
+	/**
+	 * Get the matcher for all the wildcards.
+	 * 
+	 * @return the matcher.
+	 */
+	GlobMatcher getMatcher() {
+		GlobMatcher m = matcher;
+		if (m == null) {
+			m = new GlobMatcher(getWildcards(), !caseSensitivity.isCaseSensitive());
+			matcher = m;
 		}
+		return m;
+	}
+
+	/**
+	 * Get the wildcards.
+	 * 
+	 * @return a copy of the wildcards.
+	 */
+	List<String> getWildcards() {
+		return new ArrayList<String>(wildcards);
+	}
+
+	/**
+	 * Get the case sensitivity.
+	 * 
+	 * @return the case sensitivity.
+	 */
+	Case getCaseSensitivity() {
+		return caseSensitivity;
 	}
 
 	/**
@@ -249,47 +277,10 @@ public class WildcardClassFilter extends _AbstractBaseFilter implements Serializ
 		return sb;
 	}
 
-	private static void parseWildAsterisk(StringBuilder sb, String s) {
-		String[] blocks = s.split("\\*");
-		Iterator<String> iter = Arrays.asList(blocks).iterator();
-		if (iter.hasNext()) {
-			escapeString(sb, iter.next());
-			while (iter.hasNext()) {
-				sb = escapeString(sb.append(".*"), iter.next());
-			}
-			if (s.endsWith("*")) {
-				sb.append(".*");
-			}
-		} else {
-			if (s.equals("*")) {
-				sb.append(".*");
-			}
-		}
-	}
-
-	private static StringBuilder parseWildQuestion(StringBuilder sb, String s) {
-		String[] blocks = s.split("\\?");
-		Iterator<String> iter = Arrays.asList(blocks).iterator();
-		if (iter.hasNext()) {
-			parseWildAsterisk(sb, iter.next());
-			while (iter.hasNext()) {
-				sb.append(".");
-				parseWildAsterisk(sb, iter.next());
-			}
-			if (s.endsWith("?")) {
-				sb.append(".");
-			}
-		} else {
-			if (s.equals("?")) {
-				sb.append(".");
-			}
-		}
-		return sb;
-	}
-
 	/**
 	 * Convert the wildcard string into a regex string. Wildcards use '*' to
-	 * denote multiple characters and '?' to denot a single character.
+	 * denote multiple characters and '?' to denot a single character. Each
+	 * '?' matches one character and a run of '*' is the same as a single '*'.
 	 * 
 	 * @param wildcard
 	 *            The wild card string to convert.
@@ -299,7 +290,27 @@ public class WildcardClassFilter extends _AbstractBaseFilter implements Serializ
 		if (wildcard == null) {
 			throw new IllegalArgumentException("The wildcard must not be null");
 		}
-		return parseWildQuestion(new StringBuilder("^"), wildcard).append("$").toString();
+		StringBuilder sb = new StringBuilder("^");
+		int start = 0;
+		boolean star = false;
+		for (int i = 0; i < wildcard.length(); i++) {
+			char c = wildcard.charAt(i);
+			if (c == '*' || c == '?') {
+				if (start < i) {
+					escapeString(sb, wildcard.substring(start, i));
+					star = false;
+				}
+				start = i + 1;
+				if (c == '?') {
+					sb.append(".");
+					star = false;
+				} else if (!star) {
+					sb.append(".*");
+					star = true;
+				}
+			}
+		}
+		return escapeString(sb, wildcard.substring(start)).append("$").toString();
 	}
 
 	/**
@@ -307,7 +318,7 @@ public class WildcardClassFilter extends _AbstractBaseFilter implements Serializ
 	 */
 	@Override
 	public boolean accept(URL url) {
-		return wrapped.accept(url);
+		return accept(url.toExternalForm());
 	}
 
 	/**
@@ -315,7 +326,7 @@ public class WildcardClassFilter extends _AbstractBaseFilter implements Serializ
 	 */
 	@Override
 	public boolean accept(String className) {
-		return wrapped.accept(className);
+		return getMatcher().matches(className);
 	}
 
 	/**
@@ -326,22 +337,54 @@ public class WildcardClassFilter extends _AbstractBaseFilter implements Serializ
 		return accept(clazz.getName());
 	}
 
+	/**
+	 * Checks the prefix against the literal start of our wildcards. Names with
+	 * the prefix can only match a wildcard if the prefix and the text before
+	 * the first '?' or '*' of the wildcard agree.
+	 * 
+	 * @param prefix
+	 *            the class name prefix to check.
+	 * @return NO or MAYBE.
+	 */
+	@Override
+	public Tristate matchPrefix(String prefix) {
+		for (String wildcard : wildcards) {
+			int pos = 0;
+			while (pos < wildcard.length() && wildcard.charAt(pos) != '?' && wildcard.charAt(pos) != '*') {
+				pos++;
+			}
+			String literal = wildcard.substring(0, pos);
+			if (caseSensitivity.checkStartsWith(prefix, literal) || caseSensitivity.checkStartsWith(literal, prefix)) {
+				return Tristate.MAYBE;
+			}
+		}
+		return Tristate.NO;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public String[] args() {
-		String[] retval = new String[wildcards.size() + 1];
+		List<String> lst = wildcards;
+		String[] retval = new String[lst.size() + 1];
 		retval[0] = caseSensitivity.toString();
-		for (int i = 0; i < wildcards.size(); i++) {
-			retval[i + 1] = wildcards.get(i);
+		for (int i = 0; i < lst.size(); i++) {
+			retval[i + 1] = lst.get(i);
 		}
 		return retval;
 	}
 
+	@Override
+	void freezeState() {
+		wildcards = Collections.unmodifiableList(new ArrayList<String>(wildcards));
+		getMatcher();
+	}
+
 	@Override
 	public ClassPathFilter optimize() {
-		wrapped = wrapped.optimize();
+		// build the matcher now rather than on the first accept.
+		getMatcher();
 		return this;
 	}
 }
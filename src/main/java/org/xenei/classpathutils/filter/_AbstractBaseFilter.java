@@ -18,10 +18,13 @@
 
 package org.xenei.classpathutils.filter;
 
+import java.io.IOException;
 import java.net.URL;
 import java.util.Collection;
 
 import org.apache.commons.logging.Log;
+import org.xenei.classpathutils.Candidate;
+import org.xenei.classpathutils.ClassFileInfo;
 import org.xenei.classpathutils.ClassPathFilter;
 import org.xenei.classpathutils.ClassPathUtils;
 
@@ -34,6 +37,17 @@ public abstract class _AbstractBaseFilter implements ClassPathFilter {
 
 	protected static final String[] NO_ARGS = new String[0];
 
+	/**
+	 * the cached hash code, 0 if not computed. Only frozen filters cache the
+	 * hash code as their argument filters can not change.
+	 */
+	private transient volatile int hash;
+
+	/** true once the filter is frozen */
+	private volatile boolean frozen;
+	/** true if the frozen filter only checks class names */
+	private volatile boolean namesOnly;
+
 	protected abstract Log getLog();
 
 	/* package static so it can be used in tests. */
@@ -54,6 +68,39 @@ public abstract class _AbstractBaseFilter implements ClassPathFilter {
 		}
 	}
 
+	/**
+	 * Read the class file metadata for a class without loading the class.
+	 *
+	 * @param className
+	 *            the class name, with or without the ".class" suffix.
+	 * @return the class file metadata or null if the class file can not be
+	 *         found or read.
+	 */
+	protected ClassFileInfo readClassInfo(String className) {
+		return readClassInfo(className, ClassPathUtils.getClassLoader());
+	}
+
+	/**
+	 * Read the class file metadata for a class from a class loader without
+	 * loading the class.
+	 *
+	 * @param className
+	 *            the class name, with or without the ".class" suffix.
+	 * @param classLoader
+	 *            the class loader to read the class file from.
+	 * @return the class file metadata or null if the class file can not be
+	 *         found or read.
+	 */
+	protected ClassFileInfo readClassInfo(String className, ClassLoader classLoader) {
+		String classNameStr = removeDotClass(className);
+		try {
+			return ClassFileInfo.forName(classNameStr, classLoader);
+		} catch (IOException e) {
+			getLog().debug(String.format("Can not read class file for %s: %s", classNameStr, e.toString()));
+			return null;
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -65,14 +112,117 @@ public abstract class _AbstractBaseFilter implements ClassPathFilter {
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof ClassPathFilter) {
-			return ClassPathFilter.Util.equals(this, (ClassPathFilter) o);
+			return !hashDiffers(o) && ClassPathFilter.Util.equals(this, (ClassPathFilter) o);
 		}
 		return false;
 	}
 
+	/**
+	 * Check if this and another frozen filter have different hash codes,
+	 * which makes comparing their structure unnecessary.
+	 */
+	private boolean hashDiffers(Object o) {
+		return frozen && o instanceof _AbstractBaseFilter && ((_AbstractBaseFilter) o).frozen
+				&& hashCode() != o.hashCode();
+	}
+
 	@Override
 	public int hashCode() {
-		return ClassPathFilter.Util.hashCode(this);
+		if (!frozen) {
+			return ClassPathFilter.Util.hashCode(this);
+		}
+		int h = hash;
+		if (h == 0) {
+			h = ClassPathFilter.Util.hashCode(this);
+			hash = h;
+		}
+		return h;
+	}
+
+	@Override
+	public final ClassPathFilter freeze() {
+		if (!frozen) {
+			freezeState();
+			namesOnly = StagedFilter.isNamesOnly(this);
+			frozen = true;
+		}
+		return this;
+	}
+
+	/**
+	 * Check if the filter only checks class names, so that accept(String)
+	 * does not need a Candidate. Computed once the filter is frozen and on
+	 * each call to accept(String) before that; the argument filters are then
+	 * passed the name with acceptNamesOnly() so they do not check again.
+	 *
+	 * @return true if no part of the filter reads the class file or loads the
+	 *         class.
+	 */
+	final boolean isNamesOnly() {
+		return frozen ? namesOnly : StagedFilter.isNamesOnly(this);
+	}
+
+	/**
+	 * Accept a class name with an argument filter, passing the candidate if
+	 * there is one.
+	 *
+	 * @param filter
+	 *            the argument filter.
+	 * @param className
+	 *            the class name.
+	 * @param candidate
+	 *            the candidate or null if the filters only check names.
+	 * @return the result of the argument filter.
+	 */
+	static boolean accept(ClassPathFilter filter, String className, Candidate candidate) {
+		if (candidate != null) {
+			return filter.accept(candidate);
+		}
+		return filter instanceof _AbstractBaseFilter ? ((_AbstractBaseFilter) filter).acceptNamesOnly(className)
+				: filter.accept(className);
+	}
+
+	/**
+	 * Accept a class name once the caller has found that the filter only
+	 * checks names. The logical filters override this to skip their own
+	 * isNamesOnly() check.
+	 *
+	 * @param className
+	 *            the class name.
+	 * @return the result of accept(className).
+	 */
+	boolean acceptNamesOnly(String className) {
+		return accept(className);
+	}
+
+	/**
+	 * Called by freeze() before the filter is marked frozen. Filters with
+	 * state that can change replace it with an immutable copy held in a
+	 * volatile field, and freeze their argument filters.
+	 */
+	void freezeState() {
+		// nothing to freeze by default.
+	}
+
+	/**
+	 * Check if the filter is frozen.
+	 * 
+	 * @return true if the filter can not be changed.
+	 */
+	public final boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Called before the filter is changed.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the filter is frozen.
+	 */
+	protected final void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("Filter is frozen: " + this);
+		}
 	}
 
 	/**
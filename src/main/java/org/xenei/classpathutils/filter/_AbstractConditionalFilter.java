@@ -18,7 +18,6 @@
 
 package org.xenei.classpathutils.filter;
 
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -26,6 +25,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.xenei.classpathutils.ClassPathFilter;
 import org.xenei.classpathutils.filter.types.CollectionFilterType;
 import org.xenei.classpathutils.filter.types.LogicFilterType;
@@ -36,7 +37,9 @@ import org.xenei.classpathutils.filter.types.StringFilterType;
  * implementations for basic add/delete filters and toString.
  *
  */
-public abstract class _AbstractConditionalFilter implements CollectionFilterType {
+public abstract class _AbstractConditionalFilter extends _AbstractBaseFilter implements CollectionFilterType {
+
+	private static final Log LOG = LogFactory.getLog(_AbstractConditionalFilter.class);
 
 	protected static final Comparator<ClassPathFilter> EXECUTION_ORDER = new Comparator<ClassPathFilter>() {
 
@@ -73,6 +76,12 @@ public abstract class _AbstractConditionalFilter implements CollectionFilterType
 	/** The list of file filters. */
 	private final List<ClassPathFilter> classFilters = new ArrayList<ClassPathFilter>();
 
+	/**
+	 * Read only view of the filters, returned by getFilters(). Replaced by an
+	 * immutable copy when the filter is frozen.
+	 */
+	private volatile List<ClassPathFilter> filtersView = Collections.unmodifiableList(classFilters);
+
 	/**
 	 * Create the conditionals from list of filters.
 	 * 
@@ -99,44 +108,38 @@ public abstract class _AbstractConditionalFilter implements CollectionFilterType
 		addFilters(classFilters);
 	}
 
-	/**
-	 * {@inheritDoc}
-	 */
 	@Override
-	public String[] args() {
-		String[] retval = new String[classFilters.size()];
-		for (int i = 0; i < classFilters.size(); i++) {
-			retval[i] = classFilters.get(i).toString();
-		}
-		return retval;
+	protected Log getLog() {
+		return LOG;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Collection<URL> filterURLs(Collection<URL> collection) {
-		return ClassPathFilter.Util.filterURLs(collection, this);
+	public String[] args() {
+		List<ClassPathFilter> filters = getFilters();
+		String[] retval = new String[filters.size()];
+		for (int i = 0; i < filters.size(); i++) {
+			retval[i] = filters.get(i).toString();
+		}
+		return retval;
 	}
 
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Collection<String> filterNames(Collection<String> collection) {
-		return ClassPathFilter.Util.filterNames(collection, this);
+	protected boolean isFilterListEmpty() {
+		return getFilters().isEmpty();
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Freeze the argument filters and replace the list of filters with an
+	 * immutable copy.
 	 */
 	@Override
-	public Collection<Class<?>> filterClasses(Collection<Class<?>> collection) {
-		return ClassPathFilter.Util.filterClasses(collection, this);
-	}
-
-	protected boolean isFilterListEmpty() {
-		return classFilters.isEmpty();
+	void freezeState() {
+		for (ClassPathFilter filter : classFilters) {
+			filter.freeze();
+		}
+		filtersView = Collections.unmodifiableList(new ArrayList<ClassPathFilter>(classFilters));
 	}
 
 	/**
@@ -151,10 +154,20 @@ public abstract class _AbstractConditionalFilter implements CollectionFilterType
 		if (classFilter == null) {
 			throw new IllegalArgumentException("classFilter may not be null");
 		}
+		checkNotFrozen();
 		this.classFilters.add(classFilter);
+		filtersChanged();
 		return this;
 	}
 
+	/**
+	 * Called when the list of filters changes. Subclasses that build lookup
+	 * structures from the filters discard them here.
+	 */
+	void filtersChanged() {
+		// nothing to discard by default.
+	}
+
 	/**
 	 * Returns this conditional file filter's list of file filters.
 	 *
@@ -162,7 +175,7 @@ public abstract class _AbstractConditionalFilter implements CollectionFilterType
 	 */
 	@Override
 	public final List<ClassPathFilter> getFilters() {
-		return Collections.unmodifiableList(this.classFilters);
+		return filtersView;
 	}
 
 	/**
@@ -174,6 +187,8 @@ public abstract class _AbstractConditionalFilter implements CollectionFilterType
 	 *         otherwise
 	 */
 	public final boolean removeFilter(ClassPathFilter classFilter) {
+		checkNotFrozen();
+		filtersChanged();
 		return this.classFilters.remove(classFilter);
 	}
 
@@ -185,7 +200,9 @@ public abstract class _AbstractConditionalFilter implements CollectionFilterType
 	 *            the collection of filters
 	 */
 	public final void setFilters(Collection<ClassPathFilter> classFilters) {
+		checkNotFrozen();
 		this.classFilters.clear();
+		filtersChanged();
 		addFilters(classFilters);
 	}
 
@@ -210,7 +227,9 @@ public abstract class _AbstractConditionalFilter implements CollectionFilterType
 	 *            the array of filters
 	 */
 	public final void setFilters(ClassPathFilter... classFilters) {
+		checkNotFrozen();
 		this.classFilters.clear();
+		filtersChanged();
 		addFilters(classFilters);
 	}
 
@@ -233,6 +252,8 @@ public abstract class _AbstractConditionalFilter implements CollectionFilterType
 	 *            the collection of filters to remove.
 	 */
 	public final void removeFilters(Collection<ClassPathFilter> classFilters) {
+		checkNotFrozen();
+		filtersChanged();
 		this.classFilters.removeAll(classFilters);
 	}
 
@@ -243,28 +264,9 @@ public abstract class _AbstractConditionalFilter implements CollectionFilterType
 	 *            the array of filters to remove.
 	 */
 	public final void removeFilters(ClassPathFilter... classFilters) {
+		checkNotFrozen();
+		filtersChanged();
 		this.classFilters.removeAll(Arrays.asList(classFilters));
 	}
 
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public String toString() {
-		return ClassPathFilter.Util.toString(this);
-	}
-
-	@Override
-	public boolean equals(Object o) {
-		if (o instanceof ClassPathFilter) {
-			return ClassPathFilter.Util.equals(this, (ClassPathFilter) o);
-		}
-		return false;
-	}
-
-	@Override
-	public int hashCode() {
-		return ClassPathFilter.Util.hashCode(this);
-	}
-
 }
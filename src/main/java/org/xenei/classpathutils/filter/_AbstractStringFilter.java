@@ -20,6 +20,7 @@ package org.xenei.classpathutils.filter;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -34,7 +35,11 @@ import org.xenei.classpathutils.filter.types.StringFilterType;
  */
 public abstract class _AbstractStringFilter extends _AbstractBaseFilter implements StringFilterType {
 
-	private final List<String> strings = new ArrayList<String>();
+	/** The strings, replaced by an immutable copy when the filter is frozen */
+	private volatile List<String> strings = new ArrayList<String>();
+
+	/** Trie of the strings, built on first use and discarded when a string is added */
+	private transient volatile StringTrie trie;
 
 	/** Whether the comparison is case sensitive. */
 	protected final Case caseSensitivity;
@@ -131,15 +136,22 @@ public abstract class _AbstractStringFilter extends _AbstractBaseFilter implemen
 	 */
 	@Override
 	public String[] args() {
-		String[] retval = new String[strings.size() + 1];
+		List<String> lst = strings;
+		String[] retval = new String[lst.size() + 1];
 		retval[0] = caseSensitivity.getName();
-		strings.sort(String.CASE_INSENSITIVE_ORDER);
-		for (int i = 0; i < strings.size(); i++) {
-			retval[i + 1] = strings.get(i);
+		for (int i = 0; i < lst.size(); i++) {
+			retval[i + 1] = lst.get(i);
 		}
+		// sort the copy, the strings may be read by other threads.
+		Arrays.sort(retval, 1, retval.length, String.CASE_INSENSITIVE_ORDER);
 		return retval;
 	}
 
+	@Override
+	void freezeState() {
+		strings = Collections.unmodifiableList(new ArrayList<String>(strings));
+	}
+
 	/**
 	 * Add a string to the filter.
 	 * 
@@ -150,7 +162,18 @@ public abstract class _AbstractStringFilter extends _AbstractBaseFilter implemen
 		if (str == null) {
 			throw new IllegalArgumentException("The string must not be null");
 		}
+		checkNotFrozen();
 		strings.add(str);
+		trie = null;
+		stringsChanged();
+	}
+
+	/**
+	 * Called when a string is added. Subclasses that build lookup structures
+	 * from the strings discard them here.
+	 */
+	void stringsChanged() {
+		// nothing to discard by default
 	}
 
 	/**
@@ -193,6 +216,24 @@ public abstract class _AbstractStringFilter extends _AbstractBaseFilter implemen
 		return Collections.unmodifiableList(this.strings);
 	}
 
+	/**
+	 * Get a trie of the strings.
+	 * 
+	 * @param suffix
+	 *            true to match the strings at the end of candidates, false to
+	 *            match them at the start. A filter must always pass the same
+	 *            value.
+	 * @return the trie.
+	 */
+	final StringTrie getTrie(boolean suffix) {
+		StringTrie t = trie;
+		if (t == null) {
+			t = new StringTrie(new ArrayList<String>(strings), !caseSensitivity.isCaseSensitive(), suffix);
+			trie = t;
+		}
+		return t;
+	}
+
 	/**
 	 * Converts url to external form and calls accept( externalForm )
 	 * 
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter.parser;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.xenei.classpathutils.ClassPathFilter;
+
+/**
+ * Creates the filter for a function name in a filter string.
+ * <p>
+ * The Parser finds factories with {@link java.util.ServiceLoader}: list the
+ * implementing classes in
+ * <code>META-INF/services/org.xenei.classpathutils.filter.parser.FilterFactory</code>.
+ * An implementation must have a public no argument constructor. Factories
+ * may also be added with {@link Parser#register(FilterFactory)}.
+ * </p>
+ * <p>
+ * The function name should be the funcName() of the filters the factory
+ * creates so that the toString() of the filter can be parsed.
+ * </p>
+ */
+public interface FilterFactory {
+
+	/**
+	 * The arguments a function takes.
+	 */
+	enum Shape {
+		/** No arguments: <code>Name()</code> */
+		NONE,
+		/** Filters: <code>Name( filter, filter, ... )</code> */
+		FILTERS,
+		/**
+		 * Strings split on the commas and trimmed:
+		 * <code>Name( str, str, ... )</code>
+		 */
+		STRINGS,
+		/** The trimmed argument text: <code>Name( text )</code> */
+		TEXT
+	}
+
+	/**
+	 * Get the function name. Function names are not case sensitive.
+	 *
+	 * @return the function name.
+	 */
+	String getName();
+
+	/**
+	 * Get the arguments the function takes.
+	 *
+	 * @return the argument shape.
+	 */
+	Shape getShape();
+
+	/**
+	 * Create the filter.
+	 *
+	 * @param args
+	 *            the arguments: empty for NONE, the filters for FILTERS, the
+	 *            strings for STRINGS and a single string, possibly empty, for
+	 *            TEXT.
+	 * @return the filter.
+	 * @throws IllegalArgumentException
+	 *             if the arguments are not valid.
+	 */
+	ClassPathFilter create(List<?> args);
+
+	/**
+	 * Create a factory from a function.
+	 *
+	 * @param name
+	 *            the function name.
+	 * @param shape
+	 *            the arguments the function takes.
+	 * @param create
+	 *            builds the filter from the arguments.
+	 * @return the factory.
+	 */
+	static FilterFactory of(final String name, final Shape shape,
+			final Function<List<?>, ClassPathFilter> create) {
+		if (name == null || shape == null || create == null) {
+			throw new IllegalArgumentException("Name, shape and create may not be null");
+		}
+		return new FilterFactory() {
+			@Override
+			public String getName() {
+				return name;
+			}
+
+			@Override
+			public Shape getShape() {
+				return shape;
+			}
+
+			@Override
+			public ClassPathFilter create(List<?> args) {
+				return create.apply(args);
+			}
+
+			@Override
+			public String toString() {
+				return name;
+			}
+		};
+	}
+}
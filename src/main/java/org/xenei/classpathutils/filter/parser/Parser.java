@@ -5,9 +5,9 @@
  * The ASF licenses this file to You under the Apache License, Version 2.0
  * (the "License"); you may not use this file except in compliance with
  * the License.  You may obtain a copy of the License at
- * 
+ *
  *      http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
@@ -18,58 +18,168 @@
 package org.xenei.classpathutils.filter.parser;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.xenei.classpathutils.Case;
 import org.xenei.classpathutils.ClassPathFilter;
-import org.xenei.classpathutils.filter.AbstractClassFilter;
-import org.xenei.classpathutils.filter._AbstractStringFilter;
-import org.xenei.classpathutils.filter.types.CollectionFilterType;
 import org.xenei.classpathutils.filter.AndClassFilter;
-import org.xenei.classpathutils.filter.AnnotationClassFilter;
-import org.xenei.classpathutils.filter.FalseClassFilter;
 import org.xenei.classpathutils.filter.HasAnnotationClassFilter;
-import org.xenei.classpathutils.filter.InterfaceClassFilter;
 import org.xenei.classpathutils.filter.NameClassFilter;
 import org.xenei.classpathutils.filter.NotClassFilter;
 import org.xenei.classpathutils.filter.OrClassFilter;
 import org.xenei.classpathutils.filter.PrefixClassFilter;
 import org.xenei.classpathutils.filter.RegexClassFilter;
 import org.xenei.classpathutils.filter.SuffixClassFilter;
-import org.xenei.classpathutils.filter.TrueClassFilter;
 import org.xenei.classpathutils.filter.WildcardClassFilter;
+import org.xenei.classpathutils.filter.parser.FilterFactory.Shape;
 
 /**
  * Class to parse a function string into a ClassFilter.
- *
+ * <p>
+ * The string is read once from start to end by a recursive descent parser.
+ * Each function name is mapped to a {@link FilterFactory} that builds the
+ * filter directly from the parsed arguments. The factories for the built in
+ * filters are always registered, other factories are found with
+ * {@link ServiceLoader} or added with {@link #register(FilterFactory)}.
+ * </p>
+ * <p>
+ * {@link #parseOptimized(String)} keeps the most recently used optimized and
+ * frozen filters, so parsing the same string again is a map lookup. A parser
+ * is safe to use from several threads.
+ * </p>
  */
 public class Parser {
-	private Map<String, Class<? extends ClassPathFilter>> map = new HashMap<String, Class<? extends ClassPathFilter>>();
+
+	private static final Log LOG = LogFactory.getLog(Parser.class);
+
+	/** The default number of filters kept by parseOptimized() */
+	public static final int DEFAULT_CACHE_SIZE = 256;
+
+	/** The factories for the built in filters */
+	private static final List<FilterFactory> BUILT_IN = Arrays.asList(
+			constant("AbstractClass", ClassPathFilter.ABSTRACT_CLASS),
+			FilterFactory.of("And", Shape.FILTERS, args -> new AndClassFilter(filters(args))),
+			constant("AnnotationClass", ClassPathFilter.ANNOTATION_CLASS), constant("False", ClassPathFilter.FALSE),
+			FilterFactory.of("HasAnnotation", Shape.STRINGS, args -> hasAnnotation(strings(args))),
+			constant("InterfaceClass", ClassPathFilter.INTERFACE_CLASS),
+			FilterFactory.of("Name", Shape.STRINGS, args -> {
+				List<String> strings = strings(args);
+				Case caze = caseOf(strings);
+				return caze == null ? new NameClassFilter(strings)
+						: new NameClassFilter(caze, strings.subList(1, strings.size()));
+			}), FilterFactory.of("Not", Shape.FILTERS, args -> {
+				if (args.size() != 1) {
+					throw new IllegalArgumentException(String.format("Not takes one filter, found %s", args.size()));
+				}
+				return new NotClassFilter((ClassPathFilter) args.get(0));
+			}), FilterFactory.of("Or", Shape.FILTERS, args -> new OrClassFilter(filters(args))),
+			FilterFactory.of("Prefix", Shape.STRINGS, Parser::prefix),
+			FilterFactory.of("Properties", Shape.STRINGS, Parser::prefix),
+			FilterFactory.of("Regex", Shape.TEXT, args -> regex((String) args.get(0))),
+			FilterFactory.of("Suffix", Shape.STRINGS, args -> {
+				List<String> strings = strings(args);
+				Case caze = caseOf(strings);
+				return caze == null ? new SuffixClassFilter(strings)
+						: new SuffixClassFilter(caze, strings.subList(1, strings.size()));
+			}), constant("True", ClassPathFilter.TRUE), FilterFactory.of("Wildcard", Shape.STRINGS, args -> {
+				List<String> strings = strings(args);
+				Case caze = caseOf(strings);
+				return caze == null ? new WildcardClassFilter(strings)
+						: new WildcardClassFilter(caze, strings.subList(1, strings.size()));
+			}));
+
+	/** The factories by lower case function name */
+	private final Map<String, FilterFactory> map = new ConcurrentHashMap<String, FilterFactory>();
+
+	/** The optimized filters by filter string, in least recently used order */
+	private final Map<String, ClassPathFilter> cache;
 
 	/**
 	 * Constructor
 	 */
 	public Parser() {
-		map.put("abstractclass", AbstractClassFilter.class);
-		map.put("and", AndClassFilter.class);
-		map.put("annotationclass", AnnotationClassFilter.class);
-		map.put("false", FalseClassFilter.class);
-		map.put("hasannotation", HasAnnotationClassFilter.class);
-		map.put("interfaceclass", InterfaceClassFilter.class);
-		map.put("name", NameClassFilter.class);
-		map.put("not", NotClassFilter.class);
-		map.put("or", OrClassFilter.class);
-		map.put("prefix", PrefixClassFilter.class);
-		map.put("properties", PrefixClassFilter.class);
-		map.put("regex", RegexClassFilter.class);
-		map.put("suffix", SuffixClassFilter.class);
-		map.put("true", TrueClassFilter.class);
-		map.put("wildcard", WildcardClassFilter.class);
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param cacheSize
+	 *            the number of filters kept by parseOptimized(), 0 to keep
+	 *            none.
+	 * @throws IllegalArgumentException
+	 *             if the cache size is negative.
+	 */
+	public Parser(final int cacheSize) {
+		if (cacheSize < 0) {
+			throw new IllegalArgumentException("Cache size may not be negative");
+		}
+		cache = new LinkedHashMap<String, ClassPathFilter>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ClassPathFilter> eldest) {
+				return size() > cacheSize;
+			}
+		};
+		for (FilterFactory factory : BUILT_IN) {
+			map.put(factory.getName().toLowerCase(), factory);
+		}
+		Iterator<FilterFactory> iter = ServiceLoader.load(FilterFactory.class).iterator();
+		while (true) {
+			try {
+				if (!iter.hasNext()) {
+					break;
+				}
+				register(iter.next());
+			} catch (ServiceConfigurationError e) {
+				LOG.error("Can not load filter factory: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Create the factory for a function without arguments that returns a
+	 * constant filter.
+	 */
+	private static FilterFactory constant(String name, ClassPathFilter filter) {
+		return FilterFactory.of(name, Shape.NONE, args -> filter);
+	}
+
+	/**
+	 * Add a factory. A factory for a function that is already registered
+	 * replaces it.
+	 *
+	 * @param factory
+	 *            the factory to add.
+	 * @return this parser for chaining.
+	 * @throws IllegalArgumentException
+	 *             if the factory is null.
+	 */
+	public Parser register(FilterFactory factory) {
+		if (factory == null) {
+			throw new IllegalArgumentException("Factory may not be null");
+		}
+		FilterFactory old = map.put(factory.getName().toLowerCase(), factory);
+		if (old != null) {
+			LOG.warn(String.format("Filter factory %s replaces %s for %s", factory.getClass().getName(),
+					old.getClass().getName(), factory.getName()));
+		}
+		synchronized (cache) {
+			cache.clear();
+		}
+		return this;
 	}
 
 	/**
@@ -77,7 +187,7 @@ public class Parser {
 	 * <p>
 	 * Strings are of the form:
 	 * </p>
-	 * 
+	 *
 	 * <pre>
 	 * FilterName( arg[,arg[,arg[,...]]] )
 	 * </pre>
@@ -88,7 +198,7 @@ public class Parser {
 	 * <p>
 	 * The result is a prefix notation function. For example:
 	 * </p>
-	 * 
+	 *
 	 * <pre>
 	 * Or(Interface(), Not(Prefix(org.xenei)))
 	 * </pre>
@@ -101,228 +211,285 @@ public class Parser {
 	 * have the case specified as the first parameter as either
 	 * <code>Sensitive</code> or <code>Insensitive</code>.
 	 * </p>
-	 * 
+	 * <p>
+	 * The arguments of And, Or and Not are filters. The arguments of the
+	 * other filters are the text up to the matching ')', split on the commas
+	 * and trimmed. The text may contain balanced parentheses, a '\' escapes
+	 * the next character. The pattern of a Regex is the text after the case
+	 * so it may contain commas.
+	 * </p>
+	 *
 	 * @param filterStr
 	 *            The filter definition to parse.
 	 * @return The ClassFilter
 	 * @throws IllegalArgumentException
 	 *             If the filter can not be build.
 	 */
-	@SuppressWarnings("unchecked")
 	public ClassPathFilter parse(String filterStr) throws IllegalArgumentException {
-		ParserInfo info = new ParserInfo(filterStr);
-
-		String args = info.parseArgs();
-		try {
-			if (args.length() == 0) {
-				try {
-					return (ClassPathFilter) ClassPathFilter.class.getDeclaredField(info.getStaticName()).get(null);
-				} catch (NoSuchFieldException e) {
-					return info.clazz.getConstructor().newInstance();
-				}
-			}
-
-			if (NotClassFilter.class.isAssignableFrom(info.clazz)) {
-				return new NotClassFilter(parse(args));
-			}
+		if (filterStr == null) {
+			throw new IllegalArgumentException("Filter string may not be null");
+		}
+		Tokenizer tokenizer = new Tokenizer(filterStr);
+		ClassPathFilter filter = parseFilter(tokenizer);
+		tokenizer.expectEnd();
+		return filter;
+	}
 
-			if (CollectionFilterType.class.isAssignableFrom(info.clazz)) {
-				List<ClassPathFilter> consArgs = new ArrayList<ClassPathFilter>();
-				// parse the functions.
-				int cnt = 0;
-				int startPos = 0;
-				boolean scanning = false;
-				for (int i = 0; i < args.length(); i++) {
-					switch (args.charAt(i)) {
-					case '(':
-						cnt++;
-						break;
-					case ')':
-						cnt--;
-						if (cnt == 0) {
-							consArgs.add(parse(args.substring(startPos, i + 1)));
-							scanning = true;
-						}
-						break;
-					case ',':
-						if (scanning) {
-							startPos = i + 1;
-							break;
-						}
-					default:
-						// do nothing;
-						break;
-					}
+	/**
+	 * Parse, optimize and freeze a filter. The most recently used filters are
+	 * kept so parsing the same string again returns the same filter without
+	 * parsing it.
+	 *
+	 * @param filterStr
+	 *            The filter definition to parse.
+	 * @return The optimized, frozen filter.
+	 * @throws IllegalArgumentException
+	 *             If the filter can not be build.
+	 * @see ClassPathFilter#freeze()
+	 */
+	public ClassPathFilter parseOptimized(String filterStr) throws IllegalArgumentException {
+		ClassPathFilter filter;
+		synchronized (cache) {
+			filter = cache.get(filterStr);
+		}
+		if (filter == null) {
+			filter = parse(filterStr).optimize().freeze();
+			synchronized (cache) {
+				ClassPathFilter other = cache.get(filterStr);
+				if (other == null) {
+					cache.put(filterStr, filter);
+				} else {
+					filter = other;
 				}
-				return info.clazz.getConstructor(Collection.class).newInstance(consArgs);
-
-			}
-
-			if (_AbstractStringFilter.class.isAssignableFrom(info.clazz)) {
-				return constructWithCase(info, args);
-			}
-
-			if (WildcardClassFilter.class.isAssignableFrom(info.clazz)) {
-				return constructWithCase(info, args);
 			}
+		}
+		return filter;
+	}
 
-			if (HasAnnotationClassFilter.class.isAssignableFrom(info.clazz)) {
-				List<String> argStrLst = splitArgs(args);
-				if (argStrLst.size() != 1) {
-					throw new IllegalArgumentException(
-							String.format("Only one string me be provided for HasAnnotation: %s", args));
-				}
-				Class<?> cls;
-				try {
-					cls = Thread.currentThread().getContextClassLoader().loadClass(args.trim());
-				} catch (ClassNotFoundException e) {
-					throw new IllegalArgumentException(
-							String.format("Error creating: %s: %s", info.name, e.getMessage()), e);
-				}
-				if (Annotation.class.isAssignableFrom(cls)) {
-					return new HasAnnotationClassFilter((Class<? extends Annotation>) cls);
-				}
-				throw new IllegalArgumentException(String.format("%s is not an Annotation", args));
+	/**
+	 * Parse one function and its arguments.
+	 */
+	private ClassPathFilter parseFilter(Tokenizer tokenizer) {
+		int start = tokenizer.pos;
+		String name = tokenizer.name();
+		FilterFactory factory = map.get(name.toLowerCase());
+		if (factory == null) {
+			throw new IllegalArgumentException(name + " is not a registered class filter");
+		}
+		tokenizer.expect('(');
+		List<?> args;
+		if (factory.getShape() == Shape.FILTERS) {
+			List<ClassPathFilter> filters = new ArrayList<ClassPathFilter>();
+			if (!tokenizer.next(')')) {
+				do {
+					filters.add(parseFilter(tokenizer));
+				} while (tokenizer.next(','));
+				tokenizer.expect(')');
 			}
-
-			if (RegexClassFilter.class.isAssignableFrom(info.clazz)) {
-				List<String> argStrLst = splitArgs(args);
-				if (argStrLst.size() == 0) {
-					throw new IllegalArgumentException(
-							String.format("Not enough arguments for %s: %s", info.name, args));
-				}
-				Case caze = null;
-				try {
-					caze = Case.forName(argStrLst.get(0));
-				} catch (IllegalArgumentException expected) {
-					// this catch has to be here because later
-					// IllegalArgumenExceptions must be thrown.
-					return new RegexClassFilter(argStrLst.get(0));
-				}
-				if (argStrLst.size() < 2) {
-					throw new IllegalArgumentException(
-							String.format(" Not enough arguments for %s: %s", info.name, args));
+			args = filters;
+		} else {
+			String text = tokenizer.text();
+			if (factory.getShape() == Shape.TEXT) {
+				args = Collections.singletonList(text);
+			} else if (text.length() == 0) {
+				args = Collections.emptyList();
+			} else if (factory.getShape() == Shape.NONE) {
+				throw new IllegalArgumentException(String.format("%s does not take arguments", name));
+			} else {
+				List<String> strings = new ArrayList<String>();
+				for (String str : text.split(",")) {
+					strings.add(str.trim());
 				}
-				return new RegexClassFilter(caze, argStrLst.get(1));
+				args = strings;
 			}
-
-			throw new IllegalArgumentException("Unrecognized filter: " + info.name);
-		} catch (InstantiationException e) {
-			throw new IllegalArgumentException(
-					String.format("Unable to instantiate: %s: %s", info.name, e.getMessage()), e);
-		} catch (SecurityException e) {
-			throw new IllegalArgumentException(
-					String.format("Security exception instantiating: %s: %s", info.name, e.getMessage()), e);
-		} catch (IllegalAccessException e) {
-			throw new IllegalArgumentException(String.format("Error instantiating: %s: %s", info.name, e.getMessage()),
-					e);
-		} catch (InvocationTargetException e) {
-			throw new IllegalArgumentException(String.format("Error instantiating: %s: %s", info.name, e.getMessage()),
-					e);
-		} catch (NoSuchMethodException e) {
+		}
+		try {
+			return factory.create(args);
+		} catch (IllegalArgumentException e) {
 			throw new IllegalArgumentException(
-					String.format("Can not find constructor for: %s: %s", info.name, e.getMessage()), e);
-
+					String.format("Error creating %s at position %s: %s", name, start, e.getMessage()), e);
 		}
+	}
 
+	@SuppressWarnings("unchecked")
+	private static List<ClassPathFilter> filters(List<?> args) {
+		return (List<ClassPathFilter>) args;
 	}
 
-	private ClassPathFilter constructWithCase(ParserInfo info, String args)
-			throws InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException,
-			NoSuchMethodException, SecurityException {
-		List<String> argStrLst = splitArgs(args);
-		if (argStrLst.size() == 0) {
-			throw new IllegalArgumentException(String.format("Not enough arguments for %s: %s", info.name, args));
+	/**
+	 * Get the string arguments.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if there are none.
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<String> strings(List<?> args) {
+		if (args.isEmpty()) {
+			throw new IllegalArgumentException("Not enough arguments");
 		}
-		Case caze = null;
-		try {
-			caze = Case.forName(argStrLst.get(0));
-		} catch (IllegalArgumentException expected) {
-			// this catch has to be here because later
-			// IllegalArgumenExceptions must be thrown.
-
-			return info.clazz.getConstructor(Collection.class).newInstance(argStrLst);
+		return (List<String>) args;
+	}
 
+	/**
+	 * Get the case from the first string.
+	 *
+	 * @return the case or null if the first string is not a case name.
+	 * @throws IllegalArgumentException
+	 *             if the first string is a case name and there are no other
+	 *             strings.
+	 */
+	private static Case caseOf(List<String> strings) {
+		String first = strings.get(0);
+		if (!isCase(first)) {
+			return null;
 		}
-		if (argStrLst.size() < 2) {
-			throw new IllegalArgumentException(String.format(" Not enough arguments for %s: %s", info.name, args));
+		if (strings.size() < 2) {
+			throw new IllegalArgumentException("Not enough arguments");
 		}
-		return info.clazz.getConstructor(Case.class, Collection.class).newInstance(caze,
-				argStrLst.subList(1, argStrLst.size()));
+		return Case.forName(first);
+	}
+
+	private static boolean isCase(String str) {
+		return Case.SENSITIVE.getName().equals(str) || Case.INSENSITIVE.getName().equals(str);
+	}
 
+	private static ClassPathFilter prefix(List<?> args) {
+		List<String> strings = strings(args);
+		Case caze = caseOf(strings);
+		return caze == null ? new PrefixClassFilter(strings)
+				: new PrefixClassFilter(caze, strings.subList(1, strings.size()));
 	}
 
 	/**
-	 * Split the string on the commas and trim the results.
-	 * 
-	 * @param args
-	 *            the string to split.
-	 * @return the individual comma separated strings from the argument trimed.
+	 * Create a regex filter. Only the first comma separates the case from the
+	 * pattern so the pattern may contain commas.
 	 */
-	private List<String> splitArgs(String args) {
-		List<String> retval = new ArrayList<String>();
-		for (String s : args.split(",")) {
-			retval.add(s.trim());
+	private static ClassPathFilter regex(String text) {
+		int comma = text.indexOf(',');
+		if (comma != -1) {
+			String first = text.substring(0, comma).trim();
+			if (isCase(first)) {
+				String pattern = text.substring(comma + 1).trim();
+				if (pattern.length() == 0) {
+					throw new IllegalArgumentException("Not enough arguments");
+				}
+				return new RegexClassFilter(Case.forName(first), pattern);
+			}
+		}
+		if (text.length() == 0 || isCase(text)) {
+			throw new IllegalArgumentException("Not enough arguments");
 		}
-		return retval;
+		return new RegexClassFilter(text);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ClassPathFilter hasAnnotation(List<String> strings) {
+		if (strings.size() != 1) {
+			throw new IllegalArgumentException(
+					String.format("Only one string me be provided for HasAnnotation: %s", strings));
+		}
+		Class<?> cls;
+		try {
+			cls = Thread.currentThread().getContextClassLoader().loadClass(strings.get(0));
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException(String.format("Error creating: HasAnnotation: %s", e.getMessage()), e);
+		}
+		if (Annotation.class.isAssignableFrom(cls)) {
+			return new HasAnnotationClassFilter((Class<? extends Annotation>) cls);
+		}
+		throw new IllegalArgumentException(String.format("%s is not an Annotation", strings.get(0)));
 	}
 
 	/**
-	 * Class that holds information about a single function parse.
-	 *
+	 * Reads the filter string from start to end.
 	 */
-	private final class ParserInfo {
-		private String parserStr;
-		private String name;
-		private Class<? extends ClassPathFilter> clazz;
-
-		ParserInfo(String parserStr) {
-			this.parserStr = parserStr.trim();
-			int pos = this.parserStr.indexOf('(');
-			name = this.parserStr.substring(0, pos);
-			clazz = map.get(name.toLowerCase());
-			if (clazz == null) {
-				throw new IllegalArgumentException(name + " is not a registered class filter");
+	private static final class Tokenizer {
+		private final String str;
+		private int pos;
+
+		Tokenizer(String str) {
+			this.str = str;
+		}
+
+		private void skipSpace() {
+			while (pos < str.length() && Character.isWhitespace(str.charAt(pos))) {
+				pos++;
 			}
 		}
 
-		public String parseArgs() {
-			int cnt = 1;
-			for (int i = name.length() + 1; i < parserStr.length(); i++) {
-				switch (parserStr.charAt(i)) {
-				case '(':
-					cnt++;
-					break;
-				case ')':
-					cnt--;
-					if (cnt == 0) {
-						if (name.length() == i - 1) {
-							return "";
-						}
-						return parserStr.substring(name.length() + 1, i - 1);
-					}
-					break;
-				default:
-					// do nothing;
-					break;
-				}
+		private IllegalArgumentException error(String expected) {
+			return new IllegalArgumentException(String.format("Expected %s at position %s in: %s", expected, pos, str));
+		}
+
+		/**
+		 * Read a function name.
+		 */
+		String name() {
+			skipSpace();
+			int start = pos;
+			while (pos < str.length() && Character.isJavaIdentifierPart(str.charAt(pos))) {
+				pos++;
 			}
-			throw new IllegalStateException("Can not parse " + parserStr);
+			if (start == pos) {
+				throw error("a filter name");
+			}
+			return str.substring(start, pos);
 		}
 
-		public String getStaticName() {
-			StringBuilder sb = new StringBuilder();
-			char[] nameChars = name.toCharArray();
-			for (int i = 0; i < nameChars.length; i++) {
-				if (i > 0 && Character.isUpperCase(nameChars[i])) {
-					sb.append("_").append(nameChars[i]);
-				} else {
-					sb.append(Character.toUpperCase(nameChars[i]));
+		/**
+		 * Read a character that must be next.
+		 */
+		void expect(char c) {
+			if (!next(c)) {
+				throw error("'" + c + "'");
+			}
+		}
+
+		/**
+		 * Read a character if it is next.
+		 *
+		 * @return true if the character was read.
+		 */
+		boolean next(char c) {
+			skipSpace();
+			if (pos < str.length() && str.charAt(pos) == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Read the argument text up to the matching ')', and the ')'.
+		 *
+		 * @return the trimmed text.
+		 */
+		String text() {
+			int start = pos;
+			int depth = 0;
+			for (; pos < str.length(); pos++) {
+				char c = str.charAt(pos);
+				if (c == '\\') {
+					pos++;
+				} else if (c == '(') {
+					depth++;
+				} else if (c == ')') {
+					if (depth == 0) {
+						String text = str.substring(start, pos).trim();
+						pos++;
+						return text;
+					}
+					depth--;
 				}
 			}
-			return sb.toString();
+			throw error("')'");
 		}
 
+		void expectEnd() {
+			skipSpace();
+			if (pos < str.length()) {
+				throw error("the end");
+			}
+		}
 	}
-
 }
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+
+import org.junit.Test;
+import org.xenei.classpathutils.filter.HasAnnotationClassFilter;
+import org.xenei.classpathutils.filter.OrClassFilter;
+
+/**
+ * Test Candidate.
+ */
+public class CandidateTest {
+
+	private static final String UTILS = ClassPathUtils.class.getName();
+
+	/**
+	 * A class loader that counts the class files read and classes loaded,
+	 * and can hide the class files.
+	 */
+	private static class CountingLoader extends ClassLoader {
+		private final boolean hideClassFiles;
+		private int reads;
+		private int loads;
+
+		CountingLoader(boolean hideClassFiles) {
+			super(CandidateTest.class.getClassLoader());
+			this.hideClassFiles = hideClassFiles;
+		}
+
+		@Override
+		public InputStream getResourceAsStream(String name) {
+			reads++;
+			return hideClassFiles ? null : super.getResourceAsStream(name);
+		}
+
+		@Override
+		public Class<?> loadClass(String name) throws ClassNotFoundException {
+			loads++;
+			return super.loadClass(name);
+		}
+	}
+
+	/**
+	 * Test that the metadata and class are read once.
+	 */
+	@Test
+	public void testLazy() {
+		CountingLoader loader = new CountingLoader(false);
+		Candidate candidate = new Candidate(UTILS + ".class", loader);
+		assertEquals(UTILS + ".class", candidate.getName());
+		assertEquals(UTILS, candidate.getClassName());
+		assertEquals(0, loader.reads);
+
+		ClassFileInfo info = candidate.getClassFileInfo();
+		assertNotNull(info);
+		assertSame(info, candidate.getClassFileInfo());
+		assertEquals(1, loader.reads);
+
+		assertSame(ClassPathUtils.class, candidate.getLoadedClass());
+		assertSame(ClassPathUtils.class, candidate.getLoadedClass());
+		assertEquals(1, loader.loads);
+	}
+
+	/**
+	 * Test a class that does not exist.
+	 */
+	@Test
+	public void testMissing() {
+		CountingLoader loader = new CountingLoader(false);
+		Candidate candidate = new Candidate("org.xenei.NoSuchClass", loader);
+		assertNull(candidate.getClassFileInfo());
+		assertNull(candidate.getLoadedClass());
+		assertNull(candidate.getLoadedClass());
+		assertEquals(1, loader.reads);
+		assertEquals(1, loader.loads);
+	}
+
+	/**
+	 * Test that the filters of a tree share the candidate.
+	 */
+	@Test
+	public void testShared() {
+		ClassPathFilter filter = new OrClassFilter(ClassPathFilter.ABSTRACT_CLASS, ClassPathFilter.INTERFACE_CLASS,
+				new HasAnnotationClassFilter(Deprecated.class));
+
+		CountingLoader loader = new CountingLoader(false);
+		assertFalse(filter.accept(new Candidate(UTILS, loader)));
+		assertEquals(1, loader.reads);
+		assertEquals(0, loader.loads);
+
+		// without the class files each filter needs the class.
+		loader = new CountingLoader(true);
+		assertFalse(filter.accept(new Candidate(UTILS, loader)));
+		assertEquals(1, loader.reads);
+		assertEquals(1, loader.loads);
+	}
+}
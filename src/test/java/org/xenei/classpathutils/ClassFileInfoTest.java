@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.xenei.classpathutils.filter.AbstractClassFilter;
+import org.xenei.classpathutils.filter.HasAnnotationClassFilter;
+import org.xenei.classpathutils.filter.InterfaceClassFilter;
+import org.xenei.classpathutils.filter.StagedFilter;
+
+/**
+ * Test the ClassFileInfo.
+ *
+ */
+public class ClassFileInfoTest {
+
+	private static ClassFileInfo read(Class<?> clazz) throws IOException {
+		return ClassFileInfo.forName(clazz.getName(), ClassFileInfoTest.class.getClassLoader());
+	}
+
+	/**
+	 * Check the class file information against reflection.
+	 */
+	private static void check(Class<?> clazz) throws IOException {
+		ClassFileInfo info = read(clazz);
+		assertEquals(clazz.getName(), info.getClassName());
+		assertEquals(clazz.getSuperclass() == null ? null : clazz.getSuperclass().getName(), info.getSuperName());
+		assertEquals(clazz.getInterfaces().length, info.getInterfaceNames().size());
+		for (int i = 0; i < clazz.getInterfaces().length; i++) {
+			assertEquals(clazz.getInterfaces()[i].getName(), info.getInterfaceNames().get(i));
+		}
+		assertEquals(clazz.getName(), Modifier.isAbstract(clazz.getModifiers()), info.isAbstract());
+		assertEquals(clazz.getName(), clazz.isInterface(), info.isInterface());
+		assertEquals(clazz.getName(), clazz.isAnnotation(), info.isAnnotation());
+		Set<String> annotations = new HashSet<String>();
+		for (java.lang.annotation.Annotation a : clazz.getDeclaredAnnotations()) {
+			annotations.add(a.annotationType().getName());
+		}
+		assertEquals(annotations, info.getAnnotationNames());
+	}
+
+	/**
+	 * Test that the class file information agrees with reflection.
+	 *
+	 * @throws IOException
+	 *             on error
+	 */
+	@Test
+	public void testMatchesReflection() throws IOException {
+		for (Class<?> clazz : Arrays.asList(Object.class, String.class, Override.class, Serializable.class,
+				ClassPathUtils.class, ClassPathFilter.class, Marker.class, Parent.class, Child.class,
+				Constants.class, ClassFileInfoTest.class)) {
+			check(clazz);
+		}
+	}
+
+	/**
+	 * Test annotations with values and the inherited flag.
+	 *
+	 * @throws IOException
+	 *             on error
+	 */
+	@Test
+	public void testAnnotations() throws IOException {
+		ClassFileInfo info = read(Parent.class);
+		assertTrue(info.hasAnnotation(Marker.class.getName()));
+		assertTrue(info.hasAnnotation(Deprecated.class.getName()));
+		assertFalse(read(Child.class).hasAnnotation(Marker.class.getName()));
+		assertTrue(read(Marker.class).hasAnnotation(Inherited.class.getName()));
+	}
+
+	/**
+	 * Test that a missing class returns null and that invalid bytes are
+	 * rejected.
+	 *
+	 * @throws IOException
+	 *             on error
+	 */
+	@Test
+	public void testMissingAndInvalid() throws IOException {
+		assertNull(ClassFileInfo.forName("org.example.NoSuchClass", getClass().getClassLoader()));
+		try {
+			ClassFileInfo.read(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+			throw new AssertionError("Should have thrown IOException");
+		} catch (IOException expected) {
+			// expected
+		}
+		try {
+			ClassFileInfo.read(new byte[] { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0 });
+			throw new AssertionError("Should have thrown IOException");
+		} catch (IOException expected) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test that the class filters examine classes without loading them.
+	 *
+	 * @throws IOException
+	 *             on error
+	 */
+	@Test
+	public void testFiltersDoNotLoad() throws IOException {
+		URL classes = ClassFileInfoTest.class.getProtectionDomain().getCodeSource().getLocation();
+		RecordingLoader loader = new RecordingLoader(classes);
+		ClassLoader saved = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(loader);
+		try {
+			assertTrue(new HasAnnotationClassFilter(Marker.class).accept(Child.class.getName()));
+			assertFalse(new HasAnnotationClassFilter(Deprecated.class).accept(Child.class.getName()));
+			assertTrue(AbstractClassFilter.ABSTRACT.accept(Parent.class.getName() + ".class"));
+			assertFalse(InterfaceClassFilter.INTERFACE.accept(Parent.class.getName()));
+			assertFalse(loader.isLoaded(Child.class.getName()));
+			assertFalse(loader.isLoaded(Parent.class.getName()));
+		} finally {
+			Thread.currentThread().setContextClassLoader(saved);
+			loader.close();
+		}
+	}
+
+	/**
+	 * Test that an inherited annotation is found on the super class read from
+	 * the candidate's class loader rather than the context class loader.
+	 *
+	 * @throws IOException
+	 *             on error
+	 */
+	@Test
+	public void testInheritedFromCandidateLoader() throws IOException {
+		URL classes = ClassFileInfoTest.class.getProtectionDomain().getCodeSource().getLocation();
+		RecordingLoader loader = new RecordingLoader(classes);
+		URLClassLoader empty = new URLClassLoader(new URL[0], null);
+		ClassLoader saved = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(empty);
+		try {
+			HasAnnotationClassFilter filter = new HasAnnotationClassFilter(Marker.class);
+			assertTrue(filter.accept(new Candidate(Child.class.getName(), loader)));
+			assertTrue(new StagedFilter(filter, loader).accept(Child.class.getName()));
+			assertFalse(loader.isLoaded(Child.class.getName()));
+		} finally {
+			Thread.currentThread().setContextClassLoader(saved);
+			loader.close();
+			empty.close();
+		}
+	}
+
+	/**
+	 * A class loader that defines the test classes itself and reports which
+	 * have been loaded.
+	 */
+	private static class RecordingLoader extends URLClassLoader {
+		RecordingLoader(URL url) {
+			super(new URL[] { url }, ClassLoader.getSystemClassLoader().getParent());
+		}
+
+		boolean isLoaded(String name) {
+			return findLoadedClass(name) != null;
+		}
+	}
+
+	/**
+	 * An inherited marker annotation.
+	 */
+	@Inherited
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface Marker {
+		/**
+		 * @return the values.
+		 */
+		String[] value() default {};
+	}
+
+	/**
+	 * An annotated abstract class.
+	 */
+	@Deprecated
+	@Marker({ "a", "b" })
+	public static abstract class Parent implements Runnable, Serializable {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * A class that inherits the marker annotation.
+	 */
+	public static class Child extends Parent {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void run() {
+		}
+	}
+
+	/**
+	 * A class with long, double and string constants in its constant pool.
+	 */
+	public static final class Constants {
+		/** a long */
+		public static final long L = 0x123456789L;
+		/** a double */
+		public static final double D = 3.14159;
+		/** a non ascii string */
+		public static final String S = "été";
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the persistent ClassPathIndex.
+ *
+ */
+public class ClassPathIndexTest {
+
+	/**
+	 * Temporary directory for the index and jars.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File copyClassesJar() throws Exception {
+		File jar = new File(folder.getRoot(), "classes.jar");
+		Files.copy(new File(ClassPathIndexTest.class.getResource("classes.jar").toURI()).toPath(), jar.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		return jar;
+	}
+
+	private void writeJar(File jar, String... names) throws IOException {
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar))) {
+			for (String name : names) {
+				zos.putNextEntry(new ZipEntry(name));
+				zos.closeEntry();
+			}
+		}
+	}
+
+	/**
+	 * Test that a saved index is reused by a new instance.
+	 * 
+	 * @throws Exception
+	 *             on error
+	 */
+	@Test
+	public void testReuse() throws Exception {
+		File jar = copyClassesJar();
+		File indexFile = new File(folder.getRoot(), "index.bin");
+
+		ClassPathIndex index = new ClassPathIndex(indexFile);
+		List<String> names = index.getEntryNames(jar);
+		assertEquals(ZipCentralDirectory.open(jar).getEntryNames(), names);
+		assertEquals(1, index.getScanCount());
+		assertTrue(index.isDirty());
+		index.save();
+		assertFalse(index.isDirty());
+
+		ClassPathIndex index2 = new ClassPathIndex(indexFile);
+		assertEquals(1, index2.size());
+		assertEquals(names, index2.getEntryNames(jar));
+		assertEquals(0, index2.getScanCount());
+		assertEquals(1, index2.getHitCount());
+	}
+
+	/**
+	 * Test that a replaced jar is rescanned.
+	 * 
+	 * @throws Exception
+	 *             on error
+	 */
+	@Test
+	public void testReplacedJar() throws Exception {
+		File jar = copyClassesJar();
+		File indexFile = new File(folder.getRoot(), "index.bin");
+		ClassPathIndex index = new ClassPathIndex(indexFile);
+		index.getEntryNames(jar);
+		index.save();
+
+		long modified = jar.lastModified();
+		writeJar(jar, "org/example/One.class", "org/example/Two.class");
+		jar.setLastModified(modified + 2000);
+
+		ClassPathIndex index2 = new ClassPathIndex(indexFile);
+		List<String> names = index2.getEntryNames(jar);
+		assertEquals(2, names.size());
+		assertTrue(names.contains("org/example/One.class"));
+		assertEquals(1, index2.getScanCount());
+	}
+
+	/**
+	 * Test that the content hash detects a change that preserves size and
+	 * modification time.
+	 * 
+	 * @throws Exception
+	 *             on error
+	 */
+	@Test
+	public void testHash() throws Exception {
+		File jar = new File(folder.getRoot(), "test.jar");
+		writeJar(jar, "org/example/One.class");
+		long modified = jar.lastModified();
+		File indexFile = new File(folder.getRoot(), "index.bin");
+		ClassPathIndex index = new ClassPathIndex(indexFile, true);
+		index.getEntryNames(jar);
+		index.save();
+
+		writeJar(jar, "org/example/Two.class");
+		jar.setLastModified(modified);
+
+		ClassPathIndex index2 = new ClassPathIndex(indexFile, true);
+		assertEquals("org/example/Two.class", index2.getEntryNames(jar).get(0));
+		assertEquals(1, index2.getScanCount());
+	}
+
+	/**
+	 * Test that ClassPathUtils uses the index.
+	 * 
+	 * @throws Exception
+	 *             on error
+	 */
+	@Test
+	public void testClassPathUtils() throws Exception {
+		File jar = copyClassesJar();
+		ClassPathIndex index = new ClassPathIndex(new File(folder.getRoot(), "index.bin"));
+		ClassPathIndex old = ClassPathUtils.getClassPathIndex();
+		ClassPathUtils.setClassPathIndex(index);
+		try {
+			Set<String> names = ClassPathUtils.findClasses(jar.toURI().toURL().toString(),
+					"org.xenei.classpathutils.testClasses");
+			assertEquals(4, names.size());
+			names = ClassPathUtils.findClasses(jar.toURI().toURL().toString(), "org.xenei.classpathutils.testClasses");
+			assertEquals(4, names.size());
+			assertEquals(1, index.getScanCount());
+			assertEquals(1, index.getHitCount());
+		} finally {
+			ClassPathUtils.setClassPathIndex(old);
+		}
+	}
+}
@@ -21,12 +21,24 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.xenei.classpathutils.ClassPathUtils;
+import org.xenei.classpathutils.filter.AndClassFilter;
 import org.xenei.classpathutils.filter.PrefixClassFilter;
+import org.xenei.classpathutils.filter.SuffixClassFilter;
 import org.xenei.classpathutils.filter.WildcardClassFilter;
 
 /**
@@ -52,6 +64,21 @@ public class ClassPathUtilsTest {
 		assertEquals(0, names.size());
 	}
 
+	/**
+	 * Verify that a root inside a jar only finds the classes below it.
+	 * 
+	 * @throws IOException
+	 *             on error
+	 */
+	@Test
+	public void testFindClassesBelowJarPrefix() throws IOException {
+		URL url = ClassPathUtilsTest.class.getResource("classes.jar");
+		Set<String> expected = ClassPathUtils.findClasses(url.toString(), "org.xenei.classpathutils.filter.parser");
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, ClassPathUtils.findClasses(url.toString() + "!/org/xenei/classpathutils/filter/parser",
+				"org.xenei", ClassPathFilter.TRUE));
+	}
+
 	/**
 	 * Test that we find no classes in javadoc jar.
 	 * 
@@ -134,4 +161,285 @@ public class ClassPathUtilsTest {
 				new WildcardClassFilter("*s.su*"));
 		assertEquals(2, classes.size());
 	}
+
+	/**
+	 * Test that the parallel scan returns the same classes as the sequential
+	 * scan.
+	 */
+	@Test
+	public void testGetClasses_Parallel() {
+		ClassLoader cl = ClassPathUtils.getClassLoader();
+		String pkg = "org.xenei.classpathutils";
+		Set<Class<?>> expected = new HashSet<Class<?>>(ClassPathUtils.getClasses(cl, pkg, ClassPathFilter.TRUE));
+		assertFalse(expected.isEmpty());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			assertEquals(expected,
+					new HashSet<Class<?>>(ClassPathUtils.getClasses(cl, pkg, ClassPathFilter.TRUE, executor)));
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(expected, new HashSet<Class<?>>(ClassPathUtils.getClasses(cl, pkg, ClassPathFilter.TRUE, null)));
+
+		// a shut down executor rejects the tasks, they run on the calling
+		// thread.
+		assertEquals(expected,
+				new HashSet<Class<?>>(ClassPathUtils.getClasses(cl, pkg, ClassPathFilter.TRUE, executor)));
+	}
+
+	/**
+	 * Test that the parallel scan checks the classes with the scanned class
+	 * loader rather than the context class loader of the executor threads.
+	 */
+	@Test
+	public void testGetClasses_ParallelContextClassLoader() {
+		ClassLoader cl = ClassPathUtils.getClassLoader();
+		String pkg = "org.xenei.classpathutils";
+		ClassPathFilter filter = new AndClassFilter(new PrefixClassFilter("org.xenei.classpathutils.filter"),
+				ClassPathFilter.INTERFACE_CLASS);
+		Set<Class<?>> expected = new HashSet<Class<?>>(ClassPathUtils.getClasses(cl, pkg, filter));
+		assertFalse(expected.isEmpty());
+
+		final ClassLoader empty = new URLClassLoader(new URL[0], null);
+		ExecutorService executor = Executors.newFixedThreadPool(4, r -> {
+			Thread t = new Thread(r);
+			t.setContextClassLoader(empty);
+			return t;
+		});
+		try {
+			assertEquals(expected, new HashSet<Class<?>>(ClassPathUtils.getClasses(cl, pkg, filter, executor)));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test that the parallel scan returns the same resources as the sequential
+	 * scan.
+	 */
+	@Test
+	public void testGetResources_Parallel() {
+		ClassLoader cl = ClassPathUtils.getClassLoader();
+		String pkg = "org.xenei.classpathutils";
+		Set<URL> expected = new HashSet<URL>(ClassPathUtils.getResources(cl, pkg));
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			assertEquals(expected, new HashSet<URL>(
+					ClassPathUtils.getResources(cl, pkg, new PrefixClassFilter(pkg), executor)));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test that the streams return the same results as the collection methods.
+	 */
+	@Test
+	public void testStreams() {
+		ClassLoader cl = ClassPathUtils.getClassLoader();
+		String pkg = "org.xenei.classpathutils";
+		ClassPathFilter filter = new PrefixClassFilter(pkg);
+
+		Set<Class<?>> expected = new HashSet<Class<?>>(ClassPathUtils.getClasses(cl, pkg, filter));
+		assertEquals(expected, ClassPathUtils.streamClasses(cl, pkg, filter).collect(Collectors.toSet()));
+		assertEquals(expected, ClassPathUtils.streamClasses(cl, pkg, filter).parallel().collect(Collectors.toSet()));
+
+		Set<String> names = new HashSet<String>();
+		for (Class<?> c : expected) {
+			names.add(c.getName());
+		}
+		assertTrue(names.containsAll(ClassPathUtils.streamClassNames(cl, pkg, filter).collect(Collectors.toSet())));
+
+		assertEquals(new HashSet<URL>(ClassPathUtils.getResources(cl, pkg, filter)),
+				ClassPathUtils.streamResources(cl, pkg, filter).collect(Collectors.toSet()));
+	}
+
+	/**
+	 * Test that a short-circuiting operation stops the scan.
+	 */
+	@Test
+	public void testStreamShortCircuit() {
+		ClassLoader cl = ClassPathUtils.getClassLoader();
+		String pkg = "org.xenei.classpathutils";
+		final AtomicInteger count = new AtomicInteger();
+		ClassPathFilter counter = new PrefixClassFilter(pkg) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean accept(String className) {
+				count.incrementAndGet();
+				return super.accept(className);
+			}
+		};
+		assertTrue(ClassPathUtils.streamClassNames(cl, pkg, counter).count() > 1);
+		int total = count.get();
+		count.set(0);
+		assertTrue(ClassPathUtils.streamClassNames(cl, pkg, counter).findFirst().isPresent());
+		assertTrue(count.get() < total);
+	}
+
+	/**
+	 * Test that the names of a jar are found as the iterator advances.
+	 * 
+	 * @throws IOException
+	 *             on error
+	 */
+	@Test
+	public void testJarNamesIncremental() throws IOException {
+		URL url = ClassPathUtilsTest.class.getResource("classes.jar");
+		final AtomicInteger count = new AtomicInteger();
+		ClassPathFilter counter = new WildcardClassFilter("*") {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean accept(String className) {
+				count.incrementAndGet();
+				return super.accept(className);
+			}
+		};
+		Iterator<String> iter = ClassPathUtils.classNames(url.toString(), "org.xenei",
+				ClassPathUtils.classFilter("org.xenei", counter, null));
+		assertEquals(0, count.get());
+		iter.next();
+		assertEquals(1, count.get());
+		int found = 1;
+		while (iter.hasNext()) {
+			iter.next();
+			found++;
+		}
+		assertEquals(found, count.get());
+		assertTrue(found > 1);
+	}
+
+	/**
+	 * Test that the visitor sees every class and can skip roots and terminate.
+	 */
+	@Test
+	public void testVisitClasses() {
+		ClassLoader cl = ClassPathUtils.getClassLoader();
+		String pkg = "org.xenei.classpathutils";
+		ClassPathFilter filter = new PrefixClassFilter(pkg);
+		Set<String> expected = ClassPathUtils.streamClassNames(cl, pkg, filter).collect(Collectors.toSet());
+
+		final Set<String> names = new HashSet<String>();
+		final Set<String> roots = new HashSet<String>();
+		assertFalse(ClassPathUtils.visitClasses(cl, pkg, filter, (root, name, url) -> {
+			names.add(name);
+			roots.add(root);
+			assertNotNull(url.get());
+			return ClassPathVisitor.Result.CONTINUE;
+		}));
+		assertEquals(expected, names);
+
+		final Set<String> skipped = new HashSet<String>();
+		assertFalse(ClassPathUtils.visitClasses(cl, pkg, filter, (root, name, url) -> {
+			assertTrue(skipped.add(root));
+			return ClassPathVisitor.Result.SKIP_ROOT;
+		}));
+		assertEquals(roots, skipped);
+
+		final AtomicInteger count = new AtomicInteger();
+		assertTrue(ClassPathUtils.visitClasses(cl, pkg, filter, (root, name, url) -> {
+			count.incrementAndGet();
+			return ClassPathVisitor.Result.TERMINATE;
+		}));
+		assertEquals(1, count.get());
+	}
+
+	/**
+	 * Test the convenience methods built on the visitor.
+	 */
+	@Test
+	public void testFirstAndLimit() {
+		ClassLoader cl = ClassPathUtils.getClassLoader();
+		String pkg = "org.xenei.classpathutils";
+		ClassPathFilter filter = new PrefixClassFilter(pkg);
+
+		assertTrue(ClassPathUtils.hasClasses(cl, pkg, filter));
+		assertFalse(ClassPathUtils.hasClasses(cl, pkg, new PrefixClassFilter("org.xenei.nothere")));
+
+		Optional<Class<?>> first = ClassPathUtils.findFirstClass(cl, pkg, filter);
+		assertTrue(first.isPresent());
+		assertTrue(first.get().getName().startsWith(pkg));
+		assertFalse(ClassPathUtils.findFirstClass(cl, pkg, new PrefixClassFilter("org.xenei.nothere")).isPresent());
+
+		assertEquals(3, ClassPathUtils.getClasses(cl, pkg, filter, 3).size());
+		assertEquals(0, ClassPathUtils.getClasses(cl, pkg, filter, 0).size());
+		Collection<URL> urls = ClassPathUtils.getResources(cl, pkg, filter, 2);
+		assertEquals(2, urls.size());
+		for (URL url : urls) {
+			assertNotNull(url);
+		}
+	}
+
+	/**
+	 * Test that resources are located by their paths.
+	 */
+	@Test
+	public void testResourceURLs() {
+		ClassLoader cl = ClassPathUtils.getClassLoader();
+		String pkg = "org.xenei.classpathutils";
+		ClassPathFilter filter = new AndClassFilter(new PrefixClassFilter(pkg), new SuffixClassFilter(".jar"));
+
+		Optional<URL> first = ClassPathUtils.findFirstResource(cl, pkg, filter);
+		assertTrue(first.isPresent());
+		assertTrue(first.get().getPath().contains("/org/xenei/classpathutils/"));
+		assertTrue(first.get().getPath().endsWith(".jar"));
+
+		Set<URL> expected = new HashSet<URL>();
+		for (String jar : new String[] { "classes.jar", "javadoc.jar", "sources.jar" }) {
+			expected.add(ClassPathUtilsTest.class.getResource(jar));
+		}
+		assertEquals(expected, new HashSet<URL>(ClassPathUtils.getResources(cl, pkg, filter)));
+		assertEquals(expected, new HashSet<URL>(ClassPathUtils.getResources(cl, pkg, filter, 3)));
+		assertEquals(expected, ClassPathUtils.streamResources(cl, pkg, filter).collect(Collectors.toSet()));
+
+		final Set<String> names = new HashSet<String>();
+		ClassPathUtils.visitResources(cl, pkg, filter, (root, name, url) -> {
+			names.add(name);
+			assertNotNull(url.get());
+			return ClassPathVisitor.Result.CONTINUE;
+		});
+		assertEquals(new HashSet<String>(Arrays.asList("org.xenei.classpathutils.classes.jar",
+				"org.xenei.classpathutils.javadoc.jar", "org.xenei.classpathutils.sources.jar")), names);
+	}
+
+	/**
+	 * Test that the parallel loading stage returns the same classes as
+	 * getClasses() and reports the classes that can not be loaded.
+	 */
+	@Test
+	public void testLoadClasses() {
+		ClassLoader cl = ClassPathUtils.getClassLoader();
+		String pkg = "org.xenei.classpathutils";
+		Set<Class<?>> expected = new HashSet<Class<?>>(ClassPathUtils.getClasses(cl, pkg, ClassPathFilter.TRUE));
+		assertTrue(ClassPathUtils.isParallelCapable(cl));
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ClassLoadResult result = ClassPathUtils.loadClasses(cl, pkg, ClassPathFilter.TRUE, executor, 4);
+			assertEquals(expected, result.getClasses());
+			assertFalse(result.hasFailures());
+
+			result = ClassPathUtils.loadClasses(cl,
+					Arrays.asList(ClassPathUtils.class.getName(), "org.xenei.NoSuchClass", String.class.getName()),
+					executor, 4);
+			assertEquals(Arrays.asList(ClassPathUtils.class, String.class),
+					new ArrayList<Class<?>>(result.getClasses()));
+			assertEquals(1, result.getFailures().size());
+			assertTrue(result.getFailures().get("org.xenei.NoSuchClass") instanceof ClassNotFoundException);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test that an invalid parallelism is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testLoadClasses_InvalidParallelism() {
+		ClassPathUtils.loadClasses(ClassPathUtils.getClassLoader(), Arrays.asList("a"), null, 0);
+	}
 }
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Test the ClassPathVisitor.
+ *
+ */
+public class ClassPathVisitorTest {
+
+	/**
+	 * Test that limit() terminates after the limit and passes through the
+	 * visitor result before it.
+	 */
+	@Test
+	public void testLimit() {
+		ClassPathVisitor visitor = ClassPathVisitor.limit(2, (root, name, url) -> ClassPathVisitor.Result.SKIP_ROOT);
+		assertEquals(ClassPathVisitor.Result.SKIP_ROOT, visitor.visit("root", "a", () -> null));
+		assertEquals(ClassPathVisitor.Result.TERMINATE, visitor.visit("root", "b", () -> null));
+	}
+
+	/**
+	 * Test that an invalid limit is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLimit() {
+		ClassPathVisitor.limit(0, (root, name, url) -> ClassPathVisitor.Result.CONTINUE);
+	}
+}
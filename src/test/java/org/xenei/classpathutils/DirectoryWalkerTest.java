@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xenei.classpathutils.filter.AndClassFilter;
+import org.xenei.classpathutils.filter.PrefixClassFilter;
+import org.xenei.classpathutils.filter.SuffixClassFilter;
+
+/**
+ * Test the DirectoryWalker.
+ *
+ */
+public class DirectoryWalkerTest {
+
+	/**
+	 * Temporary directory for the class tree.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File root;
+
+	private void touch(String path) throws IOException {
+		File file = new File(root, path);
+		file.getParentFile().mkdirs();
+		file.createNewFile();
+	}
+
+	/**
+	 * Create a class tree.
+	 *
+	 * @throws IOException
+	 *             on error
+	 */
+	@Before
+	public void setup() throws IOException {
+		root = folder.newFolder("classes");
+		touch("org/example/A.class");
+		touch("org/example/B.txt");
+		touch("org/example/sub/C.class");
+		touch("org/example/.svn/D.class");
+		touch("org/other/E.class");
+	}
+
+	private static Set<String> collect(Iterator<String> iter) {
+		Set<String> classes = new HashSet<String>();
+		while (iter.hasNext()) {
+			classes.add(iter.next());
+		}
+		return classes;
+	}
+
+	private static Set<String> names(String... names) {
+		return new HashSet<String>(Arrays.asList(names));
+	}
+
+	/**
+	 * Test that only the package is collected and that dot directories are
+	 * skipped.
+	 */
+	@Test
+	public void testPackage() {
+		Set<String> classes = collect(DirectoryWalker.names("org.example", root, ClassPathFilter.TRUE));
+		assertEquals(names("org.example.A.class", "org.example.B.txt", "org.example.sub.C.class"), classes);
+	}
+
+	/**
+	 * Test the default package and the filter.
+	 */
+	@Test
+	public void testDefaultPackage() {
+		Set<String> classes = collect(DirectoryWalker.names("", root, new SuffixClassFilter(".class")));
+		assertEquals(names("org.example.A.class", "org.example.sub.C.class", "org.other.E.class"), classes);
+	}
+
+	/**
+	 * Test that a directory that does not exist yields nothing.
+	 */
+	@Test
+	public void testMissing() {
+		Set<String> classes = collect(DirectoryWalker.names("", new File(root, "missing"), ClassPathFilter.TRUE));
+		assertEquals(0, classes.size());
+	}
+
+	/**
+	 * Test that a symbolic link cycle does not cause an endless walk.
+	 *
+	 * @throws IOException
+	 *             on error
+	 */
+	@Test
+	public void testLinkCycle() throws IOException {
+		try {
+			Files.createSymbolicLink(new File(root, "org/example/sub/loop").toPath(),
+					new File(root, "org/example").toPath());
+		} catch (UnsupportedOperationException | IOException e) {
+			Assume.assumeNoException(e);
+		}
+		Set<String> classes = collect(DirectoryWalker.names("org.example", root, ClassPathFilter.TRUE));
+		assertEquals(names("org.example.A.class", "org.example.B.txt", "org.example.sub.C.class"), classes);
+	}
+
+	/**
+	 * Test that the names are found as the iterator advances.
+	 */
+	@Test
+	public void testIncremental() {
+		final AtomicInteger count = new AtomicInteger();
+		ClassPathFilter counter = new SuffixClassFilter(".class") {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean accept(String className) {
+				count.incrementAndGet();
+				return super.accept(className);
+			}
+		};
+		Iterator<String> iter = DirectoryWalker.names("", root, counter);
+		assertEquals(0, count.get());
+		Set<String> classes = new HashSet<String>();
+		classes.add(iter.next());
+		// at most B.txt is checked before the first class.
+		assertTrue(count.get() <= 2);
+		while (iter.hasNext()) {
+			classes.add(iter.next());
+		}
+		assertEquals(names("org.example.A.class", "org.example.sub.C.class", "org.other.E.class"), classes);
+		assertEquals(4, count.get());
+	}
+
+	/**
+	 * Test that directories the filter can not match are not entered.
+	 */
+	@Test
+	public void testPrune() {
+		final AtomicInteger count = new AtomicInteger();
+		ClassPathFilter counter = new SuffixClassFilter(".class") {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean accept(String className) {
+				count.incrementAndGet();
+				return super.accept(className);
+			}
+		};
+		Set<String> classes = collect(
+				DirectoryWalker.names("", root, new AndClassFilter(new PrefixClassFilter("org.example.sub"), counter)));
+		assertEquals(names("org.example.sub.C.class"), classes);
+		assertEquals(1, count.get());
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Test;
+import org.xenei.classpathutils.filter.AndClassFilter;
+import org.xenei.classpathutils.filter.PrefixClassFilter;
+
+/**
+ * Test the LazyClassSet.
+ *
+ */
+public class LazyClassSetTest {
+
+	private LazyClassSet set = new LazyClassSet(getClass().getClassLoader(),
+			Arrays.asList(String.class.getName(), "org.xenei.NoSuchClass", ClassPathUtils.class.getName(),
+					String.class.getName()));
+
+	/**
+	 * Test that nothing is loaded until it is accessed.
+	 */
+	@Test
+	public void testLazy() {
+		assertEquals(Arrays.asList(String.class.getName(), "org.xenei.NoSuchClass", ClassPathUtils.class.getName()),
+				set.getNames());
+		assertEquals(0, set.getLoadedCount());
+
+		Iterator<Class<?>> iter = set.iterator();
+		assertSame(String.class, iter.next());
+		assertEquals(1, set.getLoadedCount());
+
+		assertSame(ClassPathUtils.class, set.get(ClassPathUtils.class.getName()));
+		assertNull(set.get("org.xenei.NoSuchClass"));
+		assertNull(set.get(Integer.class.getName()));
+		assertTrue(set.contains(String.class));
+		assertFalse(set.contains(Integer.class));
+	}
+
+	/**
+	 * Test the set contents, failures are skipped.
+	 */
+	@Test
+	public void testContents() {
+		assertFalse(set.isEmpty());
+		assertEquals(2, set.size());
+		Set<Class<?>> expected = new HashSet<Class<?>>(Arrays.asList(String.class, ClassPathUtils.class));
+		assertEquals(expected, set);
+		assertEquals(expected, new HashSet<Class<?>>(set));
+		assertTrue(new LazyClassSet(getClass().getClassLoader(), Arrays.asList("org.xenei.NoSuchClass")).isEmpty());
+	}
+
+	/**
+	 * Test that filtering works on the names without loading.
+	 */
+	@Test
+	public void testFilter() {
+		LazyClassSet filtered = set.filter(new PrefixClassFilter("org.xenei"));
+		assertEquals(Arrays.asList("org.xenei.NoSuchClass", ClassPathUtils.class.getName()), filtered.getNames());
+		assertEquals(0, filtered.getLoadedCount());
+		assertEquals(0, set.getLoadedCount());
+
+		Set<Class<?>> result = ClassPathUtils.filterClasses(set, new PrefixClassFilter("java."));
+		assertTrue(result instanceof LazyClassSet);
+		assertEquals(0, set.getLoadedCount());
+		assertEquals(new HashSet<Class<?>>(Arrays.asList(String.class)), result);
+	}
+
+	/**
+	 * Test that filters that read the class file or class use the class
+	 * loader of the set.
+	 */
+	@Test
+	public void testFilterClassLoader() throws Exception {
+		// only in the jar
+		String name = "org.xenei.classpathutils.filter.ConditionalClassFilter";
+		URL url = LazyClassSetTest.class.getResource("classes.jar");
+		try (URLClassLoader child = new URLClassLoader(new URL[] { url }, getClass().getClassLoader())) {
+			LazyClassSet jarSet = new LazyClassSet(child, Arrays.asList(name, ClassPathUtils.class.getName()));
+
+			LazyClassSet filtered = jarSet.filter(ClassPathFilter.INTERFACE_CLASS);
+			assertEquals(Arrays.asList(name), filtered.getNames());
+			assertEquals(0, filtered.getLoadedCount());
+
+			filtered = jarSet.filter(new AndClassFilter(new PrefixClassFilter("org.xenei"), ClassPathFilter.INTERFACE_CLASS));
+			assertEquals(Arrays.asList(name), filtered.getNames());
+
+			Class<?> clazz = filtered.iterator().next();
+			assertSame(child, clazz.getClassLoader());
+		}
+	}
+
+	/**
+	 * Test that getLazyClasses() finds the same classes as getClasses().
+	 */
+	@Test
+	public void testGetLazyClasses() {
+		ClassLoader cl = ClassPathUtils.getClassLoader();
+		String pkg = "org.xenei.classpathutils";
+		LazyClassSet lazy = ClassPathUtils.getLazyClasses(cl, pkg, ClassPathFilter.TRUE);
+		assertEquals(0, lazy.getLoadedCount());
+		assertEquals(new HashSet<Class<?>>(ClassPathUtils.getClasses(cl, pkg, ClassPathFilter.TRUE)), lazy);
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.xenei.classpathutils.filter.AndClassFilter;
+import org.xenei.classpathutils.filter.PrefixClassFilter;
+import org.xenei.classpathutils.filter._AbstractBaseFilter;
+
+/**
+ * Test the ScanCache.
+ *
+ */
+public class ScanCacheTest {
+
+	private static Set<String> names(String... names) {
+		return new HashSet<String>(Arrays.asList(names));
+	}
+
+	/**
+	 * A filter that blocks the first worker thread that calls it until it is
+	 * cancelled and interrupts the scanning thread.
+	 */
+	private static class BlockingFilter extends _AbstractBaseFilter {
+		private static final Log LOG = LogFactory.getLog(BlockingFilter.class);
+		private final Thread caller = Thread.currentThread();
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private final Set<Thread> blocked = ConcurrentHashMap.newKeySet();
+		private final AtomicBoolean once = new AtomicBoolean();
+
+		@Override
+		protected Log getLog() {
+			return LOG;
+		}
+
+		@Override
+		public String funcName() {
+			return "Blocking";
+		}
+
+		@Override
+		public String[] args() {
+			return NO_ARGS;
+		}
+
+		@Override
+		public boolean accept(String className) {
+			if (Thread.currentThread() == caller || !once.compareAndSet(false, true)) {
+				return false;
+			}
+			blocked.add(Thread.currentThread());
+			caller.interrupt();
+			try {
+				latch.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				// cancelled.
+			}
+			return false;
+		}
+
+		@Override
+		public boolean accept(URL url) {
+			return false;
+		}
+
+		@Override
+		public boolean accept(Class<?> clazz) {
+			return false;
+		}
+
+		@Override
+		public ClassPathFilter optimize() {
+			return this;
+		}
+	}
+
+	/**
+	 * Test that lookups hit and miss as expected.
+	 */
+	@Test
+	public void testHitAndMiss() {
+		ScanCache cache = new ScanCache(10);
+		ClassLoader cl = ScanCacheTest.class.getClassLoader();
+		ClassPathFilter filter = new PrefixClassFilter("org.xenei");
+
+		assertNull(cache.getClassNames(cl, "org.xenei", filter));
+		cache.putClassNames(cl, "org.xenei", filter, names("org.xenei.A"));
+		assertEquals(names("org.xenei.A"), cache.getClassNames(cl, "org.xenei", filter));
+
+		// different kind, package and filter are distinct entries
+		assertNull(cache.getResources(cl, "org.xenei", filter));
+		assertNull(cache.getClassNames(cl, "org.xenei.other", filter));
+		assertNull(cache.getClassNames(cl, "org.xenei", new PrefixClassFilter("org.other")));
+
+		assertEquals(1, cache.getHitCount());
+		assertEquals(4, cache.getMissCount());
+		assertEquals(1, cache.size());
+	}
+
+	/**
+	 * Test that filters that optimize to the same filter share an entry.
+	 */
+	@Test
+	public void testEquivalentFilter() {
+		ScanCache cache = new ScanCache(10);
+		ClassLoader cl = ScanCacheTest.class.getClassLoader();
+		cache.putClassNames(cl, "org.xenei", new PrefixClassFilter("org.xenei"), names("org.xenei.A"));
+		assertNotNull(cache.getClassNames(cl, "org.xenei",
+				new AndClassFilter(ClassPathFilter.TRUE, new PrefixClassFilter("org.xenei"))));
+	}
+
+	/**
+	 * Test that class loaders are compared by identity.
+	 *
+	 * @throws Exception
+	 *             on error
+	 */
+	@Test
+	public void testClassLoaderIdentity() throws Exception {
+		ScanCache cache = new ScanCache(10);
+		ClassLoader cl = ScanCacheTest.class.getClassLoader();
+		try (URLClassLoader other = new URLClassLoader(new URL[0], cl)) {
+			cache.putClassNames(cl, "org.xenei", ClassPathFilter.TRUE, names("org.xenei.A"));
+			assertNull(cache.getClassNames(other, "org.xenei", ClassPathFilter.TRUE));
+		}
+	}
+
+	/**
+	 * Test that the least recently used entry is evicted.
+	 */
+	@Test
+	public void testEviction() {
+		ScanCache cache = new ScanCache(2);
+		ClassLoader cl = ScanCacheTest.class.getClassLoader();
+		cache.putClassNames(cl, "a", ClassPathFilter.TRUE, names("a.A"));
+		cache.putClassNames(cl, "b", ClassPathFilter.TRUE, names("b.B"));
+		// touch a so that b is the eldest
+		assertNotNull(cache.getClassNames(cl, "a", ClassPathFilter.TRUE));
+		cache.putClassNames(cl, "c", ClassPathFilter.TRUE, names("c.C"));
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertNotNull(cache.getClassNames(cl, "a", ClassPathFilter.TRUE));
+		assertNull(cache.getClassNames(cl, "b", ClassPathFilter.TRUE));
+		assertNotNull(cache.getClassNames(cl, "c", ClassPathFilter.TRUE));
+
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	/**
+	 * Test that an invalid size is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		new ScanCache(0);
+	}
+
+	/**
+	 * Test that ClassPathUtils uses the cache.
+	 */
+	@Test
+	public void testClassPathUtils() {
+		ScanCache cache = new ScanCache(10);
+		ScanCache old = ClassPathUtils.getScanCache();
+		ClassPathUtils.setScanCache(cache);
+		try {
+			ClassLoader cl = ClassPathUtils.getClassLoader();
+			String pkg = "org.xenei.classpathutils";
+			Collection<Class<?>> classes = ClassPathUtils.getClasses(cl, pkg);
+			assertFalse(classes.isEmpty());
+			assertEquals(0, cache.getHitCount());
+			assertEquals(new HashSet<Class<?>>(classes), new HashSet<Class<?>>(ClassPathUtils.getClasses(cl, pkg)));
+			assertEquals(1, cache.getHitCount());
+
+			Collection<URL> urls = ClassPathUtils.getResources(cl, pkg);
+			assertEquals(new HashSet<URL>(urls), new HashSet<URL>(ClassPathUtils.getResources(cl, pkg)));
+			assertEquals(2, cache.getHitCount());
+			assertEquals(2, cache.size());
+		} finally {
+			ClassPathUtils.setScanCache(old);
+		}
+	}
+
+	/**
+	 * Test that an interrupted scan is not cached.
+	 */
+	@Test
+	public void testInterruptedScanNotCached() {
+		ScanCache cache = new ScanCache(10);
+		ScanCache old = ClassPathUtils.getScanCache();
+		ClassPathUtils.setScanCache(cache);
+		try {
+			ClassLoader cl = ClassPathUtils.getClassLoader();
+			String pkg = "org.xenei.classpathutils";
+			final BlockingFilter filter = new BlockingFilter();
+			// each task runs on its own thread, wait until it is blocked or
+			// done so the calling thread does not run it.
+			Executor executor = r -> {
+				Thread t = new Thread(r);
+				t.start();
+				while (t.isAlive() && !filter.blocked.contains(t)) {
+					Thread.yield();
+				}
+			};
+			ClassPathUtils.getClasses(cl, pkg, filter, executor);
+			assertTrue(Thread.interrupted());
+			assertEquals(1, filter.blocked.size());
+			assertNull(cache.getClassNames(cl, pkg, filter));
+		} finally {
+			Thread.interrupted();
+			ClassPathUtils.setScanCache(old);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the ZipCentralDirectory reader.
+ *
+ */
+public class ZipCentralDirectoryTest {
+
+	/**
+	 * Temporary directory for created zip files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<String> streamNames(File file) throws IOException {
+		List<String> names = new ArrayList<String>();
+		try (InputStream is = file.toURI().toURL().openStream(); ZipInputStream zip = new ZipInputStream(is)) {
+			ZipEntry entry = null;
+			while ((entry = zip.getNextEntry()) != null) {
+				names.add(entry.getName());
+			}
+		}
+		return names;
+	}
+
+	private File writeZip(String comment, int count) throws IOException {
+		File file = folder.newFile();
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file))) {
+			for (int i = 0; i < count; i++) {
+				zos.putNextEntry(new ZipEntry(String.format("org/example/p%s/Class%s.class", i % 10, i)));
+				zos.write(new byte[] { (byte) i, 1, 2, 3 });
+				zos.closeEntry();
+			}
+			if (comment != null) {
+				zos.setComment(comment);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Test that the names read from the central directory match the names
+	 * read by streaming the jar.
+	 *
+	 * @throws Exception
+	 *             on error
+	 */
+	@Test
+	public void testClassesJar() throws Exception {
+		File file = new File(ZipCentralDirectoryTest.class.getResource("classes.jar").toURI());
+		ZipCentralDirectory dir = ZipCentralDirectory.open(file);
+		List<String> expected = streamNames(file);
+		assertEquals(expected.size(), dir.size());
+		assertEquals(expected, dir.getEntryNames());
+	}
+
+	/**
+	 * Test that an archive comment does not prevent the end of central
+	 * directory from being found.
+	 *
+	 * @throws Exception
+	 *             on error
+	 */
+	@Test
+	public void testComment() throws Exception {
+		File file = writeZip("a comment é with some text", 25);
+		assertEquals(streamNames(file), ZipCentralDirectory.open(file).getEntryNames());
+	}
+
+	/**
+	 * Test that prepended data (e.g. a self extracting stub) is skipped.
+	 *
+	 * @throws Exception
+	 *             on error
+	 */
+	@Test
+	public void testPrependedData() throws Exception {
+		File zip = writeZip(null, 10);
+		File file = folder.newFile();
+		try (OutputStream os = new FileOutputStream(file)) {
+			os.write(new byte[1000]);
+			os.write(Files.readAllBytes(zip.toPath()));
+		}
+		assertEquals(streamNames(zip), ZipCentralDirectory.open(file).getEntryNames());
+	}
+
+	/**
+	 * Test that a Zip64 archive (more than 65535 entries) is read.
+	 *
+	 * @throws Exception
+	 *             on error
+	 */
+	@Test
+	public void testZip64() throws Exception {
+		File file = writeZip(null, 70000);
+		ZipCentralDirectory dir = ZipCentralDirectory.open(file);
+		assertEquals(70000, dir.size());
+		assertEquals(streamNames(file), dir.getEntryNames());
+	}
+
+	/**
+	 * Test that a corrupt or truncated central directory is rejected when it
+	 * is opened and that the scan falls back to streaming the jar.
+	 *
+	 * @throws Exception
+	 *             on error
+	 */
+	@Test
+	public void testCorruptCentralDirectory() throws Exception {
+		File zip = writeZip(null, 10);
+		byte[] bytes = Files.readAllBytes(zip.toPath());
+		int first = -1;
+		int second = -1;
+		for (int i = 0; i + 4 <= bytes.length && second < 0; i++) {
+			if (bytes[i] == 0x50 && bytes[i + 1] == 0x4b && bytes[i + 2] == 0x01 && bytes[i + 3] == 0x02) {
+				if (first < 0) {
+					first = i;
+				} else {
+					second = i;
+				}
+			}
+		}
+
+		// a bad signature on the second entry.
+		File badSig = folder.newFile("badsig.jar");
+		byte[] copy = bytes.clone();
+		copy[second] = 0;
+		Files.write(badSig.toPath(), copy);
+
+		// a name length that runs past the end of the directory.
+		File badLen = folder.newFile("badlen.jar");
+		copy = bytes.clone();
+		copy[first + 28] = (byte) 0xFF;
+		copy[first + 29] = (byte) 0xFF;
+		Files.write(badLen.toPath(), copy);
+
+		for (File file : new File[] { badSig, badLen }) {
+			try {
+				ZipCentralDirectory.open(file);
+				fail("Should have thrown IOException");
+			} catch (IOException expected) {
+				// expected
+			}
+			assertEquals(10, ClassPathUtils.findResources(file.getAbsolutePath(), "org", ClassPathFilter.TRUE).size());
+		}
+	}
+
+	/**
+	 * Test that a file that is not a zip file is rejected.
+	 *
+	 * @throws Exception
+	 *             on error
+	 */
+	@Test
+	public void testNotAZip() throws Exception {
+		File file = folder.newFile();
+		try (OutputStream os = new FileOutputStream(file)) {
+			os.write(new byte[100]);
+		}
+		try {
+			ZipCentralDirectory.open(file);
+			fail("Should have thrown IOException");
+		} catch (IOException expected) {
+			// expected
+		}
+	}
+}
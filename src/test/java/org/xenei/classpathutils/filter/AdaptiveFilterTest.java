@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.junit.Test;
+import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.filter.types.ClassFilterType;
+
+/**
+ * Test the AdaptiveFilter.
+ *
+ */
+public class AdaptiveFilterTest {
+
+	private static final int CHECKS = AdaptiveFilter.SAMPLE_RATE * AdaptiveFilter.REORDER_SAMPLES * 8;
+
+	private static final String STRING = String.class.getName();
+
+	private static final String[] NAMES = { "a.Foo", "a.FooTest", "a.b.Bar", "b.Foo", "a.Foo$1", "", "a.",
+			"b.FooTest" };
+
+	/**
+	 * A class filter with a fixed result that counts the classes it is given.
+	 */
+	private static class FixedFilter extends _AbstractBaseFilter implements ClassFilterType {
+		private static final Log LOG = LogFactory.getLog(FixedFilter.class);
+		private final boolean result;
+		private final AtomicInteger count = new AtomicInteger();
+
+		FixedFilter(boolean result) {
+			this.result = result;
+		}
+
+		@Override
+		protected Log getLog() {
+			return LOG;
+		}
+
+		@Override
+		public String funcName() {
+			return "Fixed";
+		}
+
+		@Override
+		public String[] args() {
+			return new String[] { String.valueOf(result) };
+		}
+
+		@Override
+		public boolean accept(Class<?> clazz) {
+			count.incrementAndGet();
+			return result;
+		}
+
+		@Override
+		public boolean accept(String className) {
+			try {
+				return accept(loadClass(className));
+			} catch (ClassNotFoundException e) {
+				return false;
+			}
+		}
+
+		@Override
+		public boolean accept(URL url) {
+			return false;
+		}
+
+		@Override
+		public ClassPathFilter optimize() {
+			return this;
+		}
+	}
+
+	/**
+	 * Test that the And argument that fails most is moved first.
+	 */
+	@Test
+	public void testAndOrder() {
+		PrefixClassFilter prefix = new PrefixClassFilter("a.");
+		SuffixClassFilter suffix = new SuffixClassFilter("Test");
+		AdaptiveFilter filter = new AdaptiveFilter(new AndClassFilter(prefix, suffix));
+		for (int i = 0; i < CHECKS; i++) {
+			// every name passes the prefix and fails the suffix
+			filter.accept("a.Foo" + i);
+		}
+		List<ClassPathFilter> args = ((AndClassFilter) filter.getLearnedFilter()).getFilters();
+		assertEquals(suffix, args.get(0));
+		assertEquals(prefix, args.get(1));
+		assertEquals(new AndClassFilter(prefix, suffix).toString(), filter.toString());
+	}
+
+	/**
+	 * Test that the Or argument that passes most is moved first, including
+	 * the merged arguments of an optimized Or.
+	 */
+	@Test
+	public void testOrOrder() {
+		ClassPathFilter or = new OrClassFilter(new PrefixClassFilter("b."), new RegexClassFilter(".*Test"),
+				new WildcardClassFilter("*Foo?")).optimize();
+		AdaptiveFilter filter = new AdaptiveFilter(or);
+		for (int i = 0; i < CHECKS; i++) {
+			filter.accept("a.Bar" + i + "Test");
+		}
+		ClassPathFilter learned = filter.getLearnedFilter();
+		List<ClassPathFilter> args = ((OrClassFilter) learned).getFilters();
+		assertEquals(3, args.size());
+		// the other arguments never pass so their order depends on timing
+		assertEquals(new RegexClassFilter(".*Test"), args.get(0));
+		for (String name : NAMES) {
+			assertEquals(name, or.accept(name), learned.accept(name));
+		}
+	}
+
+	/**
+	 * Test that a staged adaptive filter checks the class filters in the
+	 * learned order.
+	 */
+	@Test
+	public void testStaged() {
+		FixedFilter fails = new FixedFilter(false);
+		FixedFilter passes = new FixedFilter(true);
+		AdaptiveFilter filter = new AdaptiveFilter(new OrClassFilter(fails, passes));
+		for (int i = 0; i < CHECKS; i++) {
+			filter.accept(STRING);
+		}
+		assertEquals(passes, ((OrClassFilter) filter.getLearnedFilter()).getFilters().get(0));
+
+		StagedFilter staged = new StagedFilter(filter);
+		fails.count.set(0);
+		assertTrue(staged.accept(STRING));
+		assertEquals(0, fails.count.get());
+		assertEquals(1, passes.count.get() - CHECKS);
+	}
+
+	/**
+	 * Test that the results do not change while the filter adapts, from
+	 * several threads.
+	 */
+	@Test
+	public void testResults() throws InterruptedException {
+		final ClassPathFilter source = new OrClassFilter(
+				new AndClassFilter(new PrefixClassFilter("a."), new NotClassFilter(new SuffixClassFilter("Test"))),
+				new AndClassFilter(new PrefixClassFilter("b."), new NameClassFilter("b.Foo", "b.FooTest")),
+				new RegexClassFilter(".*\\$[0-9]+"));
+		final AdaptiveFilter filter = new AdaptiveFilter(source);
+		final AtomicBoolean failed = new AtomicBoolean();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < CHECKS / 4; i++) {
+						String name = NAMES[i % NAMES.length];
+						if (source.accept(name) != filter.accept(name)) {
+							failed.set(true);
+						}
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(!failed.get());
+		ClassPathFilter learned = filter.getLearnedFilter();
+		for (String name : NAMES) {
+			assertEquals(name, source.accept(name), learned.accept(name));
+			assertEquals(name, source.accept(name), FilterCompiler.compile(filter).accept(name));
+		}
+	}
+}
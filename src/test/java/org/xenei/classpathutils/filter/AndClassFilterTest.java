@@ -21,10 +21,16 @@ import static org.junit.Assert.*;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.AndClassFilter;
 import org.xenei.classpathutils.filter.parser.Parser;
 
@@ -134,8 +140,10 @@ public class AndClassFilterTest {
 		assertEquals(FalseClassFilter.FALSE, filter);
 
 		NameClassFilter bar = new NameClassFilter("bar");
-		AndClassFilter ncf2 = new AndClassFilter(foo, bar);
-		ncf = new AndClassFilter(TrueClassFilter.TRUE, foo, ncf2);
+		PrefixClassFilter pfoo = new PrefixClassFilter("foo");
+		SuffixClassFilter sbar = new SuffixClassFilter("bar");
+		AndClassFilter ncf2 = new AndClassFilter(pfoo, sbar);
+		ncf = new AndClassFilter(TrueClassFilter.TRUE, pfoo, ncf2);
 		filter = ncf.optimize();
 
 		assertTrue(filter instanceof AndClassFilter);
@@ -143,8 +151,15 @@ public class AndClassFilterTest {
 		List<ClassPathFilter> fLst = ((AndClassFilter) filter).getFilters();
 		assertEquals(2, fLst.size());
 
-		assertTrue(fLst.contains(foo));
-		assertTrue(fLst.contains(bar));
+		assertTrue(fLst.contains(pfoo));
+		assertTrue(fLst.contains(sbar));
+
+		// a name can not be foo and bar.
+		ncf = new AndClassFilter(TrueClassFilter.TRUE, foo, new AndClassFilter(foo, bar));
+		assertEquals(FalseClassFilter.FALSE, ncf.optimize());
+
+		ncf = new AndClassFilter(TrueClassFilter.TRUE, TrueClassFilter.TRUE);
+		assertEquals(TrueClassFilter.TRUE, ncf.optimize());
 
 		HasAnnotationClassFilter anno = new HasAnnotationClassFilter(Test.class);
 		ncf = new AndClassFilter(anno, bar);
@@ -157,4 +172,119 @@ public class AndClassFilterTest {
 		assertEquals(anno, fLst.get(1));
 	}
 
+	/**
+	 * Test the boolean rewrite rules.
+	 */
+	@Test
+	public void testRewrite() {
+		NameClassFilter x = new NameClassFilter("org.example.X");
+		assertEquals(ClassPathFilter.FALSE, new AndClassFilter(x, new NotClassFilter(x)).optimize());
+
+		assertEquals(ClassPathFilter.FALSE,
+				new AndClassFilter(new PrefixClassFilter("com.acme"), new PrefixClassFilter("com.other")).optimize());
+		assertEquals(new PrefixClassFilter("com.acme"),
+				new AndClassFilter(new PrefixClassFilter("com"), new PrefixClassFilter("com.acme")).optimize());
+		assertEquals(new SuffixClassFilter("Test.class"),
+				new AndClassFilter(new SuffixClassFilter(".class"), new SuffixClassFilter("Test.class")).optimize());
+
+		// negated prefixes are merged into one.
+		assertEquals(new NotClassFilter(new PrefixClassFilter("com", "org")),
+				new AndClassFilter(new NotClassFilter(new PrefixClassFilter("com")),
+						new NotClassFilter(new PrefixClassFilter("org")),
+						new NotClassFilter(new PrefixClassFilter("com.acme"))).optimize());
+
+		// names are checked against the other string filters.
+		assertEquals(new NameClassFilter("org.example.X"),
+				new AndClassFilter(new NameClassFilter("org.example.X", "com.acme.Y"), new PrefixClassFilter("org"))
+						.optimize());
+		assertEquals(ClassPathFilter.FALSE,
+				new AndClassFilter(new NameClassFilter("org.example.X"), new SuffixClassFilter("Test")).optimize());
+		// only one form of the name is accepted so nothing changes.
+		ClassPathFilter filter = new AndClassFilter(x, new SuffixClassFilter(".class"));
+		assertEquals(filter, filter.optimize());
+
+		// not string filters are left alone.
+		filter = new AndClassFilter(x, InterfaceClassFilter.INTERFACE);
+		assertEquals(filter, filter.optimize());
+	}
+
+	/**
+	 * Test that matchPrefix() works.
+	 */
+	@Test
+	public void testMatchPrefix() {
+		ClassPathFilter filter = new AndClassFilter(new PrefixClassFilter("org."), new PrefixClassFilter("org.example"));
+		assertEquals(Tristate.YES, filter.matchPrefix("org.example.api."));
+		assertEquals(Tristate.MAYBE, filter.matchPrefix("org."));
+		assertEquals(Tristate.NO, filter.matchPrefix("org.other."));
+
+		filter = new AndClassFilter(new PrefixClassFilter("org."), new SuffixClassFilter("Test"));
+		assertEquals(Tristate.MAYBE, filter.matchPrefix("org.example."));
+		assertEquals(Tristate.NO, filter.matchPrefix("com.example."));
+	}
+
+	/**
+	 * Test that a frozen filter and its arguments can not be changed.
+	 */
+	@Test
+	public void testFreeze() {
+		PrefixClassFilter prefix = new PrefixClassFilter("org.");
+		AndClassFilter filter = new AndClassFilter(prefix, new SuffixClassFilter("Test"));
+		assertSame(filter, filter.freeze());
+		assertTrue(filter.isFrozen());
+		assertTrue(prefix.isFrozen());
+		try {
+			filter.addFilter(ClassPathFilter.TRUE);
+			fail("Should have thrown IllegalStateException");
+		} catch (IllegalStateException expected) {
+			// expected
+		}
+		try {
+			filter.removeFilter(prefix);
+			fail("Should have thrown IllegalStateException");
+		} catch (IllegalStateException expected) {
+			// expected
+		}
+		try {
+			prefix.addString("com.");
+			fail("Should have thrown IllegalStateException");
+		} catch (IllegalStateException expected) {
+			// expected
+		}
+		assertEquals(2, filter.getFilters().size());
+		assertTrue(filter.accept("org.example.FooTest"));
+	}
+
+	/**
+	 * Test that a frozen filter can be evaluated from several threads.
+	 */
+	@Test
+	public void testConcurrentAccept() throws Exception {
+		final ClassPathFilter filter = new AndClassFilter(new PrefixClassFilter("org.", "com.", "net."),
+				new NotClassFilter(new WildcardClassFilter("*Impl", "*.internal.*"))).optimize().freeze();
+		final String expected = filter.toString();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int t = 0; t < 8; t++) {
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						for (int i = 0; i < 1000; i++) {
+							if (!filter.accept("org.example.Foo" + i) || filter.accept("com.example.FooImpl")
+									|| !expected.equals(filter.toString())) {
+								return false;
+							}
+						}
+						return true;
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
 }
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.xenei.classpathutils.Case;
+import org.xenei.classpathutils.ClassPathFilter;
+
+/**
+ * Test the FilterCompiler.
+ *
+ */
+public class FilterCompilerTest {
+
+	private static final String[] NAMES = { "org.example.Foo", "org.example.Foo.class", "org.example.foo.class",
+			"ORG.EXAMPLE.FOO", "org.example.Foo.class.class", "org.example.Bar$1.class", "org.example.sub.Baz.txt",
+			"com.other.Foo.class", "META-INF/MANIFEST.MF", "", "Foo" };
+
+	private static final ClassPathFilter[] FILTERS = { new PrefixClassFilter("org.example"),
+			new PrefixClassFilter(Case.INSENSITIVE, "ORG.", "com"), new SuffixClassFilter(".class"),
+			new SuffixClassFilter(Case.INSENSITIVE, ".CLASS", ".txt"), new NameClassFilter("org.example.Foo"),
+			new NameClassFilter("org.example.Foo.class", "Foo"),
+			new NameClassFilter(Case.INSENSITIVE, "org.example.foo"), new RegexClassFilter(".*\\$[0-9]+.*"),
+			new WildcardClassFilter("org.*.Foo*"), new WildcardClassFilter(Case.INSENSITIVE, "*foo", "?eta*"),
+			new NotClassFilter(new SuffixClassFilter(".class")),
+			new AndClassFilter(new PrefixClassFilter("org"), new SuffixClassFilter(".class")),
+			new AndClassFilter(new PrefixClassFilter("org"), new SuffixClassFilter(".class"),
+					new NotClassFilter(new RegexClassFilter(".+\\$[0-9]+[\\.\\$].*"))),
+			new OrClassFilter(new NameClassFilter("Foo"), new WildcardClassFilter("com*")),
+			new OrClassFilter(new AndClassFilter(new PrefixClassFilter("org"), new SuffixClassFilter(".txt")),
+					new PrefixClassFilter("META"), new NameClassFilter("Foo")),
+			new OrClassFilter(new PrefixClassFilter("META"), new RegexClassFilter(".*\\$[0-9]+.*"),
+					new WildcardClassFilter(Case.INSENSITIVE, "*foo"), new NameClassFilter("Foo")),
+			new AndClassFilter(new PrefixClassFilter("org"), InterfaceClassFilter.INTERFACE), ClassPathFilter.TRUE,
+			ClassPathFilter.FALSE };
+
+	/**
+	 * Test that the compiled filters accept the same names as the source
+	 * filters.
+	 */
+	@Test
+	public void testEquivalence() {
+		for (ClassPathFilter filter : FILTERS) {
+			ClassPathFilter compiled = FilterCompiler.compile(filter);
+			for (String name : NAMES) {
+				assertEquals(filter + " " + name, filter.accept(name), compiled.accept(name));
+			}
+			ClassPathFilter optimized = FilterCompiler.compile(filter.optimize());
+			for (String name : NAMES) {
+				assertEquals(filter + " " + name, filter.accept(name), optimized.accept(name));
+			}
+		}
+	}
+
+	/**
+	 * Test that the compiled filter has the source string form and that
+	 * compiling again returns the same filter.
+	 */
+	@Test
+	public void testDelegation() {
+		ClassPathFilter filter = FILTERS[12];
+		ClassPathFilter compiled = FilterCompiler.compile(filter);
+		assertEquals(filter.toString(), compiled.toString());
+		assertEquals(filter, compiled);
+		assertEquals(compiled, filter);
+		assertEquals(filter.hashCode(), compiled.hashCode());
+		assertEquals(compiled, FilterCompiler.compile(FILTERS[12]));
+		assertFalse(compiled.equals(FilterCompiler.compile(FILTERS[11])));
+		assertEquals(filter.matchPrefix("org.example."), compiled.matchPrefix("org.example."));
+		assertSame(compiled, FilterCompiler.compile(compiled));
+		assertSame(ClassPathFilter.TRUE, FilterCompiler.compile(ClassPathFilter.TRUE));
+	}
+
+	/**
+	 * Test that an empty nested conditional is not flattened away.
+	 */
+	@Test
+	public void testEmptyNested() {
+		OrClassFilter inner = new OrClassFilter(new PrefixClassFilter("a"), new PrefixClassFilter("b"));
+		inner.setFilters(Collections.<ClassPathFilter> emptyList());
+		OrClassFilter outer = new OrClassFilter(inner, ClassPathFilter.FALSE);
+		assertEquals(outer.accept("a"), FilterCompiler.compile(outer).accept("a"));
+		AndClassFilter and = new AndClassFilter(new PrefixClassFilter("a"), new AndClassFilter(
+				new PrefixClassFilter("a"), new PrefixClassFilter("a")));
+		((AndClassFilter) and.getFilters().get(1)).setFilters(Collections.<ClassPathFilter> emptyList());
+		assertEquals(and.accept("a"), FilterCompiler.compile(and).accept("a"));
+	}
+}
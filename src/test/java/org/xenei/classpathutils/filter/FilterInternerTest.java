@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.xenei.classpathutils.Case;
+import org.xenei.classpathutils.ClassPathFilter;
+
+/**
+ * Test FilterInterner and the structural equals() and hashCode() of the
+ * filters.
+ */
+public class FilterInternerTest {
+
+	private static final String FILTER = "Or( And( Prefix( Sensitive, org.xenei ), Not( Suffix( Sensitive, Test ) ) ), "
+			+ "Wildcard( Sensitive, *.impl.* ), Regex( Sensitive, .*Factory ) )";
+
+	private static ClassPathFilter build(String suffix) {
+		return new OrClassFilter(
+				new AndClassFilter(new PrefixClassFilter(Case.SENSITIVE, "org.xenei"),
+						new NotClassFilter(new SuffixClassFilter(Case.SENSITIVE, suffix))),
+				new WildcardClassFilter(Case.SENSITIVE, "*.impl.*"), new RegexClassFilter(Case.SENSITIVE, ".*Factory"));
+	}
+
+	/**
+	 * Test that equal filters are shared.
+	 */
+	@Test
+	public void testIntern() {
+		FilterInterner interner = new FilterInterner();
+		ClassPathFilter first = interner.intern(build("Test"));
+		ClassPathFilter second = interner.intern(build("Test"));
+		assertSame(first, second);
+		assertEquals(FILTER, first.toString());
+		assertTrue(((OrClassFilter) first).isFrozen());
+
+		// the sub filters are shared too.
+		ClassPathFilter prefix = interner.intern(new PrefixClassFilter(Case.SENSITIVE, "org.xenei"));
+		ClassPathFilter and = ((OrClassFilter) first).getFilters().get(0);
+		assertSame(prefix, ((AndClassFilter) and).getFilters().get(0));
+
+		int size = interner.size();
+		interner.intern(build("Test"));
+		assertEquals(size, interner.size());
+
+		interner.clear();
+		assertEquals(0, interner.size());
+		assertNotSame(first, interner.intern(build("Test")));
+	}
+
+	/**
+	 * Test that the constants are not pooled.
+	 */
+	@Test
+	public void testConstants() {
+		FilterInterner interner = new FilterInterner();
+		assertSame(ClassPathFilter.TRUE, interner.intern(ClassPathFilter.TRUE));
+		assertSame(ClassPathFilter.FALSE, interner.intern(ClassPathFilter.FALSE));
+		assertEquals(0, interner.size());
+	}
+
+	/**
+	 * Test that a null filter is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testNull() {
+		new FilterInterner().intern(null);
+	}
+
+	/**
+	 * Test that an interned optimized Or keeps its merged arguments.
+	 */
+	@Test
+	public void testUnion() {
+		FilterInterner interner = new FilterInterner();
+		interner.intern(new WildcardClassFilter("*.impl.*"));
+		OrClassFilter or = (OrClassFilter) new OrClassFilter(new WildcardClassFilter("*.impl.*"),
+				new RegexClassFilter(".*Factory")).optimize();
+		assertNotNull(or.getUnion());
+		OrClassFilter interned = (OrClassFilter) interner.intern(or);
+		assertNotSame(or, interned);
+		assertEquals(or, interned);
+		assertNotNull(interned.getUnion());
+	}
+
+	/**
+	 * Test that equals() and hashCode() agree with the string forms.
+	 */
+	@Test
+	public void testEqualsHashCode() {
+		ClassPathFilter f1 = build("Test");
+		ClassPathFilter f2 = build("Test");
+		assertEquals(f1, f2);
+		assertEquals(f1.hashCode(), f2.hashCode());
+
+		ClassPathFilter other = build("Tests");
+		assertNotEquals(f1, other);
+
+		// a compiled filter equals its source.
+		ClassPathFilter compiled = FilterCompiler.compile(f1);
+		assertEquals(f1, compiled);
+		assertEquals(compiled, f1);
+		assertEquals(f1.hashCode(), compiled.hashCode());
+	}
+
+	/**
+	 * Test that the hash code follows changes to an argument filter and that
+	 * frozen and unfrozen filters compare by structure.
+	 */
+	@Test
+	public void testHashAfterChange() {
+		PrefixClassFilter prefix = new PrefixClassFilter("org.xenei");
+		AndClassFilter and = new AndClassFilter(prefix, new SuffixClassFilter("Test"));
+		AndClassFilter copy = new AndClassFilter(new PrefixClassFilter("org.xenei"), new SuffixClassFilter("Test"));
+		int hash = and.hashCode();
+		assertEquals(copy, and);
+
+		prefix.addString("com.example");
+		assertNotEquals(copy, and);
+		assertNotEquals(hash, and.hashCode());
+
+		((PrefixClassFilter) copy.getFilters().get(0)).addString("com.example");
+		assertEquals(copy, and);
+		assertEquals(copy.hashCode(), and.hashCode());
+
+		and.addFilter(new NameClassFilter("java.lang.String"));
+		assertNotEquals(copy, and);
+
+		and.freeze();
+		copy.addFilter(new NameClassFilter("java.lang.String"));
+		assertEquals(copy, and);
+		assertEquals(and, copy);
+		assertEquals(copy.hashCode(), and.hashCode());
+		assertEquals(and.hashCode(), and.hashCode());
+	}
+}
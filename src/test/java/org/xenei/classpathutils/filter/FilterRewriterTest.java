@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.xenei.classpathutils.Case;
+import org.xenei.classpathutils.ClassPathFilter;
+
+/**
+ * Test the FilterRewriter.
+ *
+ */
+public class FilterRewriterTest {
+
+	private static final List<String> NAMES = Arrays.asList("", "com", "com.acme", "com.acme.Foo",
+			"com.acme.Foo.class", "COM.ACME.FOO", "com.other.Bar", "com.other.Bar.class", "org.example.FooTest",
+			"org.example.FooTest.class", "org.example.Foo$1.class", "Foo", "Foo.class", "Foo.class.class");
+
+	private static final String[] STRINGS = { "com", "com.acme", "COM.acme", "com.other", "org", "Foo", "Test",
+			".class", "Foo.class", "com.acme.Foo", "" };
+
+	private static final Case[] CASES = { Case.SENSITIVE, Case.INSENSITIVE };
+
+	private ClassPathFilter leaf(Random random) {
+		Case c = CASES[random.nextInt(CASES.length)];
+		String[] strings = { STRINGS[random.nextInt(STRINGS.length)], STRINGS[random.nextInt(STRINGS.length)] };
+		String[] one = { strings[0] };
+		String[] args = random.nextBoolean() ? one : strings;
+		switch (random.nextInt(6)) {
+		case 0:
+			return new PrefixClassFilter(c, args);
+		case 1:
+			return new SuffixClassFilter(c, args);
+		case 2:
+			return new NameClassFilter(c, args);
+		case 3:
+			return new WildcardClassFilter(c, "*" + strings[0] + "*");
+		case 4:
+			return new RegexClassFilter(c, ".*\\$[0-9]+.*");
+		default:
+			return random.nextBoolean() ? ClassPathFilter.TRUE : ClassPathFilter.FALSE;
+		}
+	}
+
+	private ClassPathFilter tree(Random random, int depth) {
+		if (depth == 0 || random.nextInt(4) == 0) {
+			return leaf(random);
+		}
+		switch (random.nextInt(3)) {
+		case 0:
+			return new NotClassFilter(tree(random, depth - 1));
+		case 1:
+			return new AndClassFilter(tree(random, depth - 1), tree(random, depth - 1), tree(random, depth - 1));
+		default:
+			return new OrClassFilter(tree(random, depth - 1), tree(random, depth - 1));
+		}
+	}
+
+	/**
+	 * Test that optimized trees accept the same names as the original trees
+	 * and are never larger.
+	 */
+	@Test
+	public void testEquivalence() {
+		Random random = new Random(42);
+		for (int i = 0; i < 3000; i++) {
+			ClassPathFilter filter = tree(random, 4);
+			ClassPathFilter optimized = filter.optimize();
+			for (String name : NAMES) {
+				assertEquals(filter + " -> " + optimized + " " + name, filter.accept(name), optimized.accept(name));
+			}
+			assertEquals(optimized.toString(), optimized.optimize().toString());
+		}
+	}
+
+	/**
+	 * Test removing redundant prefixes and suffixes.
+	 */
+	@Test
+	public void testMinimal() {
+		assertEquals(Arrays.asList("com", "org"),
+				FilterRewriter.minimal(Arrays.asList("com.acme", "com", "org", "com.other", "org"), Case.SENSITIVE,
+						false));
+		assertEquals(Arrays.asList("com.acme", "COM"),
+				FilterRewriter.minimal(Arrays.asList("com.acme", "COM"), Case.SENSITIVE, false));
+		assertEquals(Arrays.asList("com"),
+				FilterRewriter.minimal(Arrays.asList("com", "COM", "Com.acme"), Case.INSENSITIVE, false));
+		assertEquals(Arrays.asList("Test"),
+				FilterRewriter.minimal(Arrays.asList("FooTest", "Test"), Case.SENSITIVE, true));
+	}
+
+	/**
+	 * Test counting filters.
+	 */
+	@Test
+	public void testSize() {
+		assertEquals(1, FilterRewriter.size(new PrefixClassFilter("a", "b")));
+		assertEquals(4, FilterRewriter.size(new NotClassFilter(
+				new AndClassFilter(new PrefixClassFilter("a"), new SuffixClassFilter("b")))));
+		assertTrue(FilterRewriter.size(ClassPathFilter.TRUE) == 1);
+	}
+}
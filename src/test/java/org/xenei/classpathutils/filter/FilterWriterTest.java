@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.xenei.classpathutils.Case;
+import org.xenei.classpathutils.ClassPathFilter;
+
+/**
+ * Test FilterWriter and FilterReader.
+ */
+public class FilterWriterTest {
+
+	private static ClassPathFilter roundTrip(ClassPathFilter filter) throws IOException {
+		return FilterReader.fromBytes(FilterWriter.toBytes(filter));
+	}
+
+	/**
+	 * Test that each built in filter is read back equal to the one written.
+	 */
+	@Test
+	public void testRoundTrip() throws IOException {
+		ClassPathFilter[] filters = { ClassPathFilter.TRUE, ClassPathFilter.FALSE, ClassPathFilter.ABSTRACT_CLASS,
+				ClassPathFilter.ANNOTATION_CLASS, ClassPathFilter.INTERFACE_CLASS,
+				new NameClassFilter(Case.INSENSITIVE, "java.lang.String", "java.lang.Object"),
+				new PrefixClassFilter("org.xenei"), new SuffixClassFilter(Case.INSENSITIVE, "Test"),
+				new WildcardClassFilter("*.impl.*", "*Test"), new RegexClassFilter(Case.INSENSITIVE, "^.*\\$[0-9]+$"),
+				new HasAnnotationClassFilter(Deprecated.class),
+				new AndClassFilter(new PrefixClassFilter("org."), new NotClassFilter(new SuffixClassFilter("Impl"))),
+				new OrClassFilter(new NameClassFilter("a.B"), ClassPathFilter.INTERFACE_CLASS) };
+		for (ClassPathFilter filter : filters) {
+			ClassPathFilter read = roundTrip(filter);
+			assertEquals(filter, read);
+			assertEquals(filter.toString(), read.toString());
+			if (filter == ClassPathFilter.TRUE || filter == ClassPathFilter.ABSTRACT_CLASS) {
+				assertSame(filter, read);
+			}
+		}
+	}
+
+	/**
+	 * Test that an optimized Or keeps its merged arguments and that strings
+	 * and shared sub filters are written once.
+	 */
+	@Test
+	public void testSharing() throws IOException {
+		ClassPathFilter shared = new PrefixClassFilter("org.xenei.classpathutils");
+		ClassPathFilter filter = new AndClassFilter(
+				new OrClassFilter(new WildcardClassFilter("*.impl.*"), new RegexClassFilter(".*Factory"), shared)
+						.optimize(),
+				new NotClassFilter(new AndClassFilter(shared, new SuffixClassFilter("Test"))));
+		OrClassFilter read = (OrClassFilter) ((AndClassFilter) roundTrip(filter)).getFilters().get(0);
+		assertNotNull(read.getUnion());
+		assertEquals(filter, roundTrip(filter));
+
+		ClassPathFilter twice = new OrClassFilter(new NameClassFilter("org.xenei.classpathutils.Foo"),
+				new NameClassFilter("org.xenei.classpathutils.Foo"));
+		int once = FilterWriter.toBytes(new NameClassFilter("org.xenei.classpathutils.Foo")).length;
+		assertTrue(FilterWriter.toBytes(twice).length < once * 2);
+	}
+
+	/**
+	 * Test that several filters can be written to one stream.
+	 */
+	@Test
+	public void testStream() throws IOException {
+		ClassPathFilter first = new PrefixClassFilter("org.xenei");
+		ClassPathFilter second = new NotClassFilter(first);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		FilterWriter writer = new FilterWriter(new DataOutputStream(bytes));
+		writer.write(first);
+		writer.write(second);
+		writer.write(ClassPathFilter.TRUE);
+
+		FilterReader reader = new FilterReader(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		ClassPathFilter read = reader.read();
+		assertEquals(first, read);
+		ClassPathFilter readNot = reader.read();
+		assertEquals(second, readNot);
+		assertSame(read, ((NotClassFilter) readNot).getFilters().get(0));
+		assertSame(ClassPathFilter.TRUE, reader.read());
+	}
+
+	/**
+	 * Test that filters that are not built in are written as strings.
+	 */
+	@Test
+	public void testText() throws IOException {
+		ClassPathFilter filter = new AdaptiveFilter(new PrefixClassFilter("org.xenei"));
+		ClassPathFilter read = roundTrip(filter);
+		assertTrue(read instanceof PrefixClassFilter);
+		assertEquals(filter.toString(), read.toString());
+
+		ClassPathFilter subclass = new PrefixClassFilter("org.xenei") {
+			private static final long serialVersionUID = 1L;
+		};
+		assertEquals(FilterWriter.TEXT, FilterWriter.toBytes(subclass)[5]);
+		assertEquals(FilterWriter.PREFIX, FilterWriter.toBytes(new PrefixClassFilter("org.xenei"))[5]);
+	}
+
+	/**
+	 * Test that invalid input is rejected.
+	 */
+	@Test
+	public void testInvalid() {
+		byte[] good = FilterWriter.toBytes(new PrefixClassFilter("org.xenei"));
+		byte[][] bad = { new byte[] { 1, 2, 3, 4, 1, 1 }, Arrays.copyOf(good, good.length - 1), good.clone(),
+				good.clone(), Arrays.copyOf(good, 14), good.clone() };
+		// a newer version
+		bad[2][4] = (byte) (FilterWriter.VERSION + 1);
+		// an unknown older version
+		bad[5][4] = 0;
+		// an unknown tag
+		bad[3][5] = 99;
+		// a string length longer than the stream
+		System.arraycopy(new byte[] { -1, -1, -1, -1, 7 }, 0, bad[4], 9, 5);
+		for (byte[] bytes : bad) {
+			try {
+				FilterReader.fromBytes(bytes);
+				fail("Should have thrown IOException");
+			} catch (IOException expected) {
+				// expected
+			}
+		}
+	}
+}
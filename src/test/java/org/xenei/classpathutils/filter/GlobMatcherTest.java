@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Test the GlobMatcher.
+ *
+ */
+public class GlobMatcherTest {
+
+	private static final List<String> WILDCARDS = Arrays.asList("", "*", "?", "**", "??", "a", "a*", "*a", "*a*",
+			"a?c", "org.*.Foo*", "*.class", "?eta*", "*é*", "x😀?", "a*b*c", "*ab*ab*", "A*z",
+			"Ab?Cd", "*Test", "org.example.*.api.*", "com.acme?", "\\Q*\\E", "[a]*", "*$1.class");
+
+	private static final List<String> CANDIDATES = Arrays.asList("", "a", "A", "ab", "abc", "ABC", "abcabc", "aXc",
+			"a\nc", "a\rc", "a c", "\n", "org.x.Foo", "org.x.Foo.class", "ORG.X.FOO", "Meta-INF", "meta",
+			"é", "xÉy", "x😀y", "x😀😀", "xab", "abab", "aabbab", "AbxCd",
+			"abXcd", "az", "AZ", "FooTest", "org.example.impl.api.Foo", "com.acmeX", "\\Q*\\E", "\\Qx\\E",
+			"[a]bc", "org.Foo$1.class", "\ud83d");
+
+	private void assertSameAsRegex(List<String> wildcards, boolean ignoreCase) {
+		GlobMatcher matcher = new GlobMatcher(wildcards, ignoreCase);
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		for (String wildcard : wildcards) {
+			patterns.add(Pattern.compile(WildcardClassFilter.makeRegex(wildcard),
+					ignoreCase ? Pattern.CASE_INSENSITIVE : 0));
+		}
+		for (String candidate : CANDIDATES) {
+			boolean expected = false;
+			for (Pattern pattern : patterns) {
+				expected |= pattern.matcher(candidate).matches();
+			}
+			assertEquals(wildcards + " " + candidate, expected, matcher.matches(candidate));
+		}
+	}
+
+	/**
+	 * Test that each wildcard on its own matches as its regular expression
+	 * does.
+	 */
+	@Test
+	public void testSingleWildcards() {
+		for (String wildcard : WILDCARDS) {
+			assertSameAsRegex(Collections.singletonList(wildcard), false);
+			assertSameAsRegex(Collections.singletonList(wildcard), true);
+		}
+	}
+
+	/**
+	 * Test that the combined wildcards match as the union of the regular
+	 * expressions does. All the wildcards together need more than 64 states.
+	 */
+	@Test
+	public void testCombinedWildcards() {
+		assertSameAsRegex(WILDCARDS, false);
+		assertSameAsRegex(WILDCARDS, true);
+		assertSameAsRegex(WILDCARDS.subList(5, 12), false);
+		assertSameAsRegex(WILDCARDS.subList(5, 12), true);
+	}
+
+	/**
+	 * Test many stars against a string that would make a backtracking matcher
+	 * slow.
+	 */
+	@Test
+	public void testNoBacktracking() {
+		StringBuilder wildcard = new StringBuilder();
+		StringBuilder candidate = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			wildcard.append("*a");
+			candidate.append("a");
+		}
+		wildcard.append("*b");
+		GlobMatcher matcher = new GlobMatcher(Collections.singletonList(wildcard.toString()), false);
+		assertFalse(matcher.matches(candidate.toString()));
+		assertTrue(matcher.matches(candidate.append("b").toString()));
+	}
+
+	/**
+	 * Test that no wildcards match nothing.
+	 */
+	@Test
+	public void testEmpty() {
+		GlobMatcher matcher = new GlobMatcher(Collections.<String> emptyList(), false);
+		assertFalse(matcher.matches(""));
+		assertFalse(matcher.matches("a"));
+	}
+}
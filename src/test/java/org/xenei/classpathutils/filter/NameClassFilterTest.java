@@ -23,10 +23,13 @@ import static org.junit.Assert.assertTrue;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 import org.xenei.classpathutils.Case;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.NameClassFilter;
 import org.xenei.classpathutils.filter.parser.Parser;
 
@@ -140,4 +143,52 @@ public class NameClassFilterTest {
 		assertEquals(t.getName(), args[1]);
 
 	}
+
+	/**
+	 * Test that matchPrefix() works.
+	 */
+	@Test
+	public void testMatchPrefix() {
+		ClassPathFilter filter = new NameClassFilter("org.example.Foo");
+		assertEquals(Tristate.MAYBE, filter.matchPrefix("org.example."));
+		assertEquals(Tristate.MAYBE, filter.matchPrefix("org.example.Foo."));
+		assertEquals(Tristate.NO, filter.matchPrefix("org.example.Foo.bar."));
+		assertEquals(Tristate.NO, filter.matchPrefix("org.other."));
+	}
+
+	/**
+	 * Test that a large name set is found by hash with and without the
+	 * ".class" suffix, in both case modes.
+	 */
+	@Test
+	public void testLargeNameSet() {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < 20000; i++) {
+			names.add("org.example.pkg" + (i % 97) + ".Class" + i);
+		}
+		NameClassFilter sens = new NameClassFilter(Case.SENSITIVE, names);
+		NameClassFilter insens = new NameClassFilter(Case.INSENSITIVE, names);
+		assertTrue(sens.accept("org.example.pkg5.Class19405"));
+		assertTrue(sens.accept("org.example.pkg5.Class19405.class"));
+		assertFalse(sens.accept("org.example.pkg5.class19405"));
+		assertFalse(sens.accept("org.example.pkg5.Class19405.class.class"));
+		assertFalse(sens.accept("org.example.pkg5.Class194"));
+		assertTrue(insens.accept("ORG.EXAMPLE.PKG5.CLASS19405.class"));
+		assertFalse(insens.accept("ORG.EXAMPLE.PKG5.CLASS19405.CLASS"));
+
+		sens.addString("a.B");
+		assertTrue(sens.accept("a.B.class"));
+	}
+
+	/**
+	 * Test that optimize() keeps the case sensitivity and the string form.
+	 */
+	@Test
+	public void testOptimize() {
+		NameClassFilter filter = new NameClassFilter(Case.INSENSITIVE, "a.B", "c.D", "a.B");
+		ClassPathFilter optimized = filter.optimize();
+		assertEquals("Name( Insensitive, a.B, c.D )", optimized.toString());
+		assertTrue(optimized.accept("A.b"));
+		assertEquals(filter.accept("C.d.class"), optimized.accept("C.d.class"));
+	}
 }
@@ -24,6 +24,7 @@ import java.net.URL;
 
 import org.junit.Test;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.NotClassFilter;
 import org.xenei.classpathutils.filter.parser.Parser;
 
@@ -111,5 +112,29 @@ public class NotClassFilterTest {
 		filter = ncf.optimize();
 		assertEquals(ClassPathFilter.TRUE, filter);
 
+		PrefixClassFilter foo = new PrefixClassFilter("foo");
+		ncf = new NotClassFilter(new NotClassFilter(foo));
+		assertEquals(foo, ncf.optimize());
+
+		// De Morgan: not(foo and not bar) is (not foo) or bar.
+		SuffixClassFilter bar = new SuffixClassFilter("bar");
+		ncf = new NotClassFilter(new AndClassFilter(foo, new NotClassFilter(bar)));
+		assertEquals(new OrClassFilter(new NotClassFilter(foo), bar).toString(), ncf.optimize().toString());
+
+		// not pushed down when it does not simplify.
+		ncf = new NotClassFilter(new OrClassFilter(foo, bar));
+		assertEquals(ncf, ncf.optimize());
+
+	}
+
+	/**
+	 * Test that matchPrefix() works.
+	 */
+	@Test
+	public void testMatchPrefix() {
+		ClassPathFilter filter = new NotClassFilter(new PrefixClassFilter("org.example"));
+		assertEquals(Tristate.NO, filter.matchPrefix("org.example.api."));
+		assertEquals(Tristate.MAYBE, filter.matchPrefix("org."));
+		assertEquals(Tristate.YES, filter.matchPrefix("com."));
 	}
 }
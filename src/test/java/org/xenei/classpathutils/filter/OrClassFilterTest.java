@@ -21,10 +21,14 @@ import static org.junit.Assert.*;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.junit.Test;
+import org.xenei.classpathutils.Case;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.OrClassFilter;
 import org.xenei.classpathutils.filter.parser.Parser;
 
@@ -138,14 +142,20 @@ public class OrClassFilterTest {
 		NameClassFilter bar = new NameClassFilter("bar");
 		ncf = new OrClassFilter(foo, FalseClassFilter.FALSE, bar);
 		filter = ncf.optimize();
+		assertEquals(new NameClassFilter("foo", "bar"), filter);
+
+		PrefixClassFilter pfoo = new PrefixClassFilter("foo");
+		SuffixClassFilter sbar = new SuffixClassFilter("bar");
+		ncf = new OrClassFilter(pfoo, FalseClassFilter.FALSE, new OrClassFilter(pfoo, sbar));
+		filter = ncf.optimize();
 
 		assertTrue(filter instanceof OrClassFilter);
 
 		List<ClassPathFilter> fLst = ((OrClassFilter) filter).getFilters();
 		assertEquals(2, fLst.size());
 
-		assertTrue(fLst.contains(foo));
-		assertTrue(fLst.contains(bar));
+		assertTrue(fLst.contains(pfoo));
+		assertTrue(fLst.contains(sbar));
 
 		HasAnnotationClassFilter anno = new HasAnnotationClassFilter(Test.class);
 		ncf = new OrClassFilter(anno, bar);
@@ -158,4 +168,103 @@ public class OrClassFilterTest {
 		assertEquals(anno, fLst.get(1));
 
 	}
+
+	/**
+	 * Test the boolean rewrite rules.
+	 */
+	@Test
+	public void testRewrite() {
+		NameClassFilter x = new NameClassFilter("org.example.X");
+		assertEquals(ClassPathFilter.TRUE, new OrClassFilter(x, new NotClassFilter(x)).optimize());
+
+		assertEquals(new PrefixClassFilter("com"),
+				new OrClassFilter(new PrefixClassFilter("com"), new PrefixClassFilter("com.acme")).optimize());
+		assertEquals(new PrefixClassFilter(Case.INSENSITIVE, "com", "org"), new OrClassFilter(
+				new PrefixClassFilter(Case.INSENSITIVE, "com"), new PrefixClassFilter(Case.INSENSITIVE, "org", "COM.acme"))
+						.optimize());
+		assertEquals(new SuffixClassFilter("Test", "IT"),
+				new OrClassFilter(new SuffixClassFilter("Test"), new SuffixClassFilter("IT", "FooTest")).optimize());
+		assertEquals(new WildcardClassFilter("*Test", "*IT"),
+				new OrClassFilter(new WildcardClassFilter("*Test"), new WildcardClassFilter("*IT")).optimize());
+
+		// different case sensitivity is not merged.
+		ClassPathFilter filter = new OrClassFilter(new PrefixClassFilter("com"),
+				new PrefixClassFilter(Case.INSENSITIVE, "org"));
+		assertEquals(filter, filter.optimize());
+
+		// names covered by the other filters are removed.
+		assertEquals(new PrefixClassFilter("org"),
+				new OrClassFilter(new NameClassFilter("org.example.X"), new PrefixClassFilter("org")).optimize());
+		filter = new OrClassFilter(new NameClassFilter("org.example.X", "com.acme.Y"), new PrefixClassFilter("org"));
+		assertEquals(new OrClassFilter(new NameClassFilter("com.acme.Y"), new PrefixClassFilter("org")).toString(),
+				filter.optimize().toString());
+
+		// not(a) or not(b) is not(a and b)
+		assertEquals(ClassPathFilter.TRUE, new OrClassFilter(new NotClassFilter(new PrefixClassFilter("com")),
+				new NotClassFilter(new PrefixClassFilter("org"))).optimize());
+	}
+
+	/**
+	 * Test that optimize() merges the regex and wildcard children and that the
+	 * merged filter accepts the same names.
+	 */
+	@Test
+	public void testUnion() throws Exception {
+		OrClassFilter or = new OrClassFilter(new RegexClassFilter(".*\\$[0-9]+"),
+				new RegexClassFilter(Case.INSENSITIVE, "org\\.example\\..*"), new PrefixClassFilter("net."),
+				new WildcardClassFilter("*Test"), new WildcardClassFilter(Case.INSENSITIVE, "com.acme.?"),
+				new RegexClassFilter("(a)\\1"), new RegexClassFilter("\\Qa.b\\E", Pattern.LITERAL),
+				new RegexClassFilter("(?x) c # comment"), new RegexClassFilter("(?<n>d)"),
+				new RegexClassFilter("(?<n>e)"), new RegexClassFilter("\\Q(f"), new RegexClassFilter("g", Pattern.DOTALL));
+		OrClassFilter filter = (OrClassFilter) or.optimize();
+		assertNotNull(filter.getUnion());
+		assertEquals(or.toString(), filter.toString());
+
+		List<String> names = Arrays.asList("Foo$1", "Foo$", "ORG.EXAMPLE.Foo", "org.examples", "net.Foo", "FooTest",
+				"Footest", "COM.ACME.X", "com.acme.XY", "aa", "ab", "\\Qa.b\\E", "a.b", "c", " c # comment", "d", "e",
+				"(f", "f", "g", "");
+		for (String name : names) {
+			assertEquals(name, or.accept(name), filter.accept(name));
+		}
+
+		filter.removeFilter(filter.getFilters().get(0));
+		assertNull(filter.getUnion());
+
+		or = new OrClassFilter(new RegexClassFilter("a"), new PrefixClassFilter("b"));
+		assertNull(((OrClassFilter) or.optimize()).getUnion());
+	}
+
+	/**
+	 * Test that optimize() does not change the filter, which may be frozen.
+	 */
+	@Test
+	public void testOptimizeFrozen() {
+		OrClassFilter or = new OrClassFilter(new RegexClassFilter("a.*"), new WildcardClassFilter("*Test"));
+		or.freeze();
+		OrClassFilter filter = (OrClassFilter) or.optimize();
+		assertNotSame(or, filter);
+		assertNull(or.getUnion());
+		assertNotNull(filter.getUnion());
+		assertEquals(or, filter);
+
+		// optimizing an optimized filter returns it.
+		filter.freeze();
+		assertSame(filter, filter.optimize());
+	}
+
+	/**
+	 * Test that matchPrefix() works.
+	 */
+	@Test
+	public void testMatchPrefix() {
+		ClassPathFilter filter = new OrClassFilter(new PrefixClassFilter("org.example"), new PrefixClassFilter("com.acme"));
+		assertEquals(Tristate.YES, filter.matchPrefix("org.example.api."));
+		assertEquals(Tristate.YES, filter.matchPrefix("com.acme."));
+		assertEquals(Tristate.MAYBE, filter.matchPrefix("org."));
+		assertEquals(Tristate.NO, filter.matchPrefix("net."));
+
+		filter = new OrClassFilter(new PrefixClassFilter("org."), new SuffixClassFilter("Test"));
+		assertEquals(Tristate.YES, filter.matchPrefix("org.example."));
+		assertEquals(Tristate.MAYBE, filter.matchPrefix("com.example."));
+	}
 }
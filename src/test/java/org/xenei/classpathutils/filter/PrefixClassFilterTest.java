@@ -20,12 +20,16 @@ package org.xenei.classpathutils.filter;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
 
 import java.net.MalformedURLException;
 import java.net.URL;
 import org.junit.Test;
 import org.xenei.classpathutils.Case;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.PrefixClassFilter;
 import org.xenei.classpathutils.filter.parser.Parser;
 
@@ -150,4 +154,39 @@ public class PrefixClassFilterTest {
 		assertEquals(new PrefixClassFilter("foo", "bar"), filter);
 	}
 
+	/**
+	 * Test that matchPrefix() works.
+	 */
+	@Test
+	public void testMatchPrefix() {
+		assertEquals(Tristate.YES, filter_sens.matchPrefix("org.xenei."));
+		assertEquals(Tristate.MAYBE, filter_sens.matchPrefix("org."));
+		assertEquals(Tristate.NO, filter_sens.matchPrefix("org.Xenei."));
+		assertEquals(Tristate.NO, filter_sens.matchPrefix("com."));
+
+		assertEquals(Tristate.YES, filter_insens.matchPrefix("org.xenei."));
+		assertEquals(Tristate.MAYBE, filter_insens.matchPrefix("ORG."));
+		assertEquals(Tristate.NO, filter_insens.matchPrefix("com."));
+	}
+
+	/**
+	 * Test that args() does not reorder the strings and that a frozen filter
+	 * can not be changed.
+	 */
+	@Test
+	public void testFreeze() {
+		PrefixClassFilter filter = new PrefixClassFilter("org.", "com.");
+		assertEquals("Prefix( Sensitive, com., org. )", filter.toString());
+		assertEquals(Arrays.asList("org.", "com."), filter.getStrings());
+
+		filter.freeze();
+		try {
+			filter.addString("net.");
+			fail("Should have thrown IllegalStateException");
+		} catch (IllegalStateException expected) {
+			// expected
+		}
+		assertEquals(Arrays.asList("org.", "com."), filter.getStrings());
+		assertTrue(filter.accept("com.example.Foo"));
+	}
 }
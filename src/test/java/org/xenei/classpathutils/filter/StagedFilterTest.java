@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.xenei.classpathutils.Candidate;
+import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.ClassPathUtils;
+import org.xenei.classpathutils.Tristate;
+import org.xenei.classpathutils.filter.types.ClassFilterType;
+
+/**
+ * Test StagedFilter.
+ */
+public class StagedFilterTest {
+
+	private static final String FILTER = ClassPathFilter.class.getName();
+	private static final String UTILS = ClassPathUtils.class.getName();
+
+	/**
+	 * A class filter that counts the classes it is given.
+	 */
+	private static class CountingFilter extends _AbstractBaseFilter implements ClassFilterType {
+		private static final Log LOG = LogFactory.getLog(CountingFilter.class);
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		protected Log getLog() {
+			return LOG;
+		}
+
+		@Override
+		public String funcName() {
+			return "Counting";
+		}
+
+		@Override
+		public String[] args() {
+			return NO_ARGS;
+		}
+
+		@Override
+		public boolean accept(Class<?> clazz) {
+			count.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public boolean accept(String className) {
+			try {
+				return accept(loadClass(className));
+			} catch (ClassNotFoundException e) {
+				return false;
+			}
+		}
+
+		@Override
+		public boolean accept(URL url) {
+			return false;
+		}
+
+		@Override
+		public ClassPathFilter optimize() {
+			return this;
+		}
+	}
+
+	/**
+	 * Test that only filters that need more than the name are staged.
+	 */
+	@Test
+	public void testPlan() {
+		ClassPathFilter names = new AndClassFilter(new PrefixClassFilter("org.xenei"),
+				new NotClassFilter(new SuffixClassFilter("Test")));
+		assertFalse(StagedFilter.plan(names) instanceof StagedFilter);
+		assertTrue(StagedFilter.plan(names).accept(UTILS));
+
+		ClassPathFilter mixed = new AndClassFilter(names, ClassPathFilter.INTERFACE_CLASS);
+		ClassPathFilter planned = StagedFilter.plan(mixed);
+		assertTrue(planned instanceof StagedFilter);
+		assertSame(planned, StagedFilter.plan(planned));
+		assertEquals(mixed.toString(), planned.toString());
+	}
+
+	/**
+	 * Test that filters know when they only check names, so And, Or and Not
+	 * do not create a candidate.
+	 */
+	@Test
+	public void testNamesOnly() {
+		PrefixClassFilter prefix = new PrefixClassFilter("org.xenei");
+		AndClassFilter and = new AndClassFilter(prefix, new NotClassFilter(new SuffixClassFilter("Test")));
+		OrClassFilter or = new OrClassFilter(and, new RegexClassFilter(".*Utils"));
+		assertTrue(or.isNamesOnly());
+		assertTrue(or.accept(UTILS));
+
+		and.addFilter(ClassPathFilter.INTERFACE_CLASS);
+		assertFalse(and.isNamesOnly());
+		assertFalse(or.isNamesOnly());
+		assertTrue(or.accept(UTILS));
+		assertTrue(or.accept(FILTER));
+		assertFalse(or.accept(StagedFilter.class.getName()));
+
+		or.freeze();
+		assertFalse(or.isNamesOnly());
+		assertTrue(((NotClassFilter) new NotClassFilter(prefix).freeze()).isNamesOnly());
+		assertFalse(or.accept(StagedFilter.class.getName()));
+	}
+
+	/**
+	 * Test the name and metadata stages.
+	 */
+	@Test
+	public void testStages() {
+		StagedFilter filter = new StagedFilter(new OrClassFilter(new NotClassFilter(new PrefixClassFilter("org.xenei")),
+				ClassPathFilter.INTERFACE_CLASS));
+		assertEquals(Tristate.YES, filter.acceptName("com.example.Foo"));
+		assertEquals(Tristate.MAYBE, filter.acceptName(FILTER));
+
+		assertEquals(Tristate.YES, filter.acceptMetadata(new Candidate(FILTER)));
+		assertEquals(Tristate.NO, filter.acceptMetadata(new Candidate(UTILS)));
+		// the class file can not be read.
+		assertEquals(Tristate.MAYBE, filter.acceptMetadata(new Candidate("org.xenei.NoSuchClass")));
+
+		assertTrue(filter.accept("com.example.Foo"));
+		assertTrue(filter.accept(FILTER));
+		assertFalse(filter.accept(UTILS));
+	}
+
+	/**
+	 * Test that a class is only loaded when the name and metadata can not
+	 * decide the result.
+	 */
+	@Test
+	public void testLoads() {
+		CountingFilter counting = new CountingFilter();
+		ClassPathFilter source = new OrClassFilter(new PrefixClassFilter("java."),
+				new AndClassFilter(new NotClassFilter(counting), new SuffixClassFilter("Utils")),
+				new AndClassFilter(ClassPathFilter.ABSTRACT_CLASS, counting));
+		StagedFilter filter = new StagedFilter(source);
+
+		// decided by the name.
+		assertTrue(filter.accept("java.lang.String"));
+		// decided by the metadata: not Utils and not abstract.
+		assertFalse(filter.accept(StagedFilter.class.getName()));
+		assertEquals(0, counting.count.get());
+
+		// loaded when the metadata does not decide.
+		assertFalse(filter.accept(UTILS));
+		assertEquals(1, counting.count.get());
+		assertTrue(filter.accept(_AbstractBaseFilter.class.getName()));
+		assertEquals(2, counting.count.get());
+		// a class that can not be loaded fails the class filters.
+		assertTrue(filter.accept("org.xenei.NoSuchUtils"));
+		assertEquals(2, counting.count.get());
+
+		for (String name : new String[] { "java.lang.String", StagedFilter.class.getName(), UTILS,
+				_AbstractBaseFilter.class.getName(), "org.xenei.NoSuchUtils" }) {
+			assertEquals(name, source.accept(name), filter.accept(name));
+		}
+	}
+}
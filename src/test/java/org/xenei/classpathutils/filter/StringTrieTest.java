@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.xenei.classpathutils.Case;
+
+/**
+ * Test the StringTrie.
+ *
+ */
+public class StringTrieTest {
+
+	private static final List<String> CANDIDATES = Arrays.asList("", "o", "org", "org.xenei", "org.xenei.Foo.class",
+			"ORG.Xenei.foo.CLASS", "com.example.Bar.class", "net.Baz.txt", "org.apache.commons");
+
+	/**
+	 * Test prefix matching.
+	 */
+	@Test
+	public void testPrefix() {
+		StringTrie trie = new StringTrie(Arrays.asList("org.xenei", "com.", "org.apache.commons"), false, false);
+		assertTrue(trie.matches("org.xenei.Foo"));
+		assertTrue(trie.matches("org.xenei"));
+		assertTrue(trie.matches("com.example"));
+		assertFalse(trie.matches("org.xene"));
+		assertFalse(trie.matches("org.apache"));
+		assertFalse(trie.matches("ORG.xenei"));
+		assertFalse(trie.matches(""));
+	}
+
+	/**
+	 * Test suffix matching.
+	 */
+	@Test
+	public void testSuffix() {
+		StringTrie trie = new StringTrie(Arrays.asList(".class", ".txt"), false, true);
+		assertTrue(trie.matches("a.b.C.class"));
+		assertTrue(trie.matches(".txt"));
+		assertFalse(trie.matches("class"));
+		assertFalse(trie.matches("a.b.C.CLASS"));
+	}
+
+	/**
+	 * Test case insensitive matching and the empty string.
+	 */
+	@Test
+	public void testIgnoreCaseAndEmpty() {
+		StringTrie trie = new StringTrie(Arrays.asList("Org.Xenei"), true, false);
+		assertTrue(trie.matches("ORG.xenei.Foo"));
+		assertFalse(trie.matches("com.xenei"));
+		assertTrue(new StringTrie(Arrays.asList(""), false, true).matches("anything"));
+		assertFalse(new StringTrie(new ArrayList<String>(), false, false).matches("anything"));
+	}
+
+	/**
+	 * Test that the filters agree with Case for many strings and that adding
+	 * a string is seen by the filter.
+	 */
+	@Test
+	public void testFilters() {
+		List<String> strings = new ArrayList<String>();
+		for (int i = 0; i < 300; i++) {
+			strings.add("pkg" + i + ".");
+		}
+		strings.addAll(Arrays.asList("org.x", "ORG.XENEI.FOO", "class", ".txt", "Baz.TXT"));
+		for (Case c : Arrays.asList(Case.SENSITIVE, Case.INSENSITIVE)) {
+			PrefixClassFilter prefix = new PrefixClassFilter(c, strings);
+			SuffixClassFilter suffix = new SuffixClassFilter(c, strings);
+			for (String candidate : CANDIDATES) {
+				boolean startsWith = false;
+				boolean endsWith = false;
+				for (String str : strings) {
+					startsWith |= c.checkStartsWith(candidate, str);
+					endsWith |= c.checkEndsWith(candidate, str);
+				}
+				assertEquals(c + " " + candidate, startsWith, prefix.accept(candidate));
+				assertEquals(c + " " + candidate, endsWith, suffix.accept(candidate));
+			}
+		}
+
+		PrefixClassFilter prefix = new PrefixClassFilter("com.");
+		assertFalse(prefix.accept("net.Baz"));
+		prefix.addString("net.");
+		assertTrue(prefix.accept("net.Baz"));
+	}
+}
@@ -20,6 +20,7 @@ package org.xenei.classpathutils.filter;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -27,6 +28,7 @@ import java.net.URL;
 import org.junit.Test;
 import org.xenei.classpathutils.Case;
 import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.Tristate;
 import org.xenei.classpathutils.filter.RegexClassFilter;
 import org.xenei.classpathutils.filter.WildcardClassFilter;
 import org.xenei.classpathutils.filter.parser.Parser;
@@ -149,6 +151,24 @@ public class WildcardClassFilterTest {
 		assertEquals("^.\\Qorg\\E.\\Qxenei\\E.$", WildcardClassFilter.makeRegex("?org?xenei?"));
 	}
 
+	/**
+	 * Test that repeated wildcards are expanded in place.
+	 */
+	@Test
+	public void testRepeatedWildcards() {
+		assertEquals("^.*$", WildcardClassFilter.makeRegex("**"));
+		assertEquals("^..$", WildcardClassFilter.makeRegex("??"));
+		assertEquals("^\\Qa\\E..$", WildcardClassFilter.makeRegex("a??"));
+		assertEquals("^..*\\Qa\\E.*.$", WildcardClassFilter.makeRegex("?**a*?"));
+		assertEquals("^$", WildcardClassFilter.makeRegex(""));
+
+		ClassPathFilter filter = new WildcardClassFilter("a??");
+		assertTrue(filter.accept("abc"));
+		assertFalse(filter.accept("ab"));
+		assertFalse(filter.accept("abcd"));
+		assertTrue(new WildcardClassFilter("**").accept("anything"));
+	}
+
 	/**
 	 * Test that the parser parses string representation correctly.
 	 * 
@@ -172,4 +192,37 @@ public class WildcardClassFilterTest {
 		assertEquals("*Xene?.*ClassPathFilter", args[1]);
 
 	}
+
+	/**
+	 * Test that matchPrefix() works.
+	 */
+	@Test
+	public void testMatchPrefix() {
+		ClassPathFilter filter = new WildcardClassFilter("org.example.*.api.*", "com.acme?");
+		assertEquals(Tristate.MAYBE, filter.matchPrefix("org."));
+		assertEquals(Tristate.MAYBE, filter.matchPrefix("org.example.impl."));
+		assertEquals(Tristate.MAYBE, filter.matchPrefix("com.acmeX."));
+		assertEquals(Tristate.NO, filter.matchPrefix("org.other."));
+		assertEquals(Tristate.NO, filter.matchPrefix("net."));
+
+		filter = new WildcardClassFilter("*Test");
+		assertEquals(Tristate.MAYBE, filter.matchPrefix("net."));
+	}
+
+	/**
+	 * Test that a frozen filter can not be changed.
+	 */
+	@Test
+	public void testFreeze() {
+		WildcardClassFilter filter = new WildcardClassFilter("*Test");
+		filter.freeze();
+		try {
+			filter.addWildcard("*Impl");
+			fail("Should have thrown IllegalStateException");
+		} catch (IllegalStateException expected) {
+			// expected
+		}
+		assertTrue(filter.accept("org.example.FooTest"));
+		assertFalse(filter.accept("org.example.FooImpl"));
+	}
 }
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.filter.PrefixClassFilter;
+
+/**
+ * A filter factory registered through the service loader for the tests.
+ * <code>Package( a, b )</code> accepts the classes in packages a and b and
+ * their sub packages.
+ */
+public class PackageFilterFactory implements FilterFactory {
+
+	@Override
+	public String getName() {
+		return "Package";
+	}
+
+	@Override
+	public Shape getShape() {
+		return Shape.STRINGS;
+	}
+
+	@Override
+	public ClassPathFilter create(List<?> args) {
+		if (args.isEmpty()) {
+			throw new IllegalArgumentException("Not enough arguments");
+		}
+		List<String> prefixes = new ArrayList<String>();
+		for (Object arg : args) {
+			prefixes.add(arg + ".");
+		}
+		return new PrefixClassFilter(prefixes);
+	}
+}
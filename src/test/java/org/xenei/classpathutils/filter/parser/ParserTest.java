@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xenei.classpathutils.filter.parser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.xenei.classpathutils.Case;
+import org.xenei.classpathutils.ClassPathFilter;
+import org.xenei.classpathutils.filter.AndClassFilter;
+import org.xenei.classpathutils.filter.NotClassFilter;
+import org.xenei.classpathutils.filter.OrClassFilter;
+import org.xenei.classpathutils.filter.PrefixClassFilter;
+import org.xenei.classpathutils.filter.RegexClassFilter;
+import org.xenei.classpathutils.filter.SuffixClassFilter;
+import org.xenei.classpathutils.filter.WildcardClassFilter;
+
+/**
+ * Test the Parser.
+ */
+public class ParserTest {
+
+	private final Parser parser = new Parser();
+
+	/**
+	 * Test that nested filters round trip through toString().
+	 */
+	@Test
+	public void testNested() {
+		ClassPathFilter filter = new OrClassFilter(
+				new AndClassFilter(new PrefixClassFilter(Case.SENSITIVE, "org.xenei", "com.example"),
+						new NotClassFilter(new SuffixClassFilter(Case.INSENSITIVE, "Test"))),
+				new WildcardClassFilter(Case.SENSITIVE, "*.impl.*"), ClassPathFilter.INTERFACE_CLASS);
+		assertEquals(filter, parser.parse(filter.toString()));
+		assertEquals(filter, parser.parse(filter.toString().replace(" ", "")));
+	}
+
+	/**
+	 * Test the forms the text arguments may take.
+	 */
+	@Test
+	public void testText() {
+		assertEquals(new PrefixClassFilter("org.xenei"), parser.parse("prefix(org.xenei)"));
+		assertEquals(new RegexClassFilter(Case.SENSITIVE, "^(a|b){1,2}$"),
+				parser.parse("Regex( Sensitive, ^(a|b){1,2}$ )"));
+		assertEquals(new RegexClassFilter(Case.SENSITIVE, "a\\)"), parser.parse("Regex( a\\) )"));
+		assertSame(ClassPathFilter.TRUE, parser.parse(" True( ) "));
+		assertSame(ClassPathFilter.ABSTRACT_CLASS, parser.parse("AbstractClass()"));
+	}
+
+	/**
+	 * Test that malformed strings are rejected.
+	 */
+	@Test
+	public void testErrors() {
+		String[] bad = { "", "Prefix", "Prefix( a", "Prefix( a ) x", "Unknown( a )", "Prefix()",
+				"Prefix( Sensitive )", "Not( True(), False() )", "And( True() )", "True( a )", "Or( True(), )" };
+		for (String str : bad) {
+			try {
+				parser.parse(str);
+				fail("Should have thrown IllegalArgumentException: " + str);
+			} catch (IllegalArgumentException expected) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Test that parseOptimized() returns the cached filter.
+	 */
+	@Test
+	public void testParseOptimized() {
+		String str = "Or( Prefix( Sensitive, org.xenei ), Prefix( Sensitive, org.xenei.filter ) )";
+		ClassPathFilter filter = parser.parseOptimized(str);
+		assertEquals(new PrefixClassFilter(Case.SENSITIVE, "org.xenei"), filter);
+		assertTrue(((PrefixClassFilter) filter).isFrozen());
+		assertSame(filter, parser.parseOptimized(str));
+
+		Parser small = new Parser(1);
+		filter = small.parseOptimized(str);
+		small.parseOptimized("True()");
+		assertNotSame(filter, small.parseOptimized(str));
+		assertEquals(filter, small.parseOptimized(str));
+	}
+
+	/**
+	 * Test that factories are found with the service loader.
+	 */
+	@Test
+	public void testServiceLoader() {
+		ClassPathFilter filter = parser.parse("And( Package( org.xenei, com.example ), Not( Suffix( Test ) ) )");
+		assertTrue(filter.accept("org.xenei.Foo"));
+		assertFalse(filter.accept("org.xenei.FooTest"));
+		assertFalse(filter.accept("org.xeneix.Foo"));
+	}
+
+	/**
+	 * Test that a registered factory is used and replaces a factory with the
+	 * same name.
+	 */
+	@Test
+	public void testRegister() {
+		Parser p = new Parser();
+		p.register(FilterFactory.of("Any", FilterFactory.Shape.NONE, args -> ClassPathFilter.TRUE));
+		assertSame(ClassPathFilter.TRUE, p.parse("any()"));
+		p.register(FilterFactory.of("Any", FilterFactory.Shape.TEXT,
+				args -> new RegexClassFilter((String) args.get(0))));
+		assertEquals(new RegexClassFilter("a,b"), p.parse("Any( a,b )"));
+		try {
+			parser.parse("Any()");
+			fail("Should have thrown IllegalArgumentException");
+		} catch (IllegalArgumentException expected) {
+			// expected
+		}
+	}
+}